@@ -21,6 +21,7 @@ package top.rslly.iot.config;
 
 
 
+import io.jsonwebtoken.Claims;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -90,10 +91,12 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
     try {
       // 去掉前缀 获取Token字符串
       String token = tokenHeader.replace(JwtTokenUtil.TOKEN_PREFIX, "");
+      // 每个请求只解析校验一次token
+      Claims claims = JwtTokenUtil.parse(token);
       // 从Token中解密获取用户名
-      String username = JwtTokenUtil.getUsername(token);
+      String username = claims.get("username").toString();
       // 从Token中解密获取用户角色
-      String role = JwtTokenUtil.getUserRole(token);
+      String role = claims.get("role").toString();
 
 
       // 将[ROLE_XXX,ROLE_YYY]格式的角色字符串转换为数组
@@ -24,12 +24,22 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import top.rslly.iot.services.AuthorizationScope;
+import top.rslly.iot.services.iot.AlarmRecipientIndex;
+import top.rslly.iot.transfer.ServiceInvokeRegistry;
+import top.rslly.iot.utility.cache.EntityCacheManager;
+import top.rslly.iot.utility.properties.EntityCacheProperty;
 
 @Configuration
 @EnableCaching // 开启注解
@@ -130,5 +140,60 @@ public class RedisConfig extends CachingConfigurerSupport {
     return redisTemplate.opsForZSet();
   }
 
+  /**
+   * 物模型相关表的本地查询缓存
+   *
+   * @param property
+   * @param redisTemplate
+   * @return
+   */
+  @Bean
+  public EntityCacheManager cacheManager(EntityCacheProperty property,
+      RedisTemplate<String, Object> redisTemplate) {
+    return new EntityCacheManager(property, redisTemplate);
+  }
+
+  /**
+   * 缓存key带上方法名，同一区域内参数相同的不同查询不会冲突
+   *
+   * @return
+   */
+  @Override
+  public KeyGenerator keyGenerator() {
+    return (target, method, params) -> new SimpleKey(method.getName(),
+        SimpleKeyGenerator.generateKey(params));
+  }
+
+  /**
+   * 发布订阅监听容器
+   *
+   * @param factory
+   * @param serviceInvokeRegistry
+   * @param authorizationScope
+   * @param entityCacheManager
+   * @param alarmRecipientIndex
+   * @return
+   */
+  @Bean
+  public RedisMessageListenerContainer redisMessageListenerContainer(
+      RedisConnectionFactory factory, ServiceInvokeRegistry serviceInvokeRegistry,
+      AuthorizationScope authorizationScope, EntityCacheManager entityCacheManager,
+      AlarmRecipientIndex alarmRecipientIndex) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(factory);
+    container.addMessageListener(serviceInvokeRegistry,
+        new ChannelTopic(ServiceInvokeRegistry.REPLY_CHANNEL));
+    container.addMessageListener(authorizationScope,
+        new ChannelTopic(AuthorizationScope.INVALIDATE_CHANNEL));
+    container.addMessageListener(entityCacheManager,
+        new ChannelTopic(EntityCacheManager.EVICT_CHANNEL));
+    // 告警接收人索引跟随绑定关系失效
+    container.addMessageListener(alarmRecipientIndex,
+        new ChannelTopic(AuthorizationScope.INVALIDATE_CHANNEL));
+    container.addMessageListener(alarmRecipientIndex,
+        new ChannelTopic(AlarmRecipientIndex.INVALIDATE_CHANNEL));
+    return container;
+  }
+
 }
 
@@ -68,4 +68,68 @@ public class ThreadPoolTaskConfig {
     executor.initialize();
     return executor;
   }
+
+  /**
+   * 告警通知专用线程池，邮件和微信推送较慢，不占用公共线程池；队列满时丢弃并记录，不阻塞数据接入
+   */
+  @Bean("alarmExecutor")
+  public ThreadPoolTaskExecutor alarmExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(2);
+    executor.setMaxPoolSize(8);
+    executor.setQueueCapacity(1000);
+    executor.setKeepAliveSeconds(keepAliveTime);
+    executor.setThreadNamePrefix("Alarm-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * 固件差分包生成专用线程池，差分计算占CPU且耗时，队列满时放弃生成，设备仍可下载完整固件
+   */
+  @Bean("otaDeltaExecutor")
+  public ThreadPoolTaskExecutor otaDeltaExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setMaxPoolSize(2);
+    executor.setQueueCapacity(16);
+    executor.setKeepAliveSeconds(keepAliveTime);
+    executor.setThreadNamePrefix("Ota-Delta-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * 批量控制专用线程池，每个批量任务占一个线程顺序下发，队列满时直接拒绝，不在请求线程上执行
+   */
+  @Bean("groupControlExecutor")
+  public ThreadPoolTaskExecutor groupControlExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(2);
+    executor.setMaxPoolSize(8);
+    executor.setQueueCapacity(100);
+    executor.setKeepAliveSeconds(keepAliveTime);
+    executor.setThreadNamePrefix("Group-Control-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * 离线指令投递专用线程池，在exhook订阅回调中提交，队列满时丢弃本次投递，指令留在outbox等待下次订阅或过期
+   */
+  @Bean("deviceOutboxExecutor")
+  public ThreadPoolTaskExecutor deviceOutboxExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(2);
+    executor.setMaxPoolSize(4);
+    executor.setQueueCapacity(1000);
+    executor.setKeepAliveSeconds(keepAliveTime);
+    executor.setThreadNamePrefix("Device-Outbox-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    executor.initialize();
+    return executor;
+  }
 }
@@ -32,6 +32,7 @@ import top.rslly.iot.services.agent.ProductRoleServiceImpl;
 import top.rslly.iot.services.agent.ProductRouterSetServiceImpl;
 import top.rslly.iot.services.iot.MqttUserServiceImpl;
 import top.rslly.iot.services.thingsModel.*;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -71,6 +72,10 @@ public class Auth {
   private McpServerServiceImpl mcpServerService;
   @Autowired
   private ProductRouterSetServiceImpl productRouterSetService;
+  @Autowired
+  private EntityCacheManager entityCacheManager;
+  @Autowired
+  private ProductRuleServiceImpl productRuleService;
 
 
   @Operation(summary = "创建新用户", description = "暂不支持创建管理员用户")
@@ -119,6 +124,13 @@ public class Auth {
     return mqttUserService.getMqttUser();
   }
 
+  @PreAuthorize("hasRole('ROLE_admin')")
+  @Operation(summary = "物模型缓存统计", description = "各缓存区域的命中率，missCount即实际数据库查询次数(管理员专属)")
+  @RequestMapping(value = "/entityCacheStats", method = RequestMethod.GET)
+  public JsonResult<?> entityCacheStats() {
+    return ResultTool.success(entityCacheManager.stats());
+  }
+
   @Operation(summary = "通过产品id获取产品名称", description = "获取所有产品列表")
   @RequestMapping(value = "/getProductName", method = RequestMethod.GET)
   public JsonResult<?> getProductName(@RequestParam("id") int id,
@@ -186,6 +198,32 @@ public class Auth {
     return productModelService.deleteProductModel(id);
   }
 
+  @Operation(summary = "获取解码脚本", description = "获取物模型的上报解码脚本和本节点的解码统计")
+  @RequestMapping(value = "/ProductModelDecoder", method = RequestMethod.GET)
+  public JsonResult<?> ProductModelDecoder(@RequestParam("modelId") int modelId,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeModel(header, modelId))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return productModelService.getDecodeScript(modelId);
+  }
+
+  @Operation(summary = "提交解码脚本", description = "设置物模型的上报解码脚本，脚本为空时删除")
+  @RequestMapping(value = "/ProductModelDecoder", method = RequestMethod.POST)
+  public JsonResult<?> ProductModelDecoder(@Valid @RequestBody DecodeScript decodeScript,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeModel(header, decodeScript.getModelId()))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return productModelService.postDecodeScript(decodeScript);
+  }
+
 
   @Operation(summary = "获取事件", description = "获取所有物模型的事件")
   @RequestMapping(value = "/ProductEvent", method = RequestMethod.GET)
@@ -219,6 +257,38 @@ public class Auth {
     return productEventService.deleteProductEvent(id);
   }
 
+  @Operation(summary = "获取规则", description = "获取所有物模型的遥测规则")
+  @RequestMapping(value = "/ProductRule", method = RequestMethod.GET)
+  public JsonResult<?> ProductRule(@RequestHeader("Authorization") String header) {
+    return productRuleService.getProductRule(header);
+  }
+
+  @Operation(summary = "提交规则", description = "提交物模型的遥测规则，条件成立时触发绑定的事件")
+  @RequestMapping(value = "/ProductRule", method = RequestMethod.POST)
+  public JsonResult<?> ProductRule(@Valid @RequestBody ProductRule productRule,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeModel(header, productRule.getModelId()))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return productRuleService.postProductRule(productRule);
+  }
+
+  @Operation(summary = "删除规则", description = "删除物模型的遥测规则")
+  @RequestMapping(value = "/ProductRule", method = RequestMethod.DELETE)
+  public JsonResult<?> ProductRule(@RequestParam("id") int id,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeRule(header, id))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return productRuleService.deleteProductRule(id);
+  }
+
 
   @Operation(summary = "获取设备", description = "获取所有物模型的设备")
   @RequestMapping(value = "/ProductDevice", method = RequestMethod.GET)
@@ -226,6 +296,13 @@ public class Auth {
     return productDeviceService.getProductDevice(header);
   }
 
+  @Operation(summary = "分页获取设备", description = "按设备id游标分页，可按物模型、在线状态、设备名前缀过滤")
+  @RequestMapping(value = "/ProductDevicePage", method = RequestMethod.GET)
+  public JsonResult<?> productDevicePage(@RequestHeader("Authorization") String header,
+      DeviceQuery deviceQuery) {
+    return productDeviceService.getProductDevicePage(header, deviceQuery);
+  }
+
   @Operation(summary = "创建设备", description = "创建物模型的设备")
   @RequestMapping(value = "/ProductDevice", method = RequestMethod.POST)
   public JsonResult<?> ProductDevice(@Valid @RequestBody ProductDevice productDevice,
@@ -33,6 +33,7 @@ import top.rslly.iot.services.agent.KnowledgeChatServiceImpl;
 import top.rslly.iot.services.agent.OtaXiaozhiServiceImpl;
 import top.rslly.iot.services.iot.AlarmEventServiceImpl;
 import top.rslly.iot.services.iot.HardWareServiceImpl;
+import top.rslly.iot.services.iot.OtaCampaignServiceImpl;
 import top.rslly.iot.services.iot.OtaPassiveServiceImpl;
 import top.rslly.iot.services.iot.OtaServiceImpl;
 import top.rslly.iot.services.storage.DataServiceImpl;
@@ -44,6 +45,7 @@ import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -52,6 +54,7 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping(value = "/api/v2")
@@ -76,6 +79,8 @@ public class Tool {
   @Autowired
   private OtaPassiveServiceImpl otaPassiveService;
   @Autowired
+  private OtaCampaignServiceImpl otaCampaignService;
+  @Autowired
   private OtaXiaozhiServiceImpl otaXiaozhiService;
   @Autowired
   private KnowledgeChatServiceImpl knowledgeChatService;
@@ -94,10 +99,26 @@ public class Tool {
 
   @Operation(summary = "设备属性或服务控制api接口", description = "注意传入参数为ControlParam,属性或服务设置重复时候取第一个")
   @RequestMapping(value = "/control", method = RequestMethod.POST)
-  public JsonResult<?> control(@Valid @RequestBody ControlParam controlParam,
+  public CompletableFuture<JsonResult<?>> control(@Valid @RequestBody ControlParam controlParam,
       @RequestHeader("Authorization") String header) throws MqttException {
+    // 同步服务调用等待设备回复期间释放servlet线程
+    return hardWareService.controlAsync(controlParam, header);
+  }
 
-    return hardWareService.control(controlParam, header);
+  @Operation(summary = "查询离线缓存指令的投递状态",
+      description = "control传入expire且设备离线时返回commandId，状态为pending、delivered、replaced、expired或failed")
+  @RequestMapping(value = "/controlState", method = RequestMethod.GET)
+  public JsonResult<?> controlState(@RequestParam("commandId") String commandId,
+      @RequestHeader("Authorization") String header) {
+    return hardWareService.getControlState(commandId, header);
+  }
+
+  @Operation(summary = "批量设备控制api接口",
+      description = "deviceIds、modelId、productId任选其一，每台设备的结果以result事件推送，最后以done事件汇总")
+  @RequestMapping(value = "/groupControl", method = RequestMethod.POST)
+  public SseEmitter groupControl(@Valid @RequestBody GroupControlParam groupControlParam,
+      @RequestHeader("Authorization") String header) {
+    return hardWareService.controlGroup(groupControlParam, header);
   }
 
   @Operation(summary = "用于获取物联网一段时间的设备数据", description = "时间参数请使用两个毫秒时间戳")
@@ -174,8 +195,9 @@ public class Tool {
   // 知识库
   @Operation(summary = "知识库", description = "获取产品的知识库")
   @RequestMapping(value = "/knowledgeChat", method = RequestMethod.GET)
-  public JsonResult<?> getKnowledgeChat(@RequestHeader("Authorization") String header) {
-    return knowledgeChatService.getKnowledgeChat(header);
+  public JsonResult<?> getKnowledgeChat(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return knowledgeChatService.getKnowledgeChat(header, pageQuery);
   }
 
   @Operation(summary = "知识库", description = "提交产品的知识库")
@@ -219,9 +241,9 @@ public class Tool {
   @RequestMapping(value = "/micro/{name}", method = RequestMethod.GET)
   public void micro(@PathVariable("name") @NotBlank(message = "name 不能为空")
   @Size(min = 1, max = 255, message = "name 长度必须在 1 到 255 之间") String name,
-      HttpServletResponse response)
+      HttpServletRequest request, HttpServletResponse response)
       throws IOException {
-    otaService.otaDevice(name, response);
+    otaService.otaDevice(name, request, response);
   }
 
   @RequestMapping(value = "/otaUpload", method = RequestMethod.POST)
@@ -240,8 +262,9 @@ public class Tool {
   }
 
   @RequestMapping(value = "/otaList", method = RequestMethod.GET)
-  public JsonResult<?> otaList(@RequestHeader("Authorization") String header) {
-    return otaService.otaList(header);
+  public JsonResult<?> otaList(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return otaService.otaList(header, pageQuery);
   }
 
   @RequestMapping(value = "/otaDelete", method = RequestMethod.DELETE)
@@ -272,8 +295,9 @@ public class Tool {
   }
 
   @RequestMapping(value = "/otaPassive", method = RequestMethod.GET)
-  public JsonResult<?> otaPassiveList(@RequestHeader("Authorization") String header) {
-    return otaPassiveService.otaPassiveList(header);
+  public JsonResult<?> otaPassiveList(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return otaPassiveService.otaPassiveList(header, pageQuery);
   }
 
   @RequestMapping(value = "/otaPassive", method = RequestMethod.POST)
@@ -307,9 +331,53 @@ public class Tool {
     return otaPassiveService.otaPassiveDelete(id);
   }
 
+  @RequestMapping(value = "/otaCampaign", method = RequestMethod.GET)
+  public JsonResult<?> otaCampaignList(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return otaCampaignService.getOtaCampaign(header, pageQuery);
+  }
+
+  @RequestMapping(value = "/otaCampaign", method = RequestMethod.POST)
+  public JsonResult<?> otaCampaignPost(@Valid @RequestBody OtaCampaign otaCampaign,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeOta(header, otaCampaign.getOtaId()))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return otaCampaignService.postOtaCampaign(otaCampaign);
+  }
+
+  @RequestMapping(value = "/otaCampaignStatus", method = RequestMethod.POST)
+  public JsonResult<?> otaCampaignStatus(@RequestParam("id") int id,
+      @RequestParam("action") @NotBlank(message = "action 不能为空") String action,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeOtaCampaign(header, id))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return otaCampaignService.updateOtaCampaignStatus(id, action);
+  }
+
+  @RequestMapping(value = "/otaCampaignProgress", method = RequestMethod.GET)
+  public JsonResult<?> otaCampaignProgress(@RequestParam("id") int id,
+      @RequestHeader("Authorization") String header) {
+    try {
+      if (!safetyService.controlAuthorizeOtaCampaign(header, id))
+        return ResultTool.fail(ResultCode.NO_PERMISSION);
+    } catch (NullPointerException e) {
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    return otaCampaignService.getOtaCampaignProgress(id);
+  }
+
   @RequestMapping(value = "/alarmEvent", method = RequestMethod.GET)
-  public JsonResult<?> alarmEvent(@RequestHeader("Authorization") String header) {
-    return alarmEventService.getAlarmEvent(header);
+  public JsonResult<?> alarmEvent(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return alarmEventService.getAlarmEvent(header, pageQuery);
   }
 
   @RequestMapping(value = "/alarmEvent", method = RequestMethod.POST)
@@ -338,8 +406,9 @@ public class Tool {
   }
 
   @RequestMapping(value = "/xiaozhi/otaManage", method = RequestMethod.GET)
-  public JsonResult<?> xiaoZhiOtaList(@RequestHeader("Authorization") String header) {
-    return otaXiaozhiService.otaList(header);
+  public JsonResult<?> xiaoZhiOtaList(@RequestHeader("Authorization") String header,
+      PageQuery pageQuery) {
+    return otaXiaozhiService.otaList(header, pageQuery);
   }
 
   @RequestMapping(value = "/xiaozhi/otaManage", method = RequestMethod.POST)
@@ -19,10 +19,15 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import top.rslly.iot.models.AlarmEventEntity;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 
 public interface AlarmEventRepository extends JpaRepository<AlarmEventEntity, Long> {
@@ -31,6 +36,12 @@ public interface AlarmEventRepository extends JpaRepository<AlarmEventEntity, Lo
 
   List<AlarmEventEntity> findAllByEventId(int eventId);
 
+  @Query(
+      value = "select a from AlarmEventEntity a, ProductEventEntity e, ProductModelEntity m where a.eventId = e.id and e.modelId = m.id and m.productId in :productIds",
+      countQuery = "select count(a) from AlarmEventEntity a, ProductEventEntity e, ProductModelEntity m where a.eventId = e.id and e.modelId = m.id and m.productId in :productIds")
+  Page<AlarmEventEntity> findPageByProductIds(@Param("productIds") Collection<Integer> productIds,
+      Pageable pageable);
+
   @Transactional
   List<AlarmEventEntity> deleteById(int id);
 }
@@ -19,10 +19,13 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.KnowledgeChatEntity;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface KnowledgeChatRepository extends JpaRepository<KnowledgeChatEntity, Long> {
@@ -31,6 +34,8 @@ public interface KnowledgeChatRepository extends JpaRepository<KnowledgeChatEnti
 
   List<KnowledgeChatEntity> findAllByProductId(int productId);
 
+  Page<KnowledgeChatEntity> findAllByProductIdIn(Collection<Integer> productIds, Pageable pageable);
+
   List<KnowledgeChatEntity> findAllByProductIdAndFilename(int productId, String filename);
 
   @Transactional
@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.dao;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import top.rslly.iot.models.OtaCampaignDeviceEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OtaCampaignDeviceRepository
+    extends JpaRepository<OtaCampaignDeviceEntity, Long> {
+  List<OtaCampaignDeviceEntity> findAllByCampaignIdAndDeviceId(int campaignId, int deviceId);
+
+  @Transactional
+  List<OtaCampaignDeviceEntity> deleteAllByDeviceId(int deviceId);
+
+  // 已放行批次中等待下发且在线的设备，离线设备留到上线后再下发
+  @Query("select c from OtaCampaignDeviceEntity c, ProductDeviceEntity d where c.deviceId = d.id"
+      + " and c.campaignId = :campaignId and c.status = 'pending' and c.wave <= :wave"
+      + " and d.online = 'connected' order by c.id")
+  List<OtaCampaignDeviceEntity> findPendingOnline(@Param("campaignId") int campaignId,
+      @Param("wave") int wave, Pageable limit);
+
+  @Query("select count(c) from OtaCampaignDeviceEntity c, ProductDeviceEntity d"
+      + " where c.deviceId = d.id and c.campaignId = :campaignId and c.status = 'pending'"
+      + " and c.wave <= :wave and d.online = 'connected'")
+  long countPendingOnline(@Param("campaignId") int campaignId, @Param("wave") int wave);
+
+  // 只在状态仍为from时更新，不覆盖设备回复已推进的状态
+  @Transactional
+  @Modifying
+  @Query("update OtaCampaignDeviceEntity c set c.status = :to, c.message = :message,"
+      + " c.updateTime = :now where c.id = :id and c.status = :from")
+  int transition(@Param("id") int id, @Param("from") String from, @Param("to") String to,
+      @Param("message") String message, @Param("now") long now);
+
+  // 各状态的设备数：[status, count]
+  @Query("select c.status, count(c) from OtaCampaignDeviceEntity c"
+      + " where c.campaignId = :campaignId group by c.status")
+  List<Object[]> countGroupByStatus(@Param("campaignId") int campaignId);
+
+  @Transactional
+  @Modifying
+  @Query("update OtaCampaignDeviceEntity c set c.status = 'failed', c.message = 'timeout',"
+      + " c.updateTime = :now where c.campaignId = :campaignId and c.status in :statuses"
+      + " and c.updateTime < :deadline")
+  int expire(@Param("campaignId") int campaignId, @Param("statuses") Collection<String> statuses,
+      @Param("deadline") long deadline, @Param("now") long now);
+
+  @Transactional
+  @Modifying
+  @Query("update OtaCampaignDeviceEntity c set c.status = 'pending', c.progress = 0,"
+      + " c.message = null, c.updateTime = :now where c.campaignId = :campaignId"
+      + " and c.status = 'failed'")
+  int retryFailed(@Param("campaignId") int campaignId, @Param("now") long now);
+}
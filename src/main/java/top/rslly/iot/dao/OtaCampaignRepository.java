@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.dao;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import top.rslly.iot.models.OtaCampaignEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OtaCampaignRepository extends JpaRepository<OtaCampaignEntity, Long> {
+  List<OtaCampaignEntity> findAllById(int id);
+
+  List<OtaCampaignEntity> findAllByOtaId(int otaId);
+
+  List<OtaCampaignEntity> findAllByVersion(String version);
+
+  List<OtaCampaignEntity> findAllByStatus(String status);
+
+  Page<OtaCampaignEntity> findAllByProductIdIn(Collection<Integer> productIds, Pageable pageable);
+
+  // 只在状态未被其他请求修改时生效，调度不会覆盖用户的暂停或取消
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query("update OtaCampaignEntity c set c.status = :to, c.message = :message"
+      + " where c.id = :id and c.status = :from")
+  int transition(@Param("id") int id, @Param("from") String from, @Param("to") String to,
+      @Param("message") String message);
+
+  @Transactional
+  @Modifying
+  @Query("update OtaCampaignEntity c set c.wave = :wave where c.id = :id and c.status = 'running'")
+  int advanceWave(@Param("id") int id, @Param("wave") int wave);
+}
@@ -19,10 +19,16 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.OtaPassiveEntity;
+import top.rslly.iot.param.response.OtaPassiveListResponse;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OtaPassiveRepository extends JpaRepository<OtaPassiveEntity, Long> {
@@ -32,6 +38,17 @@ public interface OtaPassiveRepository extends JpaRepository<OtaPassiveEntity, Lo
 
   List<OtaPassiveEntity> findAllByDeviceId(int deviceId);
 
+  @Query(
+      value = "SELECT new top.rslly.iot.param.response.OtaPassiveListResponse(p.id, p.otaId, p.deviceId, p.versionName, o.name, d.name, p.description) FROM OtaPassiveEntity p, OtaEntity o, ProductDeviceEntity d WHERE p.otaId = o.id AND p.deviceId = d.id",
+      countQuery = "SELECT count(p) FROM OtaPassiveEntity p, OtaEntity o, ProductDeviceEntity d WHERE p.otaId = o.id AND p.deviceId = d.id")
+  Page<OtaPassiveListResponse> findListPage(Pageable pageable);
+
+  @Query(
+      value = "SELECT new top.rslly.iot.param.response.OtaPassiveListResponse(p.id, p.otaId, p.deviceId, p.versionName, o.name, d.name, p.description) FROM OtaPassiveEntity p, OtaEntity o, ProductDeviceEntity d WHERE p.otaId = o.id AND p.deviceId = d.id AND o.productId IN :productIds",
+      countQuery = "SELECT count(p) FROM OtaPassiveEntity p, OtaEntity o, ProductDeviceEntity d WHERE p.otaId = o.id AND p.deviceId = d.id AND o.productId IN :productIds")
+  Page<OtaPassiveListResponse> findListPageByProductIds(
+      @Param("productIds") Collection<Integer> productIds, Pageable pageable);
+
   @Transactional
   List<OtaPassiveEntity> deleteAllById(int id);
 }
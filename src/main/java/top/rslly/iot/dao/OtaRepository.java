@@ -19,9 +19,12 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import top.rslly.iot.models.OtaEntity;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OtaRepository extends JpaRepository<OtaEntity, Long> {
@@ -29,7 +32,11 @@ public interface OtaRepository extends JpaRepository<OtaEntity, Long> {
 
   List<OtaEntity> findAllByName(String name);
 
+  List<OtaEntity> findAllByPath(String path);
+
   List<OtaEntity> findAllByProductIdAndName(int productId, String name);
 
   List<OtaEntity> findAllByProductId(int productId);
+
+  Page<OtaEntity> findAllByProductIdIn(Collection<Integer> productIds, Pageable pageable);
 }
@@ -19,10 +19,13 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.OtaXiaozhiEntity;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OtaXiaozhiRepository extends JpaRepository<OtaXiaozhiEntity, Long> {
@@ -31,6 +34,8 @@ public interface OtaXiaozhiRepository extends JpaRepository<OtaXiaozhiEntity, Lo
 
   List<OtaXiaozhiEntity> findAllByProductId(int productId);
 
+  Page<OtaXiaozhiEntity> findAllByProductIdIn(Collection<Integer> productIds, Pageable pageable);
+
   List<OtaXiaozhiEntity> findAllByProductIdAndDeviceId(int productId, String deviceId);
 
   List<OtaXiaozhiEntity> findAllByDeviceId(String deviceId);
@@ -19,25 +19,34 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import top.rslly.iot.models.ProductDataEntity;
 import top.rslly.iot.models.ProductModelEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import javax.transaction.Transactional;
 import java.util.List;
 
 @Repository
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_DATA)
 public interface ProductDataRepository extends JpaRepository<ProductDataEntity, Long> {
 
+  @Cacheable
   List<ProductDataEntity> findAllById(int id);
 
+  @Cacheable
   List<ProductDataEntity> findAllByModelId(int modelId);
 
+  @Cacheable
   List<ProductDataEntity> findAllByModelIdAndJsonKey(int modelId, String jsonKey);
 
+  @Cacheable
   List<ProductDataEntity> findAllByStorageType(String storageType);
 
+  @Cacheable
   List<ProductDataEntity> findAllByType(String type);
 
   @Transactional
@@ -19,6 +19,7 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -27,6 +28,7 @@ import top.rslly.iot.models.ProductDeviceEntity;
 import top.rslly.iot.models.ProductModelEntity;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductDeviceRepository extends JpaRepository<ProductDeviceEntity, Long> {
@@ -37,8 +39,26 @@ public interface ProductDeviceRepository extends JpaRepository<ProductDeviceEnti
 
   List<ProductDeviceEntity> findAllById(int id);
 
+  List<ProductDeviceEntity> findAllByIdIn(Collection<Integer> ids);
+
   List<ProductDeviceEntity> findAllByModelId(int modelId);
 
+  List<ProductDeviceEntity> findAllByModelIdIn(Collection<Integer> modelIds);
+
+  // 按主键游标分页，翻到任意页都只扫描一页的数据
+  @Query("select d from ProductDeviceEntity d where d.id > :afterId and d.modelId in :modelIds"
+      + " and (:online is null or d.online = :online)"
+      + " and (:prefix is null or d.name like :prefix escape '!') order by d.id")
+  List<ProductDeviceEntity> seekByModelIds(@Param("afterId") int afterId,
+      @Param("modelIds") Collection<Integer> modelIds, @Param("online") String online,
+      @Param("prefix") String prefix, Pageable limit);
+
+  @Query("select d from ProductDeviceEntity d where d.id > :afterId"
+      + " and (:online is null or d.online = :online)"
+      + " and (:prefix is null or d.name like :prefix escape '!') order by d.id")
+  List<ProductDeviceEntity> seekAll(@Param("afterId") int afterId, @Param("online") String online,
+      @Param("prefix") String prefix, Pageable limit);
+
   List<ProductDeviceEntity> findAllByName(String name);
 
   @Transactional
@@ -47,6 +67,14 @@ public interface ProductDeviceRepository extends JpaRepository<ProductDeviceEnti
   @Query(" select count(t) from ProductDeviceEntity t where t.online = :status")
   Integer connectStatusCount(@Param("status") String status);
 
+  // 每个产品的设备总数和在线数：[productId, total, online]
+  @Query("select m.productId, count(d), sum(case when d.online = 'connected' then 1 else 0 end)"
+      + " from ProductDeviceEntity d, ProductModelEntity m where d.modelId = m.id group by m.productId")
+  List<Object[]> countGroupByProductId();
+
+  @Query("select d.id from ProductDeviceEntity d where d.online = :status")
+  List<Integer> findIdsByOnline(@Param("status") String status);
+
   @Transactional
   @Modifying
   @Query("update ProductDeviceEntity do set do.online=?1 where do.clientId=?2")
@@ -19,22 +19,30 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import top.rslly.iot.models.ProductEventEntity;
 import top.rslly.iot.models.ProductModelEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import javax.transaction.Transactional;
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_EVENT)
 public interface ProductEventRepository extends JpaRepository<ProductEventEntity, Long> {
 
+  @Cacheable
   List<ProductEventEntity> findAllByModelIdAndName(int modelId, String name);
 
+  @Cacheable
   List<ProductEventEntity> findAllByModelId(int modelId);
 
+  @Cacheable
   List<ProductEventEntity> findAllByName(String name);
 
 
+  @Cacheable
   List<ProductEventEntity> findAllById(int id);
 
   @Transactional
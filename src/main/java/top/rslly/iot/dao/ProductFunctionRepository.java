@@ -19,23 +19,32 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import top.rslly.iot.models.ProductFunctionEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import javax.transaction.Transactional;
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_FUNCTION)
 public interface ProductFunctionRepository extends JpaRepository<ProductFunctionEntity, Long> {
 
+  @Cacheable
   List<ProductFunctionEntity> findAllById(int id);
 
+  @Cacheable
   List<ProductFunctionEntity> findAllByModelId(int modelId);
 
+  @Cacheable
   List<ProductFunctionEntity> findAllByModelIdAndDataType(int modelId, String dataType);
 
+  @Cacheable
   List<ProductFunctionEntity> findAllByModelIdAndFunctionNameAndDataType(int modelId,
       String functionName, String dataType);
 
+  @Cacheable
   List<ProductFunctionEntity> findAllByModelIdAndFunctionNameAndJsonKeyAndDataType(int modelId,
       String functionName, String jsonKey, String dataType);
 
@@ -19,21 +19,32 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import top.rslly.iot.models.ProductModelEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_MODEL)
 public interface ProductModelRepository extends JpaRepository<ProductModelEntity, Long> {
+  @Cacheable
   List<ProductModelEntity> findAllByProductId(int productId);
 
+  @Cacheable
   List<ProductModelEntity> findAllByName(String name);
 
+  @Cacheable
   List<ProductModelEntity> findAllByProductIdAndName(int productId, String name);
 
+  @Cacheable
   List<ProductModelEntity> findAllById(int id);
 
+  List<ProductModelEntity> findAllByProductIdIn(Collection<Integer> productIds);
+
   @Transactional
   List<ProductModelEntity> deleteById(int id);
 }
@@ -19,25 +19,34 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.ProductEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT)
 public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
   @Override
+  @Cacheable
   List<ProductEntity> findAll();
 
+  @Cacheable
   List<ProductEntity> findAllByKeyvalue(String keyvalue);
 
+  @Cacheable
   List<ProductEntity> findAllById(int id);
 
+  @Cacheable
   List<ProductEntity> findAllByProductName(String productName);
 
+  @Cacheable
   List<ProductEntity> findAllByProductNameAndKeyvalue(String productName, String keyvalue);
 
   @Transactional
@@ -19,15 +19,21 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.ProductRoleEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_ROLE)
 public interface ProductRoleRepository extends JpaRepository<ProductRoleEntity, Integer> {
+  @Cacheable
   List<ProductRoleEntity> findAllById(int id);
 
+  @Cacheable
   List<ProductRoleEntity> findAllByProductId(int productId);
 
   @Transactional
@@ -19,15 +19,21 @@
  */
 package top.rslly.iot.dao;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.models.ProductRouterSetEntity;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 
 import java.util.List;
 
+@CacheConfig(cacheNames = EntityCacheManager.PRODUCT_ROUTER_SET)
 public interface ProductRouterSetRepository extends JpaRepository<ProductRouterSetEntity, Long> {
+  @Cacheable
   List<ProductRouterSetEntity> findAllById(int id);
 
+  @Cacheable
   List<ProductRouterSetEntity> findAllByProductId(int productId);
 
   @Transactional
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.models;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+@Entity
+@Table(name = "ota_campaign_device", schema = "cwliot1.8", catalog = "")
+public class OtaCampaignDeviceEntity {
+  private int id;
+  private int campaignId;
+  private int deviceId;
+  private int wave;
+  // pending、pushed、downloading、upgrading、success、failed
+  private String status;
+  private int progress;
+  private String message;
+  private long updateTime;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  @Basic
+  @Column(name = "campaign_id")
+  public int getCampaignId() {
+    return campaignId;
+  }
+
+  public void setCampaignId(int campaignId) {
+    this.campaignId = campaignId;
+  }
+
+  @Basic
+  @Column(name = "device_id")
+  public int getDeviceId() {
+    return deviceId;
+  }
+
+  public void setDeviceId(int deviceId) {
+    this.deviceId = deviceId;
+  }
+
+  @Basic
+  @Column(name = "wave")
+  public int getWave() {
+    return wave;
+  }
+
+  public void setWave(int wave) {
+    this.wave = wave;
+  }
+
+  @Basic
+  @Column(name = "status")
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  @Basic
+  @Column(name = "progress")
+  public int getProgress() {
+    return progress;
+  }
+
+  public void setProgress(int progress) {
+    this.progress = progress;
+  }
+
+  @Basic
+  @Column(name = "message")
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  @Basic
+  @Column(name = "update_time")
+  public long getUpdateTime() {
+    return updateTime;
+  }
+
+  public void setUpdateTime(long updateTime) {
+    this.updateTime = updateTime;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    OtaCampaignDeviceEntity that = (OtaCampaignDeviceEntity) o;
+    return id == that.id && campaignId == that.campaignId && deviceId == that.deviceId
+        && wave == that.wave && progress == that.progress && updateTime == that.updateTime
+        && Objects.equals(status, that.status) && Objects.equals(message, that.message);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, campaignId, deviceId, wave, status, progress, message, updateTime);
+  }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.models;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+@Entity
+@Table(name = "ota_campaign", schema = "cwliot1.8", catalog = "")
+public class OtaCampaignEntity {
+  private int id;
+  private String name;
+  private int otaId;
+  private int productId;
+  // 0表示产品下的全部物模型
+  private int modelId;
+  // 下发给设备的版本号，设备回复时带回
+  private String version;
+  // running、paused、finished、cancelled
+  private String status;
+  // 暂停原因
+  private String message;
+  // 当前放行到第几批
+  private int wave;
+  private int waves;
+  private int waveSize;
+  // 同时下载的设备上限
+  private int maxConcurrent;
+  // 每秒最多下发的升级指令数
+  private int publishRate;
+  // 失败率超过该值时自动暂停
+  private double failureThreshold;
+  // 设备超过该时间没有回复视为失败
+  private int timeoutSeconds;
+  private long createTime;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  @Basic
+  @Column(name = "name")
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  @Basic
+  @Column(name = "ota_id")
+  public int getOtaId() {
+    return otaId;
+  }
+
+  public void setOtaId(int otaId) {
+    this.otaId = otaId;
+  }
+
+  @Basic
+  @Column(name = "product_id")
+  public int getProductId() {
+    return productId;
+  }
+
+  public void setProductId(int productId) {
+    this.productId = productId;
+  }
+
+  @Basic
+  @Column(name = "model_id")
+  public int getModelId() {
+    return modelId;
+  }
+
+  public void setModelId(int modelId) {
+    this.modelId = modelId;
+  }
+
+  @Basic
+  @Column(name = "version")
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion(String version) {
+    this.version = version;
+  }
+
+  @Basic
+  @Column(name = "status")
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  @Basic
+  @Column(name = "message")
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  @Basic
+  @Column(name = "wave")
+  public int getWave() {
+    return wave;
+  }
+
+  public void setWave(int wave) {
+    this.wave = wave;
+  }
+
+  @Basic
+  @Column(name = "waves")
+  public int getWaves() {
+    return waves;
+  }
+
+  public void setWaves(int waves) {
+    this.waves = waves;
+  }
+
+  @Basic
+  @Column(name = "wave_size")
+  public int getWaveSize() {
+    return waveSize;
+  }
+
+  public void setWaveSize(int waveSize) {
+    this.waveSize = waveSize;
+  }
+
+  @Basic
+  @Column(name = "max_concurrent")
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  public void setMaxConcurrent(int maxConcurrent) {
+    this.maxConcurrent = maxConcurrent;
+  }
+
+  @Basic
+  @Column(name = "publish_rate")
+  public int getPublishRate() {
+    return publishRate;
+  }
+
+  public void setPublishRate(int publishRate) {
+    this.publishRate = publishRate;
+  }
+
+  @Basic
+  @Column(name = "failure_threshold")
+  public double getFailureThreshold() {
+    return failureThreshold;
+  }
+
+  public void setFailureThreshold(double failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  @Basic
+  @Column(name = "timeout_seconds")
+  public int getTimeoutSeconds() {
+    return timeoutSeconds;
+  }
+
+  public void setTimeoutSeconds(int timeoutSeconds) {
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
+  @Basic
+  @Column(name = "create_time")
+  public long getCreateTime() {
+    return createTime;
+  }
+
+  public void setCreateTime(long createTime) {
+    this.createTime = createTime;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    OtaCampaignEntity that = (OtaCampaignEntity) o;
+    return id == that.id && otaId == that.otaId && productId == that.productId
+        && modelId == that.modelId && wave == that.wave && waves == that.waves
+        && waveSize == that.waveSize && maxConcurrent == that.maxConcurrent
+        && publishRate == that.publishRate && timeoutSeconds == that.timeoutSeconds
+        && createTime == that.createTime
+        && Double.compare(that.failureThreshold, failureThreshold) == 0
+        && Objects.equals(name, that.name) && Objects.equals(version, that.version)
+        && Objects.equals(status, that.status) && Objects.equals(message, that.message);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, name, otaId, productId, modelId, version, status, message, wave, waves,
+        waveSize, maxConcurrent, publishRate, failureThreshold, timeoutSeconds, createTime);
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.models;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+@Entity
+@Table(name = "ota_delta", schema = "cwliot1.8", catalog = "")
+public class OtaDeltaEntity {
+  private int id;
+  // 目标固件
+  private int otaId;
+  // 旧固件
+  private int sourceOtaId;
+  // 设备下载时用该值声明当前固件
+  private String sourceMd5;
+  private String path;
+  private long size;
+  private String md5;
+  private String sha256;
+  // 生成耗时
+  private long generateMillis;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  @Basic
+  @Column(name = "ota_id")
+  public int getOtaId() {
+    return otaId;
+  }
+
+  public void setOtaId(int otaId) {
+    this.otaId = otaId;
+  }
+
+  @Basic
+  @Column(name = "source_ota_id")
+  public int getSourceOtaId() {
+    return sourceOtaId;
+  }
+
+  public void setSourceOtaId(int sourceOtaId) {
+    this.sourceOtaId = sourceOtaId;
+  }
+
+  @Basic
+  @Column(name = "source_md5")
+  public String getSourceMd5() {
+    return sourceMd5;
+  }
+
+  public void setSourceMd5(String sourceMd5) {
+    this.sourceMd5 = sourceMd5;
+  }
+
+  @Basic
+  @Column(name = "path")
+  public String getPath() {
+    return path;
+  }
+
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  @Basic
+  @Column(name = "size")
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  @Basic
+  @Column(name = "md5")
+  public String getMd5() {
+    return md5;
+  }
+
+  public void setMd5(String md5) {
+    this.md5 = md5;
+  }
+
+  @Basic
+  @Column(name = "sha256")
+  public String getSha256() {
+    return sha256;
+  }
+
+  public void setSha256(String sha256) {
+    this.sha256 = sha256;
+  }
+
+  @Basic
+  @Column(name = "generate_millis")
+  public long getGenerateMillis() {
+    return generateMillis;
+  }
+
+  public void setGenerateMillis(long generateMillis) {
+    this.generateMillis = generateMillis;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    OtaDeltaEntity that = (OtaDeltaEntity) o;
+    return id == that.id && otaId == that.otaId && sourceOtaId == that.sourceOtaId
+        && size == that.size && generateMillis == that.generateMillis
+        && Objects.equals(sourceMd5, that.sourceMd5) && Objects.equals(path, that.path)
+        && Objects.equals(md5, that.md5) && Objects.equals(sha256, that.sha256);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, otaId, sourceOtaId, sourceMd5, path, size, md5, sha256, generateMillis);
+  }
+}
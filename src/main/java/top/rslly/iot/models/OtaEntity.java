@@ -29,6 +29,8 @@ public class OtaEntity {
   private String path;
   private String name;
   private int productId;
+  private String md5;
+  private String sha256;
 
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -71,6 +73,26 @@ public class OtaEntity {
     this.productId = productId;
   }
 
+  @Basic
+  @Column(name = "md5")
+  public String getMd5() {
+    return md5;
+  }
+
+  public void setMd5(String md5) {
+    this.md5 = md5;
+  }
+
+  @Basic
+  @Column(name = "sha256")
+  public String getSha256() {
+    return sha256;
+  }
+
+  public void setSha256(String sha256) {
+    this.sha256 = sha256;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o)
@@ -79,11 +101,12 @@ public class OtaEntity {
       return false;
     OtaEntity otaEntity = (OtaEntity) o;
     return id == otaEntity.id && productId == otaEntity.productId
-        && Objects.equals(path, otaEntity.path) && Objects.equals(name, otaEntity.name);
+        && Objects.equals(path, otaEntity.path) && Objects.equals(name, otaEntity.name)
+        && Objects.equals(md5, otaEntity.md5) && Objects.equals(sha256, otaEntity.sha256);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id, path, name, productId);
+    return Objects.hash(id, path, name, productId, md5, sha256);
   }
 }
@@ -29,6 +29,7 @@ public class ProductModelEntity {
   private int productId;
   private String description;
   private String name;
+  private String decodeScript;
 
   @Basic
   @Column(name = "name")
@@ -72,6 +73,16 @@ public class ProductModelEntity {
   }
 
 
+  @Basic
+  @Column(name = "decode_script")
+  public String getDecodeScript() {
+    return decodeScript;
+  }
+
+  public void setDecodeScript(String decodeScript) {
+    this.decodeScript = decodeScript;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o)
@@ -80,11 +91,12 @@ public class ProductModelEntity {
       return false;
     ProductModelEntity that = (ProductModelEntity) o;
     return id == that.id && productId == that.productId
-        && Objects.equals(description, that.description) && Objects.equals(name, that.name);
+        && Objects.equals(description, that.description) && Objects.equals(name, that.name)
+        && Objects.equals(decodeScript, that.decodeScript);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id, name, productId, description);
+    return Objects.hash(id, name, productId, description, decodeScript);
   }
 }
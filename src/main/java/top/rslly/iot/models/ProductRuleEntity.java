@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.models;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+@Entity
+@Table(name = "product_rule", schema = "cwliot1.8", catalog = "")
+public class ProductRuleEntity {
+  private int id;
+  private String name;
+  private int modelId;
+  private int eventId;
+  private String jsonKey;
+  private String type;
+  private String operator;
+  private double threshold;
+  private int windowSeconds;
+  private String aggregate;
+  private String expression;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  @Basic
+  @Column(name = "name")
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  @Basic
+  @Column(name = "model_id")
+  public int getModelId() {
+    return modelId;
+  }
+
+  public void setModelId(int modelId) {
+    this.modelId = modelId;
+  }
+
+  @Basic
+  @Column(name = "event_id")
+  public int getEventId() {
+    return eventId;
+  }
+
+  public void setEventId(int eventId) {
+    this.eventId = eventId;
+  }
+
+  @Basic
+  @Column(name = "json_key")
+  public String getJsonKey() {
+    return jsonKey;
+  }
+
+  public void setJsonKey(String jsonKey) {
+    this.jsonKey = jsonKey;
+  }
+
+  @Basic
+  @Column(name = "type")
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  @Basic
+  @Column(name = "operator")
+  public String getOperator() {
+    return operator;
+  }
+
+  public void setOperator(String operator) {
+    this.operator = operator;
+  }
+
+  @Basic
+  @Column(name = "threshold")
+  public double getThreshold() {
+    return threshold;
+  }
+
+  public void setThreshold(double threshold) {
+    this.threshold = threshold;
+  }
+
+  @Basic
+  @Column(name = "window_seconds")
+  public int getWindowSeconds() {
+    return windowSeconds;
+  }
+
+  public void setWindowSeconds(int windowSeconds) {
+    this.windowSeconds = windowSeconds;
+  }
+
+  @Basic
+  @Column(name = "aggregate")
+  public String getAggregate() {
+    return aggregate;
+  }
+
+  public void setAggregate(String aggregate) {
+    this.aggregate = aggregate;
+  }
+
+  @Basic
+  @Column(name = "expression")
+  public String getExpression() {
+    return expression;
+  }
+
+  public void setExpression(String expression) {
+    this.expression = expression;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    ProductRuleEntity that = (ProductRuleEntity) o;
+    return id == that.id && modelId == that.modelId && eventId == that.eventId
+        && Double.compare(that.threshold, threshold) == 0 && windowSeconds == that.windowSeconds
+        && Objects.equals(name, that.name) && Objects.equals(jsonKey, that.jsonKey)
+        && Objects.equals(type, that.type) && Objects.equals(operator, that.operator)
+        && Objects.equals(aggregate, that.aggregate)
+        && Objects.equals(expression, that.expression);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, name, modelId, eventId, jsonKey, type, operator, threshold,
+        windowSeconds, aggregate, expression);
+  }
+}
@@ -21,6 +21,7 @@ package top.rslly.iot.param.request;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import javax.validation.constraints.NotBlank;
@@ -29,6 +30,7 @@ import javax.validation.constraints.Size;
 import java.util.List;
 
 @AllArgsConstructor
+@NoArgsConstructor
 @Getter
 @Setter
 public class ControlParam {
@@ -45,4 +47,13 @@ public class ControlParam {
   List<String> key;
   @NotNull
   List<String> value;
+  // 设备离线时指令缓存的秒数，设备订阅后投递；为空则直接下发，同步服务不缓存
+  Integer expire;
+  // 属性合并窗口毫秒数，窗口内对同一设备的写入合并为最终值下发一次
+  Integer window;
+
+  public ControlParam(String name, String mode, String functionName, String status, int qos,
+      List<String> key, List<String> value) {
+    this(name, mode, functionName, status, qos, key, value, null, null);
+  }
 }
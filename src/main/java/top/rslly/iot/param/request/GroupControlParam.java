@@ -0,0 +1,48 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.param.request;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class GroupControlParam {
+  // 以下三种目标任选其一
+  @Size(max = 1000, message = "deviceIds 最多1000个")
+  List<Integer> deviceIds;
+  Integer modelId;
+  Integer productId;
+  @NotBlank(message = "mode 不能为空")
+  @Size(min = 1, max = 255, message = "mode 长度必须在 1 到 255 之间")
+  String mode;
+  String functionName;
+  String status;
+  int qos;
+  @NotNull
+  List<String> key;
+  @NotNull
+  List<String> value;
+}
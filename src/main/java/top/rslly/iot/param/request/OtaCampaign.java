@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.param.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+
+@Data
+public class OtaCampaign {
+  @NotBlank(message = "name 不能为空")
+  @Size(min = 1, max = 255, message = "name 长度必须在 1 到 255 之间")
+  private String name;
+  private int otaId;
+  // 只升级该物模型的设备，0表示固件所属产品的全部设备
+  private int modelId;
+  @Min(value = 1, message = "waveSize 不能小于1")
+  private int waveSize;
+  @Min(value = 1, message = "maxConcurrent 不能小于1")
+  @Max(value = 10000, message = "maxConcurrent 不能超过10000")
+  private int maxConcurrent;
+  @Min(value = 1, message = "publishRate 不能小于1")
+  @Max(value = 1000, message = "publishRate 不能超过1000")
+  private int publishRate;
+  @DecimalMin(value = "0", message = "failureThreshold 不能小于0")
+  @DecimalMax(value = "1", message = "failureThreshold 不能大于1")
+  private double failureThreshold;
+  @Min(value = 30, message = "timeoutSeconds 不能小于30")
+  @Max(value = 86400, message = "timeoutSeconds 不能超过86400")
+  private int timeoutSeconds;
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.param.request;
+
+import lombok.Data;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.ReflectionUtils;
+
+@Data
+public class PageQuery {
+  private static final int MAX_SIZE = 200;
+
+  Integer page; // 页码，从0开始，不传则返回全部
+  Integer size = 20; // 每页条数
+  String sort = "id"; // 排序字段
+  String order = "asc"; // asc or desc
+
+  public boolean paged() {
+    return page != null;
+  }
+
+  /**
+   * 转换为分页参数，排序字段不属于实体时退回按id排序
+   *
+   * @param entityClass 查询的实体类
+   * @return 分页参数
+   */
+  public Pageable toPageable(Class<?> entityClass) {
+    String property = sort != null && ReflectionUtils.findField(entityClass, sort) != null ? sort
+        : "id";
+    Sort.Direction direction =
+        "desc".equalsIgnoreCase(order) ? Sort.Direction.DESC : Sort.Direction.ASC;
+    if (!paged())
+      return PageRequest.of(0, Integer.MAX_VALUE, direction, property);
+    int pageSize = size == null || size <= 0 ? 20 : Math.min(size, MAX_SIZE);
+    return PageRequest.of(Math.max(page, 0), pageSize, direction, property);
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.param.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+
+@Data
+public class ProductRule {
+  @NotBlank(message = "name 不能为空")
+  @Size(min = 1, max = 255, message = "name 长度必须在 1 到 255 之间")
+  private String name;
+  private int modelId;
+  // 触发时上报的物模型事件
+  private int eventId;
+  // expression规则不需要
+  private String jsonKey;
+  // threshold、rate、window、absence、expression
+  @NotBlank(message = "type 不能为空")
+  private String type;
+  private String operator;
+  private double threshold;
+  @Min(value = 0, message = "windowSeconds 不能小于0")
+  @Max(value = 86400, message = "windowSeconds 不能超过86400")
+  private int windowSeconds;
+  // window规则的聚合方式：avg、max、min、sum、count
+  private String aggregate;
+  // expression规则的条件，例如 temp > 30 && hum < 20
+  @Size(max = 255, message = "expression 长度不能超过255")
+  private String expression;
+}
@@ -26,5 +26,6 @@ public class OtaPassiveEnableResponse {
   private String fileName;
   private String version;
   private String md5;
+  private String sha256;
   private String description;
 }
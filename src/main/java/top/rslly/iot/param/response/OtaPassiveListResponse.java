@@ -19,9 +19,13 @@
  */
 package top.rslly.iot.param.response;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class OtaPassiveListResponse {
   private int id;
   private int otaId;
@@ -0,0 +1,252 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.jsonwebtoken.Claims;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import top.rslly.iot.dao.*;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.models.ProductModelEntity;
+import top.rslly.iot.utility.JwtTokenUtil;
+
+import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 按用户物化的授权范围：用户可访问的产品id及其下的物模型id、设备id、设备名一次性从绑定表加载到内存，鉴权只做集合判断。绑定、产品、物模型、设备发生变更时在事务提交后精确失效相关用户，并通过redis发布订阅通知其它节点。
+ */
+@Component
+@Slf4j
+public class AuthorizationScope implements MessageListener {
+  public static final String INVALIDATE_CHANNEL = "authScopeInvalidate";
+  private static final String ADMIN_ROLE = "[ROLE_admin]";
+  private static final String WX_ROLE = "ROLE_" + "wx_user";
+
+  private final Cache<String, Scope> scopes = CacheBuilder.newBuilder().maximumSize(10000)
+      .expireAfterAccess(30, TimeUnit.MINUTES).build();
+  // 每次失效递增，防止加载期间发生的变更被旧快照覆盖
+  private final AtomicLong version = new AtomicLong();
+  @Resource
+  private UserRepository userRepository;
+  @Resource
+  private WxUserRepository wxUserRepository;
+  @Resource
+  private UserProductBindRepository userProductBindRepository;
+  @Resource
+  private WxProductBindRepository wxProductBindRepository;
+  @Resource
+  private ProductModelRepository productModelRepository;
+  @Resource
+  private ProductDeviceRepository productDeviceRepository;
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Getter
+  @AllArgsConstructor
+  public static class Scope {
+    // user:{userId} 或 wx:{openid}，admin为null
+    private final String owner;
+    private final boolean admin;
+    private final Set<Integer> productIds;
+    private final Set<Integer> modelIds;
+    private final Set<Integer> deviceIds;
+    private final Set<String> deviceNames;
+
+    public boolean hasProduct(int productId) {
+      return admin || productIds.contains(productId);
+    }
+
+    public boolean hasModel(int modelId) {
+      return admin || modelIds.contains(modelId);
+    }
+
+    public boolean hasDevice(int deviceId) {
+      return admin || deviceIds.contains(deviceId);
+    }
+
+    public boolean hasDevice(String deviceName) {
+      return admin || deviceNames.contains(deviceName);
+    }
+  }
+
+  private static final Scope ADMIN = new Scope(null, true, Set.of(), Set.of(), Set.of(), Set.of());
+  private static final Scope NONE = new Scope(null, false, Set.of(), Set.of(), Set.of(), Set.of());
+
+  /**
+   * 获取token对应用户的授权范围，用户不存在时返回空范围且不缓存
+   *
+   * @param token 带或不带Bearer前缀的token
+   * @return 授权范围
+   */
+  public Scope of(String token) {
+    Claims claims = JwtTokenUtil.parse(token.replace(JwtTokenUtil.TOKEN_PREFIX, ""));
+    String role = claims.get("role").toString();
+    String username = claims.get("username", String.class);
+    if (role.equals(ADMIN_ROLE))
+      return ADMIN;
+    String key = role.equals(WX_ROLE) ? "wx:" + username : "user:" + username;
+    Scope scope = scopes.getIfPresent(key);
+    if (scope != null)
+      return scope;
+    long start = version.get();
+    scope = role.equals(WX_ROLE) ? loadWx(username) : loadUser(username);
+    if (scope == null)
+      return NONE;
+    synchronized (version) {
+      if (version.get() == start)
+        scopes.put(key, scope);
+    }
+    return scope;
+  }
+
+  private Scope loadUser(String username) {
+    var userList = userRepository.findAllByUsername(username);
+    if (userList.isEmpty())
+      return null;
+    int userId = userList.get(0).getId();
+    Set<Integer> productIds = new HashSet<>();
+    for (var s : userProductBindRepository.findAllByUserId(userId))
+      productIds.add(s.getProductId());
+    return build("user:" + userId, productIds);
+  }
+
+  private Scope loadWx(String name) {
+    var wxUserList = wxUserRepository.findAllByName(name);
+    if (wxUserList.isEmpty())
+      return null;
+    String openid = wxUserList.get(0).getOpenid();
+    Set<Integer> productIds = new HashSet<>();
+    for (var s : wxProductBindRepository.findAllByOpenid(openid))
+      productIds.add(s.getProductId());
+    return build("wx:" + openid, productIds);
+  }
+
+  private Scope build(String owner, Set<Integer> productIds) {
+    Set<Integer> modelIds = new HashSet<>();
+    Set<Integer> deviceIds = new HashSet<>();
+    Set<String> deviceNames = new HashSet<>();
+    if (!productIds.isEmpty()) {
+      List<ProductModelEntity> models = productModelRepository.findAllByProductIdIn(productIds);
+      for (var s : models)
+        modelIds.add(s.getId());
+      if (!modelIds.isEmpty()) {
+        List<ProductDeviceEntity> devices = productDeviceRepository.findAllByModelIdIn(modelIds);
+        for (var s : devices) {
+          deviceIds.add(s.getId());
+          deviceNames.add(s.getName());
+        }
+      }
+    }
+    return new Scope(owner, false, Set.copyOf(productIds), Set.copyOf(modelIds),
+        Set.copyOf(deviceIds), Set.copyOf(deviceNames));
+  }
+
+  /**
+   * 用户绑定关系变化
+   */
+  public void invalidateUser(int userId) {
+    publish("user:" + userId);
+  }
+
+  /**
+   * 微信用户绑定关系变化
+   */
+  public void invalidateWxUser(String openid) {
+    publish("wx:" + openid);
+  }
+
+  /**
+   * 产品本身或其下物模型变化
+   */
+  public void invalidateProduct(int productId) {
+    publish("product:" + productId);
+  }
+
+  /**
+   * 物模型下设备变化
+   */
+  public void invalidateModel(int modelId) {
+    publish("model:" + modelId);
+  }
+
+  private void publish(String event) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          broadcast(event);
+        }
+      });
+    } else
+      broadcast(event);
+  }
+
+  private void broadcast(String event) {
+    invalidateLocal(event);
+    try {
+      redisTemplate.convertAndSend(INVALIDATE_CHANNEL, event);
+    } catch (Exception e) {
+      log.error("auth scope invalidate publish error:{}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+    if (body != null)
+      invalidateLocal(body.toString());
+  }
+
+  private void invalidateLocal(String event) {
+    String type = event.substring(0, event.indexOf(':'));
+    String value = event.substring(event.indexOf(':') + 1);
+    Predicate<Scope> affected;
+    switch (type) {
+      case "product":
+        affected = s -> s.productIds.contains(Integer.parseInt(value));
+        break;
+      case "model":
+        affected = s -> s.modelIds.contains(Integer.parseInt(value));
+        break;
+      default:
+        affected = s -> event.equals(s.owner);
+    }
+    synchronized (version) {
+      version.incrementAndGet();
+      scopes.asMap().values().removeIf(affected);
+    }
+  }
+}
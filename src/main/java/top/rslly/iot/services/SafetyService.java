@@ -34,6 +34,8 @@ public interface SafetyService {
 
   boolean controlAuthorizeAlarmEvent(String token, int alarmEventId);
 
+  boolean controlAuthorizeRule(String token, int ruleId);
+
   boolean controlAuthorizeEventData(String token, int eventDataId);
 
   boolean controlAuthorizeProductData(String token, int productDataId);
@@ -50,6 +52,8 @@ public interface SafetyService {
 
   boolean controlAuthorizeOtaPassive(String token, int id);
 
+  boolean controlAuthorizeOtaCampaign(String token, int id);
+
   boolean controlAuthorizeKnowledgeChat(String token, int id);
 
   boolean controlAuthorizeProductRouterSet(String token, int id);
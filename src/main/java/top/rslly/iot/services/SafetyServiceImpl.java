@@ -27,20 +27,16 @@ import top.rslly.iot.dao.ProductRouterSetRepository;
 import top.rslly.iot.models.*;
 import top.rslly.iot.services.agent.*;
 import top.rslly.iot.services.iot.AlarmEventServiceImpl;
+import top.rslly.iot.services.iot.OtaCampaignServiceImpl;
 import top.rslly.iot.services.iot.OtaPassiveServiceImpl;
 import top.rslly.iot.services.iot.OtaServiceImpl;
 import top.rslly.iot.services.thingsModel.*;
-import top.rslly.iot.services.wechat.WxProductBindServiceImpl;
-import top.rslly.iot.services.wechat.WxUserServiceImpl;
-import top.rslly.iot.utility.JwtTokenUtil;
 
 import java.util.List;
 
 @Service
 @Slf4j
 public class SafetyServiceImpl implements SafetyService {
-  @Autowired
-  private WxProductBindServiceImpl wxProductBindService;
   @Autowired
   private ProductModelServiceImpl productModelService;
   @Autowired
@@ -48,8 +44,6 @@ public class SafetyServiceImpl implements SafetyService {
   @Autowired
   private ProductEventServiceImpl productEventService;
   @Autowired
-  private UserProductBindServiceImpl userProductBindService;
-  @Autowired
   private ProductFunctionServiceImpl productFunctionService;
   @Autowired
   private EventDataServiceImpl eventDataService;
@@ -60,10 +54,6 @@ public class SafetyServiceImpl implements SafetyService {
   @Autowired
   private AlarmEventServiceImpl alarmEventService;
   @Autowired
-  private UserServiceImpl userService;
-  @Autowired
-  private WxUserServiceImpl wxUserService;
-  @Autowired
   private McpServerServiceImpl mcpServerService;
   @Autowired
   private OtaServiceImpl otaService;
@@ -72,36 +62,46 @@ public class SafetyServiceImpl implements SafetyService {
   @Autowired
   private OtaPassiveServiceImpl otaPassiveService;
   @Autowired
+  private OtaCampaignServiceImpl otaCampaignService;
+  @Autowired
   private KnowledgeChatServiceImpl knowledgeChatService;
   @Autowired
   private ProductRouterSetServiceImpl productRouterSetService;
+  @Autowired
+  private ProductRuleServiceImpl productRuleService;
+  @Autowired
+  private AuthorizationScope authorizationScope;
+
+  // 命中授权范围直接放行，未命中时才查库区分“不存在”和“无权限”
 
   @Override
   public boolean controlAuthorizeModel(String token, int modelId) {
-    List<ProductModelEntity> productModelEntityList = productModelService.findAllById(modelId);
-    if (productModelEntityList.isEmpty())
+    var scope = authorizationScope.of(token);
+    if (!scope.isAdmin() && scope.hasModel(modelId))
+      return true;
+    if (productModelService.findAllById(modelId).isEmpty())
       throw new NullPointerException("modelId not found!");
-    return this.controlAuthorizeProduct(token,
-        productModelEntityList.get(0).getProductId());
+    return scope.isAdmin();
   }
 
   @Override
   public boolean controlAuthorizeDevice(String token, int deviceId) {
-    List<ProductDeviceEntity> productDeviceEntityList = productDeviceService.findAllById(deviceId);
-    if (productDeviceEntityList.isEmpty())
+    var scope = authorizationScope.of(token);
+    if (!scope.isAdmin() && scope.hasDevice(deviceId))
+      return true;
+    if (productDeviceService.findAllById(deviceId).isEmpty())
       throw new NullPointerException("deviceId not found!");
-    return this.controlAuthorizeModel(token,
-        productDeviceEntityList.get(0).getModelId());
+    return scope.isAdmin();
   }
 
   @Override
   public boolean controlAuthorizeDevice(String token, String deviceName) {
-    List<ProductDeviceEntity> productDeviceEntityList =
-        productDeviceService.findAllByName(deviceName);
-    if (productDeviceEntityList.isEmpty())
+    var scope = authorizationScope.of(token);
+    if (!scope.isAdmin() && scope.hasDevice(deviceName))
+      return true;
+    if (productDeviceService.findAllByName(deviceName).isEmpty())
       throw new NullPointerException("deviceName not found!");
-    return this.controlAuthorizeModel(token,
-        productDeviceEntityList.get(0).getModelId());
+    return scope.isAdmin();
   }
 
   @Override
@@ -132,6 +132,15 @@ public class SafetyServiceImpl implements SafetyService {
         alarmEventEntityList.get(0).getEventId());
   }
 
+  @Override
+  public boolean controlAuthorizeRule(String token, int ruleId) {
+    List<ProductRuleEntity> productRuleEntityList = productRuleService.findAllById(ruleId);
+    if (productRuleEntityList.isEmpty())
+      throw new NullPointerException("ruleId not found!");
+    return this.controlAuthorizeModel(token,
+        productRuleEntityList.get(0).getModelId());
+  }
+
   @Override
   public boolean controlAuthorizeEventData(String token, int eventDataId) {
     List<EventDataEntity> eventDataEntityList = eventDataService.findAllById(eventDataId);
@@ -208,6 +217,15 @@ public class SafetyServiceImpl implements SafetyService {
         otaPassiveEntityList.get(0).getDeviceId());
   }
 
+  @Override
+  public boolean controlAuthorizeOtaCampaign(String token, int id) {
+    List<OtaCampaignEntity> otaCampaignEntityList = otaCampaignService.findAllById(id);
+    if (otaCampaignEntityList.isEmpty())
+      throw new NullPointerException("otaCampaignId not found!");
+    return this.controlAuthorizeProduct(token,
+        otaCampaignEntityList.get(0).getProductId());
+  }
+
   @Override
   public boolean controlAuthorizeKnowledgeChat(String token, int id) {
     List<KnowledgeChatEntity> knowledgeChatEntityList = knowledgeChatService.findAllById(id);
@@ -229,24 +247,6 @@ public class SafetyServiceImpl implements SafetyService {
 
   @Override
   public boolean controlAuthorizeProduct(String token, int productId) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    log.info("role {}", role);
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserService.findAllByName(username).isEmpty()) {
-        return false;
-      }
-      String openid = wxUserService.findAllByName(username).get(0).getOpenid();
-      // log.info("productId{}",productId);
-      return !wxProductBindService.findByOpenidAndProductId(openid, productId).isEmpty();
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userService.findAllByUsername(username);
-      if (userList.isEmpty())
-        return false;
-      int userId = userList.get(0).getId();
-      return !userProductBindService.findAllByUserIdAndProductId(userId, productId).isEmpty();
-    }
-    return true;
+    return authorizationScope.of(token).hasProduct(productId);
   }
 }
@@ -43,6 +43,8 @@ public class UserProductBindServiceImpl implements UserProductBindService {
   private UserRepository userRepository;
   @Resource
   private ProductRepository productRepository;
+  @Resource
+  private AuthorizationScope authorizationScope;
 
   @Override
   public List<UserProductBindEntity> findAllByUserId(int userId) {
@@ -91,6 +93,7 @@ public class UserProductBindServiceImpl implements UserProductBindService {
         userProductBindEntity.getProductId()).isEmpty())
       return ResultTool.fail(ResultCode.USER_ACCOUNT_ALREADY_EXIST);
     var res = userProductBindRepository.save(userProductBindEntity);
+    authorizationScope.invalidateUser(userProductBindEntity.getUserId());
     return ResultTool.success(res);
   }
 
@@ -113,6 +116,7 @@ public class UserProductBindServiceImpl implements UserProductBindService {
     if (res.isEmpty())
       return ResultTool.fail(ResultCode.NO_PERMISSION);
     userProductBindRepository.deleteById(res.get(0).getId());
+    authorizationScope.invalidateUser(res.get(0).getUserId());
     return ResultTool.success();
   }
 }
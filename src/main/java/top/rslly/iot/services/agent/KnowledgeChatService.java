@@ -21,6 +21,7 @@ package top.rslly.iot.services.agent;
 
 import org.springframework.web.multipart.MultipartFile;
 import top.rslly.iot.models.KnowledgeChatEntity;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.utility.result.JsonResult;
 
 import java.util.List;
@@ -31,7 +32,7 @@ public interface KnowledgeChatService {
 
   String searchByProductId(String productId, String query);
 
-  JsonResult<?> getKnowledgeChat(String token);
+  JsonResult<?> getKnowledgeChat(String token, PageQuery pageQuery);
 
   JsonResult<?> postKnowledgeChat(int productId, String fileName, MultipartFile multipartFile);
 
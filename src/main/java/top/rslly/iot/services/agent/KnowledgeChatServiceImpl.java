@@ -27,13 +27,17 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import top.rslly.iot.dao.*;
 import top.rslly.iot.models.KnowledgeChatEntity;
-import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.utility.ai.rag.RagUtility;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
@@ -43,7 +47,6 @@ import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -51,15 +54,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class KnowledgeChatServiceImpl implements KnowledgeChatService {
   @Resource
-  private KnowledgeChatRepository knowledgeChatRepository;
-  @Resource
-  private UserRepository userRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
+  private AuthorizationScope authorizationScope;
   @Resource
-  private WxUserRepository wxUserRepository;
-  @Resource
-  private WxProductBindRepository wxProductBindRepository;
+  private KnowledgeChatRepository knowledgeChatRepository;
   @Autowired
   private EmbeddingModel embeddingModel;
   @Autowired
@@ -92,49 +89,19 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
   }
 
   @Override
-  public JsonResult<?> getKnowledgeChat(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    List<KnowledgeChatEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<KnowledgeChatEntity> knowledgeChatEntities =
-            knowledgeChatRepository.findAllByProductId(s.getProductId());
-        result.addAll(knowledgeChatEntities);
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<KnowledgeChatEntity> knowledgeChatEntities =
-            knowledgeChatRepository.findAllByProductId(s.getProductId());
-        result.addAll(knowledgeChatEntities);
-      }
-    } else {
-      result = knowledgeChatRepository.findAll();
-    }
-    if (result.isEmpty()) {
+  public JsonResult<?> getKnowledgeChat(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(KnowledgeChatEntity.class);
+    Page<KnowledgeChatEntity> result;
+    if (scope.isAdmin())
+      result = knowledgeChatRepository.findAll(pageable);
+    else if (scope.getProductIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = knowledgeChatRepository.findAllByProductIdIn(scope.getProductIds(), pageable);
+    if (result.isEmpty())
       return ResultTool.fail(ResultCode.COMMON_FAIL);
-    } else
-      return ResultTool.success(result);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
   }
 
   @Override
@@ -21,6 +21,7 @@ package top.rslly.iot.services.agent;
 
 import top.rslly.iot.models.OtaXiaozhiEntity;
 import top.rslly.iot.param.request.OtaXiaozhi;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.utility.result.JsonResult;
 
 import javax.servlet.http.HttpServletRequest;
@@ -32,7 +33,7 @@ public interface OtaXiaozhiService {
 
   List<OtaXiaozhiEntity> findAllById(int id);
 
-  JsonResult<?> otaList(String token);
+  JsonResult<?> otaList(String token, PageQuery pageQuery);
 
   JsonResult<?> bindDevice(OtaXiaozhi otaXiaozhi, String token);
 
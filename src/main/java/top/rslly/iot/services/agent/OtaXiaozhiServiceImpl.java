@@ -26,6 +26,8 @@ import com.alibaba.fastjson.serializer.SerializerFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,6 +36,9 @@ import top.rslly.iot.dao.*;
 import top.rslly.iot.models.OtaXiaozhiEntity;
 import top.rslly.iot.models.ProductEntity;
 import top.rslly.iot.param.request.OtaXiaozhi;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.RedisUtil;
 import top.rslly.iot.utility.result.JsonResult;
@@ -48,7 +53,6 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,18 +60,12 @@ import java.util.Map;
 @Service
 @Slf4j
 public class OtaXiaozhiServiceImpl implements OtaXiaozhiService {
+  @Resource
+  private AuthorizationScope authorizationScope;
   @Resource
   private OtaXiaozhiRepository otaXiaozhiRepository;
   @Resource
   private ProductRepository productRepository;
-  @Resource
-  private WxProductBindRepository wxProductBindRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
-  @Resource
-  private WxUserRepository wxUserRepository;
-  @Resource
-  private UserRepository userRepository;
   @Autowired
   private RedisUtil redisUtil;
   @Value("${ota.xiaozhi.url}")
@@ -81,49 +79,19 @@ public class OtaXiaozhiServiceImpl implements OtaXiaozhiService {
   }
 
   @Override
-  public JsonResult<?> otaList(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    List<OtaXiaozhiEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<OtaXiaozhiEntity> otaXiaozhiEntityList =
-            otaXiaozhiRepository.findAllByProductId(s.getProductId());
-        result.addAll(otaXiaozhiEntityList);
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<OtaXiaozhiEntity> otaXiaozhiEntityList =
-            otaXiaozhiRepository.findAllByProductId(s.getProductId());
-        result.addAll(otaXiaozhiEntityList);
-      }
-    } else {
-      result = otaXiaozhiRepository.findAll();
-    }
-    if (result.isEmpty()) {
+  public JsonResult<?> otaList(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(OtaXiaozhiEntity.class);
+    Page<OtaXiaozhiEntity> result;
+    if (scope.isAdmin())
+      result = otaXiaozhiRepository.findAll(pageable);
+    else if (scope.getProductIds().isEmpty())
       return ResultTool.fail(ResultCode.COMMON_FAIL);
-    } else
-      return ResultTool.success(result);
+    else
+      result = otaXiaozhiRepository.findAllByProductIdIn(scope.getProductIds(), pageable);
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
   }
 
   @Override
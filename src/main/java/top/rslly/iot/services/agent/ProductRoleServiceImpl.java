@@ -21,6 +21,7 @@ package top.rslly.iot.services.agent;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -31,6 +32,7 @@ import top.rslly.iot.param.request.ProductRole;
 import top.rslly.iot.services.agent.ProductRoleService;
 import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.ai.voice.VoiceTimbre;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -67,6 +69,7 @@ public class ProductRoleServiceImpl implements ProductRoleService {
   }
 
   @Override
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROLE, allEntries = true)
   public List<ProductRoleEntity> deleteAllByProductId(int productId) {
     return productRoleRepository.deleteAllByProductId(productId);
   }
@@ -137,6 +140,7 @@ public class ProductRoleServiceImpl implements ProductRoleService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROLE, allEntries = true)
   public JsonResult<?> postProductRole(ProductRole productRole) {
     ProductRoleEntity productRoleEntity = new ProductRoleEntity();
     BeanUtils.copyProperties(productRole, productRoleEntity);
@@ -157,6 +161,7 @@ public class ProductRoleServiceImpl implements ProductRoleService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROLE, allEntries = true)
   public JsonResult<?> putProductRole(ProductRole productRole) {
     List<ProductRoleEntity> productRoleEntityList =
         productRoleRepository.findAllByProductId(productRole.getProductId());
@@ -177,6 +182,7 @@ public class ProductRoleServiceImpl implements ProductRoleService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROLE, allEntries = true)
   public JsonResult<?> deleteProductRole(int id) {
     List<ProductRoleEntity> productRoleEntityList = productRoleRepository.findAllById(id);
     if (productRoleEntityList.isEmpty())
@@ -20,6 +20,7 @@
 package top.rslly.iot.services.agent;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -28,6 +29,8 @@ import top.rslly.iot.param.request.ProductRouterSet;
 import top.rslly.iot.services.thingsModel.ProductServiceImpl;
 import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.RedisUtil;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -85,7 +88,7 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
       }
       for (var s : wxBindProductResponseList) {
         List<ProductRouterSetEntity> productRouterSetEntities =
-            productRouterSetRepository.deleteAllByProductId(s.getProductId());
+            productRouterSetRepository.findAllByProductId(s.getProductId());
         result.addAll(productRouterSetEntities);
       }
     } else if (!role.equals("[ROLE_admin]")) {
@@ -115,6 +118,7 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROUTER_SET, allEntries = true)
   public JsonResult<?> postProductRouterSet(ProductRouterSet productRouterSet) {
     if (productService.findAllById(productRouterSet.getProductId()).isEmpty())
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
@@ -129,6 +133,7 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
     if (redisUtil.hasKey("memory" + "chatProduct" + productRouterSet.getProductId())) {
       redisUtil.del("memory" + "chatProduct" + productRouterSet.getProductId());
     }
+    redisUtil.del(ChatMemory.SUMMARY_PREFIX + "chatProduct" + productRouterSet.getProductId());
     var otaXiaozhiEntityList =
         otaXiaozhiRepository.findAllByProductId(productRouterSet.getProductId());
     for (var s : otaXiaozhiEntityList) {
@@ -136,6 +141,8 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
           .hasKey("memory" + "chatProduct" + productRouterSet.getProductId() + s.getDeviceId())) {
         redisUtil.del("memory" + "chatProduct" + productRouterSet.getProductId() + s.getDeviceId());
       }
+      redisUtil.del(ChatMemory.SUMMARY_PREFIX + "chatProduct" + productRouterSet.getProductId()
+          + s.getDeviceId());
     }
     var wxProductActiveEntityList =
         wxProductActiveRepository.findAllByProductId(productRouterSet.getProductId());
@@ -143,6 +150,7 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
       if (redisUtil.hasKey("memory" + s.getOpenid())) {
         redisUtil.del("memory" + s.getOpenid());
       }
+      redisUtil.del(ChatMemory.SUMMARY_PREFIX + s.getOpenid());
     }
     var result = productRouterSetRepository.save(productRouterSetEntity);
     return ResultTool.success(result);
@@ -150,6 +158,7 @@ public class ProductRouterSetServiceImpl implements ProductRouterSetService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROUTER_SET, allEntries = true)
   public JsonResult<?> deleteProductRouterSet(int id) {
     var productRouterSetEntityList = productRouterSetRepository.findAllById(id);
     if (productRouterSetEntityList.isEmpty()) {
@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 告警异步派发。事件接入只负责入队，查库和发送邮件、微信由告警线程池完成。同一设备同一事件首次发生时立即通知， 去重窗口内的重复发生只计数，窗口结束时如有重复再合并通知一次。
+ */
+@Component
+@Slf4j
+public class AlarmDispatcher {
+  @Value("${alarm.dedupSeconds:60}")
+  private long dedupSeconds;
+  @Autowired
+  private AlarmEventServiceImpl alarmEventService;
+  @Autowired
+  @Qualifier("alarmExecutor")
+  private ThreadPoolTaskExecutor alarmExecutor;
+
+  // 设备名:事件id -> 窗口内被合并的次数
+  private final Map<String, AtomicInteger> windows = new ConcurrentHashMap<>();
+
+  public void emit(String deviceName, int eventId) {
+    if (dedupSeconds <= 0) {
+      submit(deviceName, eventId, 1);
+      return;
+    }
+    String key = deviceName + ":" + eventId;
+    boolean[] first = new boolean[1];
+    windows.compute(key, (k, suppressed) -> {
+      if (suppressed == null) {
+        first[0] = true;
+        return new AtomicInteger();
+      }
+      suppressed.incrementAndGet();
+      return suppressed;
+    });
+    if (!first[0])
+      return;
+    submit(deviceName, eventId, 1);
+    // 窗口在延迟线程上关闭，即使告警线程池繁忙也不会一直占着窗口
+    CompletableFuture.delayedExecutor(dedupSeconds, TimeUnit.SECONDS).execute(() -> {
+      AtomicInteger suppressed = windows.remove(key);
+      if (suppressed != null && suppressed.get() > 0)
+        submit(deviceName, eventId, suppressed.get());
+    });
+  }
+
+  private void submit(String deviceName, int eventId, int count) {
+    try {
+      alarmExecutor.execute(() -> {
+        try {
+          alarmEventService.alarmEvent(deviceName, eventId, count);
+        } catch (Exception e) {
+          log.error("告警发送失败{}:{}", deviceName, e.getMessage());
+        }
+      });
+    } catch (TaskRejectedException e) {
+      log.warn("告警队列已满，丢弃告警{}:{}", deviceName, eventId);
+    }
+  }
+}
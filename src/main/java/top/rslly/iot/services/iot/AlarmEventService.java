@@ -21,6 +21,7 @@ package top.rslly.iot.services.iot;
 
 import top.rslly.iot.models.AlarmEventEntity;
 import top.rslly.iot.param.request.AlarmEvent;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.utility.result.JsonResult;
 
 import java.util.List;
@@ -28,11 +29,11 @@ import java.util.List;
 public interface AlarmEventService {
   List<AlarmEventEntity> findAllById(int id);
 
-  JsonResult<?> getAlarmEvent(String token);
+  JsonResult<?> getAlarmEvent(String token, PageQuery pageQuery);
 
   JsonResult<?> postAlarmEvent(AlarmEvent alarmEvent);
 
   JsonResult<?> deleteAlarmEvent(int id);
 
-  void alarmEvent(String deviceName, int eventId);
+  void alarmEvent(String deviceName, int eventId, int count);
 }
@@ -23,12 +23,16 @@ import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
 import top.rslly.iot.models.*;
 import top.rslly.iot.param.request.AlarmEvent;
-import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.utility.SendEmail;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
@@ -37,7 +41,6 @@ import top.rslly.iot.utility.wx.DealWx;
 
 import javax.annotation.Resource;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,19 +49,13 @@ import java.util.Map;
 @Slf4j
 public class AlarmEventServiceImpl implements AlarmEventService {
   @Resource
-  private WxUserRepository wxUserRepository;
+  private AuthorizationScope authorizationScope;
   @Resource
-  private WxProductBindRepository wxProductBindRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
-  @Resource
-  private ProductModelRepository productModelRepository;
+  private AlarmRecipientIndex alarmRecipientIndex;
   @Resource
   private ProductEventRepository productEventRepository;
   @Resource
   private AlarmEventRepository alarmEventRepository;
-  @Resource
-  private UserRepository userRepository;
   @Autowired
   private SendEmail sendEmail;
   @Autowired
@@ -77,65 +74,19 @@ public class AlarmEventServiceImpl implements AlarmEventService {
   }
 
   @Override
-  public JsonResult<?> getAlarmEvent(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    List<AlarmEventEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductEventEntity> productEventEntityList =
-              productEventRepository.findAllByModelId(s1.getId());
-          for (var s2 : productEventEntityList) {
-            List<AlarmEventEntity> alarmEventEntityList =
-                alarmEventRepository.findAllByEventId(s2.getId());
-            result.addAll(alarmEventEntityList);
-          }
-        }
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductEventEntity> productEventEntityList =
-              productEventRepository.findAllByModelId(s1.getId());
-          for (var s2 : productEventEntityList) {
-            List<AlarmEventEntity> alarmEventEntityList =
-                alarmEventRepository.findAllByEventId(s2.getId());
-            result.addAll(alarmEventEntityList);
-          }
-        }
-      }
-    } else {
-      result = alarmEventRepository.findAll();
-    }
-    if (result.isEmpty()) {
+  public JsonResult<?> getAlarmEvent(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(AlarmEventEntity.class);
+    Page<AlarmEventEntity> result;
+    if (scope.isAdmin())
+      result = alarmEventRepository.findAll(pageable);
+    else if (scope.getProductIds().isEmpty())
       return ResultTool.fail(ResultCode.COMMON_FAIL);
-    } else
-      return ResultTool.success(result);
+    else
+      result = alarmEventRepository.findPageByProductIds(scope.getProductIds(), pageable);
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
   }
 
   @Override
@@ -152,6 +103,7 @@ public class AlarmEventServiceImpl implements AlarmEventService {
     } else {
       alarmEventEntity.setEventId(productEventEntityList.get(0).getId());
       AlarmEventEntity alarmEventEntity1 = alarmEventRepository.save(alarmEventEntity);
+      alarmRecipientIndex.invalidateEvents();
       return ResultTool.success(alarmEventEntity1);
     }
   }
@@ -163,47 +115,33 @@ public class AlarmEventServiceImpl implements AlarmEventService {
     if (result.isEmpty())
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
     else {
+      alarmRecipientIndex.invalidateEvents();
       return ResultTool.success(result);
     }
 
   }
 
   @Override
-  public void alarmEvent(String deviceName, int eventId) {
-    List<AlarmEventEntity> alarmEventEntityList = alarmEventRepository.findAllByEventId(eventId);
-    if (alarmEventEntityList.isEmpty())
+  public void alarmEvent(String deviceName, int eventId, int count) {
+    var target = alarmRecipientIndex.target(eventId);
+    if (target == null)
       return;
-    List<ProductEventEntity> productEventEntityList =
-        productEventRepository.findAllById(eventId);
-    if (productEventEntityList.isEmpty())
-      return;
-    List<ProductModelEntity> productModelEntityList =
-        productModelRepository.findAllById(productEventEntityList.get(0).getModelId());
-    if (productModelEntityList.isEmpty())
-      return;
-    List<UserProductBindEntity> userProductBindEntityList =
-        userProductBindRepository.findAllByProductId(productModelEntityList.get(0).getProductId());
-    List<WxProductBindEntity> wxProductBindEntityList =
-        wxProductBindRepository.findAllByProductId(productModelEntityList.get(0).getProductId());
-    for (var rootUser : userRepository.findAllByRole("admin")) {
-      alarmEmailSend(deviceName, productEventEntityList.get(0).getName(), rootUser);
-    }
-    for (var s1 : userProductBindEntityList) {
-      for (var s2 : userRepository.findAllById(s1.getUserId())) {
-        alarmEmailSend(deviceName, productEventEntityList.get(0).getName(), s2);
-      }
+    // 去重窗口内的重复告警合并为一条，附带发生次数
+    String eventName = target.getEventName();
+    if (count > 1)
+      eventName += "（短时间内共发生" + count + "次）";
+    var recipients = alarmRecipientIndex.recipients(target.getProductId());
+    for (var user : recipients.getUsers()) {
+      alarmEmailSend(deviceName, eventName, user);
     }
-    for (var wxProductBindEntity : wxProductBindEntityList) {
+    for (var openid : recipients.getOpenids()) {
       try {
-        dealWx.sendContent(wxProductBindEntity.getOpenid(),
-            "设备：" + deviceName + "发生事件：" + productEventEntityList.get(0).getName(), microappid);
+        dealWx.sendContent(openid, "设备：" + deviceName + "发生事件：" + eventName, microappid);
       } catch (IOException e) {
         log.error("小程序一号发送失败{}", e.getMessage());
       }
       try {
-        dealWx.sendContent(wxProductBindEntity.getOpenid(),
-            "设备：" + deviceName + "发生事件：" + productEventEntityList.get(0).getName(),
-            microappid2);
+        dealWx.sendContent(openid, "设备：" + deviceName + "发生事件：" + eventName, microappid2);
       } catch (IOException e) {
         log.error("小程序二号发送失败{}", e.getMessage());
       }
@@ -216,18 +154,22 @@ public class AlarmEventServiceImpl implements AlarmEventService {
       contentObject.put("value", deviceName);
       contentObject.put("color", "#0000CD");
       jsonObject.put("deviceName", contentObject);
-      eventObject.put("value", productEventEntityList.get(0).getName());
+      eventObject.put("value", eventName);
       jsonObject.put("event", eventObject);
-      dealWx.templatePost(jsonObject, templateId, wxProductBindEntity.getOpenid());
+      dealWx.templatePost(jsonObject, templateId, openid);
     }
 
   }
 
-  private void alarmEmailSend(String deviceName, String eventName, UserEntity userEntity) {
+  private void alarmEmailSend(String deviceName, String eventName,
+      AlarmRecipientIndex.Recipient recipient) {
     Map<String, Object> map = new HashMap<>();
     map.put("deviceName", deviceName);
     map.put("event", eventName);
-    map.put("username", userEntity.getUsername());
-    sendEmail.contextLoads(new String[] {userEntity.getEmail()}, "事件告警", "alarm", map);
+    // 用户名每个收件人不同，同一告警的正文只渲染一次
+    Map<String, Object> recipientMap = new HashMap<>();
+    recipientMap.put("username", recipient.getUsername());
+    sendEmail.contextLoads(new String[] {recipient.getEmail()}, "事件告警", "alarm", map,
+        recipientMap);
   }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import top.rslly.iot.dao.*;
+import top.rslly.iot.services.AuthorizationScope;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 告警接收人索引：告警事件id到事件名和产品id、产品id到绑定用户邮箱和微信openid、管理员邮箱均在首次用到时加载并常驻内存，告警派发只查内存。
+ * 监听授权范围的失效通知，绑定关系或产品变化时整体重建；告警配置变化时通过本类的频道通知各节点。
+ */
+@Component
+@Slf4j
+public class AlarmRecipientIndex implements MessageListener {
+  public static final String INVALIDATE_CHANNEL = "alarmRecipientInvalidate";
+  private static final String ADMINS = "admins";
+  private static final String EVENT_PREFIX = "event:";
+  private static final String PRODUCT_PREFIX = "product:";
+  private static final AlarmTarget NONE = new AlarmTarget(null, 0);
+
+  // 兜底过期，覆盖直接改库等没有通知的变化
+  private final Cache<String, Object> index =
+      CacheBuilder.newBuilder().maximumSize(10000).expireAfterWrite(10, TimeUnit.MINUTES).build();
+  @Resource
+  private AlarmEventRepository alarmEventRepository;
+  @Resource
+  private ProductEventRepository productEventRepository;
+  @Resource
+  private ProductModelRepository productModelRepository;
+  @Resource
+  private UserProductBindRepository userProductBindRepository;
+  @Resource
+  private WxProductBindRepository wxProductBindRepository;
+  @Resource
+  private UserRepository userRepository;
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Getter
+  @AllArgsConstructor
+  public static class AlarmTarget {
+    private final String eventName;
+    private final int productId;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class Recipient {
+    private final String username;
+    private final String email;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class Recipients {
+    private final List<Recipient> users;
+    private final List<String> openids;
+  }
+
+  /**
+   * 配置了告警的事件，未配置时返回null
+   */
+  public AlarmTarget target(int eventId) {
+    AlarmTarget target = (AlarmTarget) get(EVENT_PREFIX + eventId, () -> loadTarget(eventId));
+    return target == NONE ? null : target;
+  }
+
+  /**
+   * 产品的接收人，包括管理员
+   */
+  public Recipients recipients(int productId) {
+    @SuppressWarnings("unchecked")
+    List<Recipient> admins = (List<Recipient>) get(ADMINS, () -> {
+      List<Recipient> list = new ArrayList<>();
+      for (var s : userRepository.findAllByRole("admin"))
+        list.add(new Recipient(s.getUsername(), s.getEmail()));
+      return List.copyOf(list);
+    });
+    Recipients bound =
+        (Recipients) get(PRODUCT_PREFIX + productId, () -> loadRecipients(productId));
+    List<Recipient> users = new ArrayList<>(admins);
+    users.addAll(bound.getUsers());
+    return new Recipients(users, bound.getOpenids());
+  }
+
+  private Object get(String key, Callable<Object> loader) {
+    try {
+      return index.get(key, loader);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private AlarmTarget loadTarget(int eventId) {
+    if (alarmEventRepository.findAllByEventId(eventId).isEmpty())
+      return NONE;
+    var events = productEventRepository.findAllById(eventId);
+    if (events.isEmpty())
+      return NONE;
+    var models = productModelRepository.findAllById(events.get(0).getModelId());
+    if (models.isEmpty())
+      return NONE;
+    return new AlarmTarget(events.get(0).getName(), models.get(0).getProductId());
+  }
+
+  private Recipients loadRecipients(int productId) {
+    List<Recipient> users = new ArrayList<>();
+    for (var s1 : userProductBindRepository.findAllByProductId(productId)) {
+      for (var s2 : userRepository.findAllById(s1.getUserId()))
+        users.add(new Recipient(s2.getUsername(), s2.getEmail()));
+    }
+    Set<String> openids = new LinkedHashSet<>();
+    for (var s : wxProductBindRepository.findAllByProductId(productId))
+      openids.add(s.getOpenid());
+    return new Recipients(List.copyOf(users), List.copyOf(openids));
+  }
+
+  /**
+   * 告警配置变化
+   */
+  public void invalidateEvents() {
+    Runnable broadcast = () -> {
+      index.asMap().keySet().removeIf(k -> k.startsWith(EVENT_PREFIX));
+      try {
+        redisTemplate.convertAndSend(INVALIDATE_CHANNEL, EVENT_PREFIX);
+      } catch (Exception e) {
+        log.error("alarm recipient invalidate publish error:{}", e.getMessage());
+      }
+    };
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          broadcast.run();
+        }
+      });
+    } else
+      broadcast.run();
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+    if (body == null)
+      return;
+    String event = body.toString();
+    if (event.equals(EVENT_PREFIX)) {
+      index.asMap().keySet().removeIf(k -> k.startsWith(EVENT_PREFIX));
+    } else if (!event.startsWith("model:")) {
+      // 绑定、解绑、产品变化都不频繁，直接整体重建
+      index.invalidateAll();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.dao.ProductDataRepository;
+import top.rslly.iot.dao.ProductFunctionRepository;
+import top.rslly.iot.utility.ControlSchema;
+import top.rslly.iot.utility.cache.EntityCacheManager;
+
+import javax.annotation.Resource;
+
+@Component
+public class ControlSchemaCompiler {
+  @Resource
+  private ProductDataRepository productDataRepository;
+  @Resource
+  private ProductFunctionRepository productFunctionRepository;
+
+  /**
+   * 编译物模型的可写属性或某个服务的输入参数，物模型属性和服务变更时整体失效
+   *
+   * @param modelId 物模型id
+   * @param mode attribute or service
+   * @param functionName 服务名称，属性模式传null
+   * @return 没有可控制的参数时返回null
+   */
+  @Cacheable(cacheNames = EntityCacheManager.CONTROL_SCHEMA, unless = "#result == null")
+  public ControlSchema compile(int modelId, String mode, String functionName) {
+    ControlSchema schema;
+    boolean empty = true;
+    if (mode.equals("attribute")) {
+      schema = new ControlSchema(null);
+      for (var s : productDataRepository.findAllByModelId(modelId)) {
+        if (s.getrRw() == 1) {
+          schema.addField(s.getJsonKey(), s.getType(), s.getMax(), s.getMin());
+          empty = false;
+        }
+      }
+    } else {
+      schema = new ControlSchema(functionName);
+      for (var s : productFunctionRepository.findAllByModelIdAndFunctionNameAndDataType(modelId,
+          functionName, "input")) {
+        schema.addField(s.getJsonKey(), s.getType(), s.getMax(), s.getMin());
+        empty = false;
+      }
+    }
+    return empty ? null : schema;
+  }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.services.thingsModel.DeviceOnlineCounter;
+import top.rslly.iot.transfer.mqtt.MqttConnectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线设备的待下发指令。outbox:{设备名} 为指令key到指令内容的hash，同一key的新指令覆盖旧指令；outboxState:{指令id}
+ * 记录投递状态。设备订阅下发主题后一次取出匹配的指令集中发送。
+ */
+@Component
+@Slf4j
+public class DeviceOutbox {
+  public static final long MAX_EXPIRE_SECONDS = 7 * 24 * 3600L;
+  private static final long STATE_RETAIN_SECONDS = 24 * 3600L;
+  private static final String OUTBOX_PREFIX = "outbox:";
+  private static final String STATE_PREFIX = "outboxState:";
+
+  public static final String PENDING = "pending";
+  public static final String DELIVERED = "delivered";
+  public static final String REPLACED = "replaced";
+  public static final String EXPIRED = "expired";
+  public static final String FAILED = "failed";
+
+  // 写入新指令并返回被覆盖的旧指令，hash的过期时间取最晚的指令
+  private static final RedisScript<String> PUT_SCRIPT = new DefaultRedisScript<>(
+      """
+          local old = redis.call('HGET', KEYS[1], ARGV[1])
+          redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+          if redis.call('TTL', KEYS[1]) < tonumber(ARGV[3]) then
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+          end
+          return old
+          """,
+      String.class);
+  // 只取走内容未被新指令覆盖的项，多个节点同时投递时每条指令只会被一个节点取走
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+      """
+          local claimed = {}
+          for i = 1, #ARGV, 2 do
+            if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then
+              redis.call('HDEL', KEYS[1], ARGV[i])
+              table.insert(claimed, ARGV[i])
+            end
+          end
+          return claimed
+          """,
+      List.class);
+
+  @Autowired
+  private StringRedisTemplate stringRedisTemplate;
+  @Autowired
+  private DeviceOnlineCounter deviceOnlineCounter;
+  @Autowired
+  @Qualifier("deviceOutboxExecutor")
+  private ThreadPoolTaskExecutor deviceOutboxExecutor;
+
+  /**
+   * 缓存一条指令，设备已经重新上线时立即投递
+   *
+   * @param key 同一设备相同key的指令只保留最新一条
+   * @return 指令状态
+   */
+  public JSONObject enqueue(ProductDeviceEntity device, String commandId, String key, String topic,
+      byte[] payload, int qos, long expireSeconds) {
+    long now = System.currentTimeMillis();
+    JSONObject entry = new JSONObject();
+    entry.put("id", commandId);
+    entry.put("topic", topic);
+    entry.put("payload", new String(payload, StandardCharsets.UTF_8));
+    entry.put("qos", qos);
+    entry.put("createdAt", now);
+    entry.put("expireAt", now + expireSeconds * 1000);
+    JSONObject state = setState(commandId, device.getName(), PENDING, expireSeconds);
+    String old = stringRedisTemplate.execute(PUT_SCRIPT, List.of(OUTBOX_PREFIX + device.getName()),
+        key, entry.toJSONString(), String.valueOf(expireSeconds));
+    if (old != null)
+      setState(JSONObject.parseObject(old).getString("id"), device.getName(), REPLACED, 0);
+    // 入队期间设备可能刚好完成订阅，此时不会再有订阅事件触发投递
+    if (deviceOnlineCounter.isOnline(device.getId()))
+      drain(device.getName(), "#");
+    return state;
+  }
+
+  /**
+   * 设备订阅主题后投递匹配该主题过滤器的指令，不占用exhook回调线程
+   */
+  public void drainAsync(String deviceName, String topicFilter) {
+    try {
+      deviceOutboxExecutor.execute(() -> drain(deviceName, topicFilter));
+    } catch (TaskRejectedException e) {
+      log.warn("离线指令投递任务过多，丢弃设备{}本次投递", deviceName);
+    }
+  }
+
+  public void drain(String deviceName, String topicFilter) {
+    String outbox = OUTBOX_PREFIX + deviceName;
+    Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(outbox);
+    if (entries.isEmpty())
+      return;
+    List<String> args = new ArrayList<>();
+    Map<String, JSONObject> candidates = new HashMap<>();
+    entries.forEach((k, v) -> {
+      JSONObject entry = JSONObject.parseObject(v.toString());
+      if (matches(topicFilter, entry.getString("topic"))) {
+        args.add(k.toString());
+        args.add(v.toString());
+        candidates.put(k.toString(), entry);
+      }
+    });
+    if (args.isEmpty())
+      return;
+    @SuppressWarnings("unchecked")
+    List<String> claimed =
+        stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(outbox), args.toArray());
+    if (claimed == null || claimed.isEmpty())
+      return;
+    List<JSONObject> batch = new ArrayList<>();
+    for (String k : claimed)
+      batch.add(candidates.get(k));
+    batch.sort(Comparator.comparingLong(e -> e.getLongValue("createdAt")));
+    long now = System.currentTimeMillis();
+    Map<String, String> results = new LinkedHashMap<>();
+    for (var entry : batch) {
+      String id = entry.getString("id");
+      if (entry.getLongValue("expireAt") < now) {
+        results.put(id, EXPIRED);
+        continue;
+      }
+      try {
+        MqttConnectionUtils.publish(entry.getString("topic"),
+            entry.getString("payload").getBytes(StandardCharsets.UTF_8), entry.getIntValue("qos"));
+        results.put(id, DELIVERED);
+      } catch (MqttException e) {
+        log.error("outbox publish error {}:{}", deviceName, e.getMessage());
+        results.put(id, FAILED);
+      }
+    }
+    log.info("设备{}投递缓存指令{}条", deviceName, results.size());
+    // 状态一次管道写回
+    stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Object execute(RedisOperations operations) throws DataAccessException {
+        results.forEach((id, s) -> operations.opsForValue().set(STATE_PREFIX + id,
+            state(id, deviceName, s).toJSONString(), STATE_RETAIN_SECONDS, TimeUnit.SECONDS));
+        return null;
+      }
+    });
+  }
+
+  /**
+   * 查询指令投递状态，不存在或已过保留期返回null；设备一直未上线时待投递的指令过期后返回expired
+   */
+  public JSONObject getState(String commandId) {
+    String value = stringRedisTemplate.opsForValue().get(STATE_PREFIX + commandId);
+    if (value == null)
+      return null;
+    JSONObject state = JSONObject.parseObject(value);
+    if (PENDING.equals(state.getString("state")) && state.containsKey("expireAt")
+        && state.getLongValue("expireAt") < System.currentTimeMillis())
+      state.put("state", EXPIRED);
+    return state;
+  }
+
+  private JSONObject setState(String commandId, String deviceName, String status,
+      long expireSeconds) {
+    JSONObject state = state(commandId, deviceName, status);
+    if (expireSeconds > 0)
+      state.put("expireAt", state.getLongValue("updatedAt") + expireSeconds * 1000);
+    stringRedisTemplate.opsForValue().set(STATE_PREFIX + commandId, state.toJSONString(),
+        expireSeconds + STATE_RETAIN_SECONDS, TimeUnit.SECONDS);
+    return state;
+  }
+
+  private static JSONObject state(String commandId, String deviceName, String status) {
+    JSONObject state = new JSONObject();
+    state.put("commandId", commandId);
+    state.put("device", deviceName);
+    state.put("state", status);
+    state.put("updatedAt", System.currentTimeMillis());
+    return state;
+  }
+
+  // mqtt主题过滤器匹配，支持+和#
+  static boolean matches(String filter, String topic) {
+    String[] f = filter.split("/", -1);
+    String[] t = topic.split("/", -1);
+    for (int i = 0; i < f.length; i++) {
+      if (f[i].equals("#"))
+        return true;
+      if (i >= t.length || !f[i].equals("+") && !f[i].equals(t[i]))
+        return false;
+    }
+    return f.length == t.length;
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.utility.RedisUtil;
+import top.rslly.iot.utility.result.JsonResult;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 设备属性影子。shadow:reported:{设备id} 为设备最近上报的属性值，shadow:desired:{设备id}
+ * 为平台最近下发的属性值。下发值与上报值相同且没有更新的下发时跳过；设备下线时清空上报值，避免用重启前的状态判断。
+ */
+@Component
+@Slf4j
+public class DeviceShadow {
+  public static final long MAX_WINDOW_MS = 5000;
+  private static final String REPORTED_PREFIX = "shadow:reported:";
+  private static final String DESIRED_PREFIX = "shadow:desired:";
+  private static final long SHADOW_TTL_SECONDS = 3600;
+
+  @Autowired
+  private RedisUtil redisUtil;
+  @Autowired
+  @Qualifier("taskExecutor")
+  private ThreadPoolTaskExecutor taskExecutor;
+
+  // 窗口内等待合并下发的属性写入，按设备区分，仅在本节点内合并
+  private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+
+  private static class Pending {
+    private final Map<String, String> values = new LinkedHashMap<>();
+    private final CompletableFuture<JsonResult<?>> result = new CompletableFuture<>();
+    private int writes;
+  }
+
+  /**
+   * 设备上报属性
+   */
+  public void reported(int deviceId, Map<String, Object> values) {
+    if (!values.isEmpty())
+      redisUtil.hmset(REPORTED_PREFIX + deviceId, values, SHADOW_TTL_SECONDS);
+  }
+
+  /**
+   * 平台下发属性成功
+   */
+  public void desired(int deviceId, List<String> key, List<String> value) {
+    Map<String, Object> values = new HashMap<>();
+    for (int i = 0; i < key.size(); i++)
+      values.put(key.get(i), value.get(i));
+    redisUtil.hmset(DESIRED_PREFIX + deviceId, values, SHADOW_TTL_SECONDS);
+  }
+
+  /**
+   * 设备最近上报的全部属性，读取失败时返回空
+   */
+  public Map<Object, Object> reported(int deviceId) {
+    try {
+      return redisUtil.hmget(REPORTED_PREFIX + deviceId);
+    } catch (Exception e) {
+      log.error("device shadow read error:{}", e.getMessage());
+      return Map.of();
+    }
+  }
+
+  public void clearReported(int deviceId) {
+    redisUtil.del(REPORTED_PREFIX + deviceId);
+  }
+
+  /**
+   * 找出不需要下发的属性：上报值已等于目标值，且最近一次下发的也是该值
+   *
+   * @return 可以省略的属性名
+   */
+  public Set<String> unchanged(int deviceId, List<String> key, List<String> value) {
+    Map<Object, Object> reported;
+    Map<Object, Object> desired;
+    try {
+      reported = redisUtil.hmget(REPORTED_PREFIX + deviceId);
+      if (reported.isEmpty())
+        return Set.of();
+      desired = redisUtil.hmget(DESIRED_PREFIX + deviceId);
+    } catch (Exception e) {
+      log.error("device shadow read error:{}", e.getMessage());
+      return Set.of();
+    }
+    Set<String> result = new HashSet<>();
+    for (int i = 0; i < key.size(); i++) {
+      String k = key.get(i);
+      Object d = desired.get(k);
+      if (same(reported.get(k), value.get(i)) && (d == null || same(d, value.get(i))))
+        result.add(k);
+    }
+    return result;
+  }
+
+  private static boolean same(Object stored, String value) {
+    if (stored == null || value == null)
+      return false;
+    String s = stored.toString();
+    if (s.equals(value))
+      return true;
+    try {
+      return new BigDecimal(s).compareTo(new BigDecimal(value)) == 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * 合并窗口内对同一设备的属性写入，同一属性取最后的值，窗口结束时只下发一次
+   *
+   * @param publish 以合并后的属性和合并的写入次数下发
+   * @return 窗口内所有写入共享同一个结果
+   */
+  public CompletableFuture<JsonResult<?>> coalesce(int deviceId, List<String> key,
+      List<String> value, long windowMs,
+      BiFunction<Map<String, String>, Integer, CompletableFuture<JsonResult<?>>> publish) {
+    boolean[] created = new boolean[1];
+    Pending p = pending.compute(deviceId, (k, old) -> {
+      if (old == null) {
+        old = new Pending();
+        created[0] = true;
+      }
+      for (int i = 0; i < key.size(); i++)
+        old.values.put(key.get(i), value.get(i));
+      old.writes++;
+      return old;
+    });
+    if (created[0]) {
+      CompletableFuture.runAsync(() -> {
+        // 移除后不会再有写入合并到p
+        pending.remove(deviceId, p);
+        try {
+          publish.apply(p.values, p.writes).whenComplete((r, e) -> {
+            if (e != null)
+              p.result.completeExceptionally(e);
+            else
+              p.result.complete(r);
+          });
+        } catch (RuntimeException e) {
+          p.result.completeExceptionally(e);
+        }
+      }, CompletableFuture.delayedExecutor(windowMs, TimeUnit.MILLISECONDS, taskExecutor));
+    }
+    return p.result;
+  }
+}
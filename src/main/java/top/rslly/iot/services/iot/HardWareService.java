@@ -20,9 +20,20 @@
 package top.rslly.iot.services.iot;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import top.rslly.iot.param.request.ControlParam;
+import top.rslly.iot.param.request.GroupControlParam;
 import top.rslly.iot.utility.result.JsonResult;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface HardWareService {
   JsonResult<?> control(ControlParam controlParam, String... header) throws MqttException;
+
+  CompletableFuture<JsonResult<?>> controlAsync(ControlParam controlParam, String... header)
+      throws MqttException;
+
+  JsonResult<?> getControlState(String commandId, String header);
+
+  SseEmitter controlGroup(GroupControlParam param, String header);
 }
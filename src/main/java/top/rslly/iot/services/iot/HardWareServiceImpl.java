@@ -19,170 +19,396 @@
  */
 package top.rslly.iot.services.iot;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import top.rslly.iot.dao.ProductDataRepository;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import top.rslly.iot.dao.ProductDeviceRepository;
-import top.rslly.iot.dao.ProductFunctionRepository;
-import top.rslly.iot.models.ProductDataEntity;
-import top.rslly.iot.models.ProductFunctionEntity;
+import top.rslly.iot.dao.ProductModelRepository;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.request.ControlParam;
+import top.rslly.iot.param.request.GroupControlParam;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.services.SafetyServiceImpl;
-import top.rslly.iot.services.iot.HardWareService;
+import top.rslly.iot.transfer.ServiceInvokeRegistry;
 import top.rslly.iot.transfer.mqtt.MqttConnectionUtils;
-import top.rslly.iot.utility.JsonCreate;
-import top.rslly.iot.utility.RedisUtil;
+import top.rslly.iot.utility.ControlSchema;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class HardWareServiceImpl implements HardWareService {
-  @Resource
-  private ProductDataRepository productDataRepository;
+  // 批量控制同时在途的设备数
+  private static final int GROUP_CONCURRENCY = 32;
+  private static final long GROUP_TIMEOUT_MS = 10 * 60 * 1000L;
   @Resource
   private ProductDeviceRepository productDeviceRepository;
+  @Autowired
+  private ControlSchemaCompiler controlSchemaCompiler;
   @Resource
-  private ProductFunctionRepository productFunctionRepository;
+  private ProductModelRepository productModelRepository;
   @Autowired
   private SafetyServiceImpl safetyService;
   @Autowired
-  private RedisUtil redisUtil;
+  private AuthorizationScope authorizationScope;
+  @Autowired
+  private ServiceInvokeRegistry serviceInvokeRegistry;
+  @Autowired
+  private DeviceOutbox deviceOutbox;
+  @Autowired
+  private DeviceShadow deviceShadow;
+  @Autowired
+  @Qualifier("groupControlExecutor")
+  private ThreadPoolTaskExecutor groupControlExecutor;
+
+  /**
+   * 按物模型校验并编码好的指令，同一物模型下的设备共用
+   */
+  @AllArgsConstructor
+  private static class Command {
+    private final String topic;
+    private final ControlSchema.Payload payload;
+    private final boolean service;
+  }
 
   @Override
   public JsonResult<?> control(ControlParam controlParam, String... header) throws MqttException {
+    return controlAsync(controlParam, header).join();
+  }
+
+  @Override
+  public CompletableFuture<JsonResult<?>> controlAsync(ControlParam controlParam,
+      String... header) throws MqttException {
     var deviceEntityList = productDeviceRepository.findAllByName(controlParam.getName());
     if (deviceEntityList.isEmpty()) {
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
     }
     if (controlParam.getQos() < 0 || controlParam.getQos() > 2)
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
     if (!controlParam.getMode().equals("service") && !controlParam.getMode().equals("attribute"))
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
     int allow = deviceEntityList.get(0).getAllow();
     if (allow == 0) {
-      return ResultTool.fail(ResultCode.DEVICE_ABANDON);
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.DEVICE_ABANDON));
     }
     int modelId = deviceEntityList.get(0).getModelId();
     if (header.length != 0) {
       if (!safetyService.controlAuthorizeModel(header[0], modelId)) {
-        return ResultTool.fail(ResultCode.NO_PERMISSION);
+        return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.NO_PERMISSION));
       }
     }
-    List<ProductDataEntity> productDataEntities = productDataRepository.findAllByModelId(modelId);
-    List<String> productDataKey = new ArrayList<>();
-    Map<String, String> productTypeMap = new HashMap<>();
-    Map<String, String> dataMaxMap = new HashMap<>();
-    Map<String, String> dataMinMap = new HashMap<>();
-    List<String> productType = new ArrayList<>();
-    List<String> controlKey = new ArrayList<>();
-    List<String> controlValue = new ArrayList<>();
-    List<String> dataMax = new ArrayList<>();
-    List<String> dataMin = new ArrayList<>();
-    if (controlParam.getMode().equals("attribute")) {
+    if (controlParam.getMode().equals("attribute"))
       controlParam.setFunctionName(null); // 关闭服务字段输出
-      if (productDataEntities.isEmpty()) {
-        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
-      }
-      for (var s : productDataEntities) {
-        if (s.getrRw() == 1) {
-          productDataKey.add(s.getJsonKey());
-          productTypeMap.put(s.getJsonKey(), s.getType());
-          if (s.getMax() != null || s.getMin() != null) {
-            dataMaxMap.put(s.getJsonKey(), s.getMax());
-            dataMinMap.put(s.getJsonKey(), s.getMin());
+    Command command = compile(modelId, controlParam.getMode(), controlParam.getFunctionName(),
+        controlParam.getStatus(), controlParam.getKey(), controlParam.getValue());
+    if (command == null)
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
+    var device = deviceEntityList.get(0);
+    List<String> key = controlParam.getKey();
+    List<String> value = controlParam.getValue();
+    Set<String> elided = Set.of();
+    if (!command.service) {
+      // 与设备上报状态一致的属性不再下发
+      elided = deviceShadow.unchanged(device.getId(), key, value);
+      if (!elided.isEmpty()) {
+        key = new ArrayList<>();
+        value = new ArrayList<>();
+        for (int i = 0; i < controlParam.getKey().size(); i++) {
+          if (!elided.contains(controlParam.getKey().get(i))) {
+            key.add(controlParam.getKey().get(i));
+            value.add(controlParam.getValue().get(i));
           }
         }
+        if (key.isEmpty())
+          return CompletableFuture.completedFuture(annotate(ResultTool.success(), elided, 0));
+        command = compile(modelId, controlParam.getMode(), null, null, key, value);
       }
-    } else { // service
-      if (controlParam.getFunctionName() == null || controlParam.getStatus() == null) {
-        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    boolean sync = command.service && "sync".equals(controlParam.getStatus());
+    Integer expire = controlParam.getExpire();
+    if (expire != null && !sync) {
+      if (expire <= 0 || expire > DeviceOutbox.MAX_EXPIRE_SECONDS)
+        return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
+      if (!"connected".equals(device.getOnline())) {
+        String commandId = serviceInvokeRegistry.newRequestId();
+        String outboxKey =
+            command.topic + ":" + controlParam.getFunctionName() + ":" + new TreeSet<>(key);
+        return CompletableFuture.completedFuture(ResultTool.success(deviceOutbox.enqueue(device,
+            commandId, outboxKey, topic(device.getName(), command),
+            command.payload.encode(command.service ? commandId : null), controlParam.getQos(),
+            expire)));
       }
-      List<ProductFunctionEntity> productFunctionEntities =
-          productFunctionRepository.findAllByModelIdAndFunctionNameAndDataType(modelId,
-              controlParam.getFunctionName(), "input");
-      if (productFunctionEntities.isEmpty()) {
-        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    if (command.service)
+      return dispatch(device.getName(), command, controlParam.getFunctionName(), sync,
+          controlParam.getQos());
+    Integer window = controlParam.getWindow();
+    Set<String> finalElided = elided;
+    if (window != null && window > 0) {
+      if (window > DeviceShadow.MAX_WINDOW_MS)
+        return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
+      return deviceShadow.coalesce(device.getId(), key, value, window, (merged, writes) -> {
+        List<String> mergedKey = new ArrayList<>(merged.keySet());
+        List<String> mergedValue = new ArrayList<>(merged.values());
+        Command mergedCommand = compile(modelId, "attribute", null, null, mergedKey, mergedValue);
+        if (mergedCommand == null)
+          return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.PARAM_NOT_VALID));
+        return publishAttribute(device.getId(), device.getName(), mergedCommand, mergedKey,
+            mergedValue, controlParam.getQos())
+                .thenApply(r -> annotate(r, finalElided, writes));
+      });
+    }
+    return publishAttribute(device.getId(), device.getName(), command, key, value,
+        controlParam.getQos()).thenApply(r -> annotate(r, finalElided, 0));
+  }
+
+  // 属性下发成功后记录期望值
+  private CompletableFuture<JsonResult<?>> publishAttribute(int deviceId, String deviceName,
+      Command command, List<String> key, List<String> value, int qos) {
+    try {
+      var result = dispatch(deviceName, command, null, false, qos);
+      deviceShadow.desired(deviceId, key, value);
+      return result;
+    } catch (MqttException e) {
+      log.error("属性下发失败{}: {}", deviceName, e.getMessage());
+      return CompletableFuture.completedFuture(ResultTool.fail(ResultCode.COMMON_FAIL));
+    }
+  }
+
+  // 有属性被省略或写入被合并时，在结果中说明
+  private static JsonResult<?> annotate(JsonResult<?> result, Set<String> elided, int writes) {
+    if (!result.getSuccess() || elided.isEmpty() && writes <= 1)
+      return result;
+    JSONObject jsonObject = new JSONObject();
+    jsonObject.put("payload", result.getData());
+    jsonObject.put("elided", elided);
+    jsonObject.put("coalesced", writes);
+    return ResultTool.success(jsonObject);
+  }
+
+  @Override
+  public JsonResult<?> getControlState(String commandId, String header) {
+    var state = deviceOutbox.getState(commandId);
+    if (state == null)
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    if (!safetyService.controlAuthorizeDevice(header, state.getString("device")))
+      return ResultTool.fail(ResultCode.NO_PERMISSION);
+    return ResultTool.success(state);
+  }
+
+  @Override
+  public SseEmitter controlGroup(GroupControlParam param, String header) {
+    SseEmitter emitter = new SseEmitter(GROUP_TIMEOUT_MS);
+    String mode = param.getMode();
+    int targets = (param.getDeviceIds() != null ? 1 : 0) + (param.getModelId() != null ? 1 : 0)
+        + (param.getProductId() != null ? 1 : 0);
+    if (targets != 1 || param.getQos() < 0 || param.getQos() > 2
+        || !mode.equals("service") && !mode.equals("attribute")) {
+      return finish(emitter, ResultTool.fail(ResultCode.PARAM_NOT_VALID));
+    }
+    if (mode.equals("attribute"))
+      param.setFunctionName(null);
+    // 只查一次授权范围，后续按集合判断
+    var scope = authorizationScope.of(header);
+    List<ProductDeviceEntity> devices;
+    if (param.getModelId() != null) {
+      if (!scope.hasModel(param.getModelId()))
+        return finish(emitter, ResultTool.fail(ResultCode.NO_PERMISSION));
+      devices = productDeviceRepository.findAllByModelId(param.getModelId());
+    } else if (param.getProductId() != null) {
+      if (!scope.hasProduct(param.getProductId()))
+        return finish(emitter, ResultTool.fail(ResultCode.NO_PERMISSION));
+      List<Integer> modelIds = productModelRepository.findAllByProductId(param.getProductId())
+          .stream().map(ProductModelEntity::getId).toList();
+      devices = modelIds.isEmpty() ? List.of()
+          : productDeviceRepository.findAllByModelIdIn(modelIds);
+    } else {
+      devices = param.getDeviceIds().isEmpty() ? List.of()
+          : productDeviceRepository.findAllByIdIn(param.getDeviceIds());
+    }
+    // 每个物模型只校验编码一次
+    Map<Integer, Command> commands = new LinkedHashMap<>();
+    for (var device : devices) {
+      if (!commands.containsKey(device.getModelId()))
+        commands.put(device.getModelId(), compile(device.getModelId(), mode,
+            param.getFunctionName(), param.getStatus(), param.getKey(), param.getValue()));
+    }
+    boolean sync = "sync".equals(param.getStatus());
+    try {
+      groupControlExecutor.execute(() -> fanOut(emitter, devices, commands, scope, param, sync));
+    } catch (TaskRejectedException e) {
+      log.warn("批量控制任务过多，拒绝本次请求");
+      return finish(emitter, ResultTool.fail(ResultCode.COMMON_FAIL));
+    }
+    return emitter;
+  }
+
+  private void fanOut(SseEmitter emitter, List<ProductDeviceEntity> devices,
+      Map<Integer, Command> commands, AuthorizationScope.Scope scope, GroupControlParam param,
+      boolean sync) {
+    Semaphore permits = new Semaphore(GROUP_CONCURRENCY);
+    AtomicBoolean closed = new AtomicBoolean(false);
+    AtomicInteger succeeded = new AtomicInteger();
+    emitter.onCompletion(() -> closed.set(true));
+    emitter.onTimeout(() -> closed.set(true));
+    emitter.onError(e -> closed.set(true));
+    List<CompletableFuture<?>> pending = new ArrayList<>(devices.size());
+    for (var device : devices) {
+      if (closed.get())
+        break;
+      JsonResult<?> rejected = null;
+      Command command = commands.get(device.getModelId());
+      if (!scope.hasDevice(device.getId()))
+        rejected = ResultTool.fail(ResultCode.NO_PERMISSION);
+      else if (device.getAllow() == 0)
+        rejected = ResultTool.fail(ResultCode.DEVICE_ABANDON);
+      else if (command == null)
+        rejected = ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      if (rejected != null) {
+        send(emitter, closed, device, rejected);
+        continue;
       }
-      if (!controlParam.getStatus().equals("sync") && !controlParam.getStatus().equals("async")) {
-        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
       }
-      for (var s : productFunctionEntities) {
-        if (s.getDataType().equals("input")) {
-          productDataKey.add(s.getJsonKey());
-          productTypeMap.put(s.getJsonKey(), s.getType());
-          if (s.getMax() != null || s.getMin() != null) {
-            dataMaxMap.put(s.getJsonKey(), s.getMax());
-            dataMinMap.put(s.getJsonKey(), s.getMin());
-          }
-        }
+      // 在本线程直接发布，信号量只限制等待设备回复的数量，回复在mqtt回调线程上推送给客户端
+      CompletableFuture<JsonResult<?>> result;
+      try {
+        result = dispatch(device.getName(), command, param.getFunctionName(), sync,
+            param.getQos());
+      } catch (MqttException | RuntimeException e) {
+        log.error("批量控制下发失败{}: {}", device.getName(), e.getMessage());
+        result = CompletableFuture.completedFuture(ResultTool.fail(ResultCode.COMMON_FAIL));
       }
+      pending.add(result.whenComplete((r, e) -> {
+        permits.release();
+        if (r.getSuccess())
+          succeeded.incrementAndGet();
+        send(emitter, closed, device, r);
+      }));
     }
-    if (!productDataKey.containsAll(controlParam.getKey())
-        || controlParam.getValue().size() != controlParam.getKey().size()) {
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+      JSONObject summary = new JSONObject();
+      summary.put("total", devices.size());
+      summary.put("success", succeeded.get());
+      finish(emitter, ResultTool.success(summary));
+    });
+  }
+
+  private void send(SseEmitter emitter, AtomicBoolean closed, ProductDeviceEntity device,
+      JsonResult<?> result) {
+    if (closed.get())
+      return;
+    JSONObject event = new JSONObject();
+    event.put("deviceId", device.getId());
+    event.put("name", device.getName());
+    event.put("result", result);
+    try {
+      emitter.send(SseEmitter.event().name("result").data(event, MediaType.APPLICATION_JSON));
+    } catch (IOException | IllegalStateException e) {
+      // 客户端断开后不再继续下发
+      closed.set(true);
     }
-    for (int i = 0; i < controlParam.getKey().size(); i++) {
-      if (!controlKey.contains(controlParam.getKey().get(i))) {
-        controlKey.add(controlParam.getKey().get(i));
-        controlValue.add(controlParam.getValue().get(i));
-        productType.add(productTypeMap.get(controlParam.getKey().get(i)));
-        dataMax.add(dataMaxMap.get(controlParam.getKey().get(i)));
-        dataMin.add(dataMinMap.get(controlParam.getKey().get(i)));
-      }
+  }
+
+  private SseEmitter finish(SseEmitter emitter, JsonResult<?> result) {
+    try {
+      emitter.send(SseEmitter.event().name("done").data(result, MediaType.APPLICATION_JSON));
+      emitter.complete();
+    } catch (IOException | IllegalStateException e) {
+      emitter.completeWithError(e);
     }
-    StringBuffer res = null;
-    if (controlKey.isEmpty())
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    return emitter;
+  }
+
+  /**
+   * 按物模型定义校验控制参数并编码下发内容
+   *
+   * @return 参数不合法时返回null
+   */
+  private Command compile(int modelId, String mode, String functionName, String status,
+      List<String> key, List<String> value) {
+    boolean service = mode.equals("service");
+    if (service && (functionName == null || status == null
+        || !status.equals("sync") && !status.equals("async"))) {
+      return null;
+    }
+    ControlSchema schema = controlSchemaCompiler.compile(modelId, mode, functionName);
+    if (schema == null)
+      return null;
     try {
-      res = JsonCreate.create(controlParam.getFunctionName(), controlKey, controlValue, productType,
-          dataMax,
-          dataMin);
-    } catch (IOException | IllegalArgumentException e) {
+      return new Command(service ? "services/invoke" : "properties/update",
+          schema.bind(key, value), service);
+    } catch (IllegalArgumentException e) {
       log.error(e.getMessage());
-      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      return null;
     }
-    String prefix_topic;
-    if (controlParam.getMode().equals("attribute"))
-      prefix_topic = "properties/update";
-    else
-      prefix_topic = "services/invoke";
-    MqttConnectionUtils.publish(
-        "/oc/devices/" + controlParam.getName() + "/sys/" + prefix_topic, res.toString(),
-        controlParam.getQos());
-    if (controlParam.getMode().equals("service") && controlParam.getStatus().equals("sync")) {
-      for (int i = 0; i < 80; i++) {
-        try {
-          if (redisUtil.hasKey("service" + controlParam.getName())) {
-            String res1 = (String) redisUtil.get("service" + controlParam.getName());
-            redisUtil.del("service" + controlParam.getName());
-            JSONObject output = JSONObject.parseObject(res1);
-            JSONObject input = JSONObject.parseObject(res.toString());
+  }
+
+  private static String topic(String deviceName, Command command) {
+    return "/oc/devices/" + deviceName + "/sys/" + command.topic;
+  }
+
+  /**
+   * 向单个设备下发已编码的指令，同步服务等待设备回复
+   */
+  private CompletableFuture<JsonResult<?>> dispatch(String deviceName, Command command,
+      String functionName, boolean sync, int qos) throws MqttException {
+    String requestId = command.service ? serviceInvokeRegistry.newRequestId() : null;
+    byte[] payload = command.payload.encode(requestId);
+    CompletableFuture<JSONObject> reply = null;
+    if (command.service && sync)
+      reply = serviceInvokeRegistry.register(deviceName, requestId);
+    try {
+      MqttConnectionUtils.publish(topic(deviceName, command), payload, qos);
+    } catch (MqttException e) {
+      if (reply != null)
+        reply.cancel(false);
+      throw e;
+    }
+    if (reply != null) {
+      JSONObject input = JSON.parseObject(payload, JSONObject.class);
+      String finalRequestId = requestId;
+      return reply.orTimeout(ServiceInvokeRegistry.TIMEOUT_MS, TimeUnit.MILLISECONDS)
+          .<JsonResult<?>>thenApply(output -> {
             JSONObject jsonObject = new JSONObject();
-            jsonObject.put("functionName", controlParam.getFunctionName());
+            jsonObject.put("functionName", functionName);
+            jsonObject.put("requestId", finalRequestId);
             jsonObject.put("input", input);
             jsonObject.put("output", output);
             return ResultTool.success(jsonObject.toJSONString());
-          }
-          Thread.sleep(100);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
-      return ResultTool.fail(ResultCode.DEVICE_TIMEOUT);
+          }).exceptionally(e -> ResultTool.fail(ResultCode.DEVICE_TIMEOUT));
     }
-    return ResultTool.success(res.toString());
+    return CompletableFuture
+        .completedFuture(ResultTool.success(new String(payload, StandardCharsets.UTF_8)));
   }
 }
@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.dao.OtaCampaignDeviceRepository;
+import top.rslly.iot.dao.OtaCampaignRepository;
+import top.rslly.iot.dao.OtaRepository;
+import top.rslly.iot.dao.ProductDeviceRepository;
+import top.rslly.iot.models.OtaCampaignDeviceEntity;
+import top.rslly.iot.models.OtaCampaignEntity;
+import top.rslly.iot.models.OtaEntity;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.utility.RedisUtil;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static top.rslly.iot.services.iot.OtaCampaignService.FAILED;
+import static top.rslly.iot.services.iot.OtaCampaignService.FINISHED;
+import static top.rslly.iot.services.iot.OtaCampaignService.IN_FLIGHT;
+import static top.rslly.iot.services.iot.OtaCampaignService.PAUSED;
+import static top.rslly.iot.services.iot.OtaCampaignService.PENDING;
+import static top.rslly.iot.services.iot.OtaCampaignService.PUSHED;
+import static top.rslly.iot.services.iot.OtaCampaignService.RUNNING;
+import static top.rslly.iot.services.iot.OtaCampaignService.SUCCESS;
+
+/**
+ * 每秒推进一次运行中的升级活动：下发数受并发下载上限和每秒下发数限制，当前批次全部结束后才放行下一批，失败率超过阈值时自动暂停。
+ */
+@Component
+@Slf4j
+public class OtaCampaignRunner {
+  private static final String LEASE_KEY = "ota_campaign_lease";
+  private static final String NODE = UUID.randomUUID().toString();
+  // 批次中途判断失败率所需的最少完成数，避免前几台失败就暂停
+  private static final int MIN_SAMPLES = 10;
+  @Resource
+  private OtaCampaignRepository otaCampaignRepository;
+  @Resource
+  private OtaCampaignDeviceRepository otaCampaignDeviceRepository;
+  @Resource
+  private OtaRepository otaRepository;
+  @Resource
+  private ProductDeviceRepository productDeviceRepository;
+  @Autowired
+  private OtaService otaService;
+  @Autowired
+  private RedisUtil redisUtil;
+
+  @Scheduled(initialDelay = 1000 * 10, fixedDelay = 1000)
+  public void run() {
+    // 多节点部署时只由持有租约的节点下发，避免重复推送
+    if (!redisUtil.lease(LEASE_KEY, NODE, 10))
+      return;
+    for (OtaCampaignEntity campaign : otaCampaignRepository.findAllByStatus(RUNNING)) {
+      try {
+        advance(campaign);
+      } catch (Exception e) {
+        log.error("ota campaign {} error:{}", campaign.getId(), e.getMessage());
+      }
+    }
+  }
+
+  void advance(OtaCampaignEntity campaign) {
+    int id = campaign.getId();
+    long now = System.currentTimeMillis();
+    otaCampaignDeviceRepository.expire(id, IN_FLIGHT, now - campaign.getTimeoutSeconds() * 1000L,
+        now);
+    Map<String, Long> counts = new HashMap<>();
+    for (Object[] row : otaCampaignDeviceRepository.countGroupByStatus(id))
+      counts.put((String) row[0], (Long) row[1]);
+    long inFlight = 0;
+    for (String status : IN_FLIGHT)
+      inFlight += counts.getOrDefault(status, 0L);
+    long success = counts.getOrDefault(SUCCESS, 0L);
+    long failed = counts.getOrDefault(FAILED, 0L);
+    if (success + failed >= MIN_SAMPLES && exceeds(campaign, success, failed))
+      return;
+    long budget = Math.min(campaign.getMaxConcurrent() - inFlight, campaign.getPublishRate());
+    if (budget > 0) {
+      List<OtaEntity> otaList = otaRepository.findAllById(campaign.getOtaId());
+      if (otaList.isEmpty()) {
+        pause(campaign, "firmware not found");
+        return;
+      }
+      for (OtaCampaignDeviceEntity row : otaCampaignDeviceRepository.findPendingOnline(id,
+          campaign.getWave(), PageRequest.of(0, (int) budget))) {
+        List<ProductDeviceEntity> device = productDeviceRepository.findAllById(row.getDeviceId());
+        if (device.isEmpty()) {
+          otaCampaignDeviceRepository.transition(row.getId(), PENDING, FAILED, "device deleted",
+              now);
+          continue;
+        }
+        // 先占用再下发，设备的回复不会被下发线程覆盖回pushed
+        if (otaCampaignDeviceRepository.transition(row.getId(), PENDING, PUSHED, null, now) == 0)
+          continue;
+        try {
+          otaService.pushOta(otaList.get(0), device.get(0).getName(), campaign.getVersion());
+        } catch (IOException | MqttException e) {
+          // 下发失败时退回pending，下一轮重试
+          log.error("ota campaign {} push error:{}", id, e.getMessage());
+          otaCampaignDeviceRepository.transition(row.getId(), PUSHED, PENDING, null, now);
+          break;
+        }
+        inFlight++;
+      }
+    }
+    if (inFlight > 0 || otaCampaignDeviceRepository.countPendingOnline(id, campaign.getWave()) > 0)
+      return;
+    // 当前批次已全部结束，检查失败率后放行下一批
+    if (success + failed > 0 && exceeds(campaign, success, failed))
+      return;
+    if (campaign.getWave() < campaign.getWaves())
+      otaCampaignRepository.advanceWave(id, campaign.getWave() + 1);
+    else if (counts.getOrDefault(PENDING, 0L) == 0)
+      otaCampaignRepository.transition(id, RUNNING, FINISHED, null);
+  }
+
+  private boolean exceeds(OtaCampaignEntity campaign, long success, long failed) {
+    double rate = (double) failed / (success + failed);
+    if (rate <= campaign.getFailureThreshold())
+      return false;
+    pause(campaign, String.format("failure rate %.1f%% exceeds %.1f%%", rate * 100,
+        campaign.getFailureThreshold() * 100));
+    return true;
+  }
+
+  private void pause(OtaCampaignEntity campaign, String message) {
+    log.warn("ota campaign {} paused:{}", campaign.getId(), message);
+    otaCampaignRepository.transition(campaign.getId(), RUNNING, PAUSED, message);
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import com.alibaba.fastjson.JSONObject;
+import top.rslly.iot.models.OtaCampaignEntity;
+import top.rslly.iot.param.request.OtaCampaign;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.utility.result.JsonResult;
+
+import java.util.List;
+
+public interface OtaCampaignService {
+  // 活动状态
+  String RUNNING = "running";
+  String PAUSED = "paused";
+  String FINISHED = "finished";
+  String CANCELLED = "cancelled";
+  // 设备状态，downloading、upgrading、success、failed由设备回复
+  String PENDING = "pending";
+  String PUSHED = "pushed";
+  String DOWNLOADING = "downloading";
+  String UPGRADING = "upgrading";
+  String SUCCESS = "success";
+  String FAILED = "failed";
+  List<String> IN_FLIGHT = List.of(PUSHED, DOWNLOADING, UPGRADING);
+
+  List<OtaCampaignEntity> findAllById(int id);
+
+  JsonResult<?> getOtaCampaign(String token, PageQuery pageQuery);
+
+  JsonResult<?> postOtaCampaign(OtaCampaign otaCampaign);
+
+  /**
+   * 暂停、继续或取消活动，继续时失败的设备重新排队
+   *
+   * @param id 活动id
+   * @param action pause、resume、cancel
+   */
+  JsonResult<?> updateOtaCampaignStatus(int id, String action);
+
+  JsonResult<?> getOtaCampaignProgress(int id);
+
+  /**
+   * 处理设备在/oc/devices/{deviceName}/sys/ota_reply上报的升级进度
+   *
+   * @param deviceId 设备id
+   * @param reply 包含version、status、progress、message
+   * @return 是否属于某个升级活动
+   */
+  boolean onReply(int deviceId, JSONObject reply);
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import top.rslly.iot.dao.*;
+import top.rslly.iot.models.OtaCampaignDeviceEntity;
+import top.rslly.iot.models.OtaCampaignEntity;
+import top.rslly.iot.models.OtaEntity;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.models.ProductModelEntity;
+import top.rslly.iot.param.request.OtaCampaign;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
+import top.rslly.iot.utility.result.JsonResult;
+import top.rslly.iot.utility.result.ResultCode;
+import top.rslly.iot.utility.result.ResultTool;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+@Service
+@Slf4j
+public class OtaCampaignServiceImpl implements OtaCampaignService {
+  private static final int BATCH = 1000;
+  private static final Set<String> REPLY_STATUS = Set.of(DOWNLOADING, UPGRADING, SUCCESS, FAILED);
+  @Resource
+  private AuthorizationScope authorizationScope;
+  @Resource
+  private OtaCampaignRepository otaCampaignRepository;
+  @Resource
+  private OtaCampaignDeviceRepository otaCampaignDeviceRepository;
+  @Resource
+  private OtaRepository otaRepository;
+  @Resource
+  private ProductModelRepository productModelRepository;
+  @Resource
+  private ProductDeviceRepository productDeviceRepository;
+
+  @Override
+  public List<OtaCampaignEntity> findAllById(int id) {
+    return otaCampaignRepository.findAllById(id);
+  }
+
+  @Override
+  public JsonResult<?> getOtaCampaign(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(OtaCampaignEntity.class);
+    Page<OtaCampaignEntity> result;
+    if (scope.isAdmin())
+      result = otaCampaignRepository.findAll(pageable);
+    else if (scope.getProductIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = otaCampaignRepository.findAllByProductIdIn(scope.getProductIds(), pageable);
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
+  }
+
+  @Override
+  @Transactional(rollbackFor = Exception.class)
+  public JsonResult<?> postOtaCampaign(OtaCampaign otaCampaign) {
+    List<OtaEntity> otaList = otaRepository.findAllById(otaCampaign.getOtaId());
+    if (otaList.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    int productId = otaList.get(0).getProductId();
+    List<Integer> modelIds = new ArrayList<>();
+    if (otaCampaign.getModelId() != 0) {
+      List<ProductModelEntity> model =
+          productModelRepository.findAllById(otaCampaign.getModelId());
+      if (model.isEmpty() || model.get(0).getProductId() != productId)
+        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      modelIds.add(otaCampaign.getModelId());
+    } else {
+      for (var model : productModelRepository.findAllByProductId(productId))
+        modelIds.add(model.getId());
+    }
+    if (modelIds.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    OtaCampaignEntity campaign = new OtaCampaignEntity();
+    campaign.setName(otaCampaign.getName());
+    campaign.setOtaId(otaCampaign.getOtaId());
+    campaign.setProductId(productId);
+    campaign.setModelId(otaCampaign.getModelId());
+    campaign.setVersion(UUID.randomUUID().toString());
+    campaign.setStatus(RUNNING);
+    campaign.setWave(1);
+    campaign.setWaveSize(otaCampaign.getWaveSize());
+    campaign.setMaxConcurrent(otaCampaign.getMaxConcurrent());
+    campaign.setPublishRate(otaCampaign.getPublishRate());
+    campaign.setFailureThreshold(otaCampaign.getFailureThreshold());
+    campaign.setTimeoutSeconds(otaCampaign.getTimeoutSeconds());
+    campaign.setCreateTime(System.currentTimeMillis());
+    campaign = otaCampaignRepository.save(campaign);
+    // 按设备id顺序分批，第一批可作为灰度批次
+    int total = 0;
+    int afterId = 0;
+    List<ProductDeviceEntity> devices;
+    do {
+      devices = productDeviceRepository.seekByModelIds(afterId, modelIds, null, null,
+          PageRequest.of(0, BATCH));
+      List<OtaCampaignDeviceEntity> rows = new ArrayList<>(devices.size());
+      for (var device : devices) {
+        OtaCampaignDeviceEntity row = new OtaCampaignDeviceEntity();
+        row.setCampaignId(campaign.getId());
+        row.setDeviceId(device.getId());
+        row.setWave(total / otaCampaign.getWaveSize() + 1);
+        row.setStatus(PENDING);
+        row.setUpdateTime(campaign.getCreateTime());
+        rows.add(row);
+        total++;
+        afterId = device.getId();
+      }
+      otaCampaignDeviceRepository.saveAll(rows);
+    } while (devices.size() == BATCH);
+    if (total == 0) {
+      otaCampaignRepository.delete(campaign);
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    campaign.setWaves((total + otaCampaign.getWaveSize() - 1) / otaCampaign.getWaveSize());
+    return ResultTool.success(otaCampaignRepository.save(campaign));
+  }
+
+  @Override
+  @Transactional(rollbackFor = Exception.class)
+  public JsonResult<?> updateOtaCampaignStatus(int id, String action) {
+    List<OtaCampaignEntity> campaignList = otaCampaignRepository.findAllById(id);
+    if (campaignList.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    String message = campaignList.get(0).getMessage();
+    // 条件更新，与执行器推进波次、自动暂停并发时不会互相覆盖
+    int updated;
+    switch (action) {
+      case "pause":
+        updated = otaCampaignRepository.transition(id, RUNNING, PAUSED, null);
+        break;
+      case "resume":
+        updated = otaCampaignRepository.transition(id, PAUSED, RUNNING, null);
+        // 失败率按重试后的结果重新统计，同一事务提交，执行器不会先看到旧的失败数
+        if (updated > 0)
+          otaCampaignDeviceRepository.retryFailed(id, System.currentTimeMillis());
+        break;
+      case "cancel":
+        updated = otaCampaignRepository.transition(id, RUNNING, CANCELLED, message);
+        if (updated == 0)
+          updated = otaCampaignRepository.transition(id, PAUSED, CANCELLED, message);
+        break;
+      default:
+        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    if (updated == 0)
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    return ResultTool.success(otaCampaignRepository.findAllById(id).get(0));
+  }
+
+  @Override
+  public JsonResult<?> getOtaCampaignProgress(int id) {
+    List<OtaCampaignEntity> campaignList = otaCampaignRepository.findAllById(id);
+    if (campaignList.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    Map<String, Long> devices = new LinkedHashMap<>();
+    for (String status : List.of(PENDING, PUSHED, DOWNLOADING, UPGRADING, SUCCESS, FAILED))
+      devices.put(status, 0L);
+    for (Object[] row : otaCampaignDeviceRepository.countGroupByStatus(id))
+      devices.put((String) row[0], (Long) row[1]);
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("campaign", campaignList.get(0));
+    result.put("devices", devices);
+    return ResultTool.success(result);
+  }
+
+  @Override
+  public boolean onReply(int deviceId, JSONObject reply) {
+    String version = reply.getString("version");
+    String status = reply.getString("status");
+    if (version == null || status == null || !REPLY_STATUS.contains(status))
+      return false;
+    List<OtaCampaignEntity> campaignList = otaCampaignRepository.findAllByVersion(version);
+    if (campaignList.isEmpty())
+      return false;
+    List<OtaCampaignDeviceEntity> rows = otaCampaignDeviceRepository
+        .findAllByCampaignIdAndDeviceId(campaignList.get(0).getId(), deviceId);
+    if (rows.isEmpty())
+      return false;
+    OtaCampaignDeviceEntity row = rows.get(0);
+    // 超时判失败后迟到的回复只接受成功
+    if (row.getStatus().equals(SUCCESS)
+        || (row.getStatus().equals(FAILED) && !status.equals(SUCCESS)))
+      return true;
+    row.setStatus(status);
+    Integer progress = reply.getInteger("progress");
+    if (progress != null)
+      row.setProgress(Math.max(0, Math.min(100, progress)));
+    else if (status.equals(SUCCESS))
+      row.setProgress(100);
+    String message = reply.getString("message");
+    if (message != null)
+      row.setMessage(message.length() > 255 ? message.substring(0, 255) : message);
+    row.setUpdateTime(System.currentTimeMillis());
+    otaCampaignDeviceRepository.save(row);
+    return true;
+  }
+}
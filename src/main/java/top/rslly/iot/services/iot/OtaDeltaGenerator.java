@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.dao.OtaDeltaRepository;
+import top.rslly.iot.dao.OtaRepository;
+import top.rslly.iot.models.OtaDeltaEntity;
+import top.rslly.iot.models.OtaEntity;
+import top.rslly.iot.utility.BinaryDelta;
+import top.rslly.iot.utility.MyFileUtil;
+
+import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 上传固件后为同产品最近的几个旧固件生成差分包，设备下载时声明当前固件的md5即可获得差分包
+ */
+@Component
+@Slf4j
+public class OtaDeltaGenerator {
+  // 差分包超过新固件的该比例时不如直接下载完整固件
+  private static final double MAX_RATIO = 0.5;
+  @Resource
+  private OtaRepository otaRepository;
+  @Resource
+  private OtaDeltaRepository otaDeltaRepository;
+  @Value("${ota.bin.path}")
+  private String binPath;
+  @Value("${ota.delta.sources:3}")
+  private int sources;
+  @Autowired
+  @Qualifier("otaDeltaExecutor")
+  private ThreadPoolTaskExecutor otaDeltaExecutor;
+
+  /**
+   * 提交到差分专用线程池，不在上传线程上计算
+   */
+  public void generate(OtaEntity target) {
+    if (sources <= 0)
+      return;
+    try {
+      otaDeltaExecutor.execute(() -> generateAll(target));
+    } catch (TaskRejectedException e) {
+      log.warn("ota delta queue full, skip {}", target.getId());
+    }
+  }
+
+  private void generateAll(OtaEntity target) {
+    List<OtaEntity> previous = otaRepository.findAllByProductId(target.getProductId()).stream()
+        .filter(ota -> ota.getId() < target.getId())
+        .sorted(Comparator.comparingInt(OtaEntity::getId).reversed()).limit(sources)
+        .collect(Collectors.toList());
+    if (previous.isEmpty())
+      return;
+    byte[] targetBytes;
+    try {
+      targetBytes = Files.readAllBytes(Paths.get(binPath + target.getPath()));
+    } catch (IOException e) {
+      log.error("ota delta read {} error:{}", target.getPath(), e.getMessage());
+      return;
+    }
+    for (OtaEntity source : previous) {
+      try {
+        generate(source, target, targetBytes);
+      } catch (Exception e) {
+        log.error("ota delta {}->{} error:{}", source.getId(), target.getId(), e.getMessage());
+      }
+    }
+  }
+
+  private void generate(OtaEntity source, OtaEntity target, byte[] targetBytes)
+      throws IOException {
+    byte[] sourceBytes = Files.readAllBytes(Paths.get(binPath + source.getPath()));
+    String sourceMd5 =
+        source.getMd5() != null ? source.getMd5() : DigestUtils.md5Hex(sourceBytes);
+    if (!otaDeltaRepository.findAllByOtaIdAndSourceMd5(target.getId(), sourceMd5).isEmpty())
+      return;
+    long start = System.nanoTime();
+    byte[] delta = BinaryDelta.diff(sourceBytes, targetBytes);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    if (delta.length > targetBytes.length * MAX_RATIO) {
+      log.info("ota delta {}->{} skipped: {} of {} bytes", source.getId(), target.getId(),
+          delta.length, targetBytes.length);
+      return;
+    }
+    // 先在服务端还原一次，避免下发无法还原的差分包
+    if (!Arrays.equals(BinaryDelta.patch(sourceBytes, delta), targetBytes)) {
+      log.error("ota delta {}->{} verify failed", source.getId(), target.getId());
+      return;
+    }
+    String fileName = UUID.randomUUID() + ".delta";
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    MessageDigest sha256 = DigestUtils.getSha256Digest();
+    MyFileUtil.uploadFile(new ByteArrayInputStream(delta), binPath, fileName, md5, sha256);
+    OtaDeltaEntity otaDeltaEntity = new OtaDeltaEntity();
+    otaDeltaEntity.setOtaId(target.getId());
+    otaDeltaEntity.setSourceOtaId(source.getId());
+    otaDeltaEntity.setSourceMd5(sourceMd5);
+    otaDeltaEntity.setPath(fileName);
+    otaDeltaEntity.setSize(delta.length);
+    otaDeltaEntity.setMd5(Hex.encodeHexString(md5.digest()));
+    otaDeltaEntity.setSha256(Hex.encodeHexString(sha256.digest()));
+    otaDeltaEntity.setGenerateMillis(millis);
+    otaDeltaRepository.save(otaDeltaEntity);
+    log.info("ota delta {}->{}: {} -> {} bytes ({}%) in {} ms", source.getId(), target.getId(),
+        targetBytes.length, delta.length, delta.length * 100L / Math.max(targetBytes.length, 1),
+        millis);
+    // 生成期间固件被删除时清理
+    if (otaRepository.findAllById(target.getId()).isEmpty()
+        || otaRepository.findAllById(source.getId()).isEmpty())
+      remove(otaDeltaEntity);
+  }
+
+  /**
+   * 删除固件时一并删除以它为新旧版本的差分包
+   *
+   * @param otaId 固件id
+   */
+  public void removeAll(int otaId) {
+    otaDeltaRepository.findAllByOtaId(otaId).forEach(this::remove);
+    otaDeltaRepository.findAllBySourceOtaId(otaId).forEach(this::remove);
+  }
+
+  private void remove(OtaDeltaEntity otaDeltaEntity) {
+    try {
+      Files.deleteIfExists(Paths.get(binPath + otaDeltaEntity.getPath()));
+    } catch (IOException e) {
+      log.error("ota delta delete {} error:{}", otaDeltaEntity.getPath(), e.getMessage());
+    }
+    otaDeltaRepository.delete(otaDeltaEntity);
+  }
+}
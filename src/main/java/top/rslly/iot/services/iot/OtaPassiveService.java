@@ -21,6 +21,7 @@ package top.rslly.iot.services.iot;
 
 import top.rslly.iot.models.OtaPassiveEntity;
 import top.rslly.iot.param.request.OtaPassive;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.utility.result.JsonResult;
 
 import java.util.List;
@@ -28,7 +29,7 @@ import java.util.List;
 public interface OtaPassiveService {
   List<OtaPassiveEntity> findAllById(int id);
 
-  JsonResult<?> otaPassiveList(String token);
+  JsonResult<?> otaPassiveList(String token, PageQuery pageQuery);
 
   JsonResult<?> otaPassiveEnable(String deviceName);
 
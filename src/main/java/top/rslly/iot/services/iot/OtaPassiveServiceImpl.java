@@ -21,8 +21,9 @@ package top.rslly.iot.services.iot;
 
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -31,17 +32,17 @@ import top.rslly.iot.models.OtaPassiveEntity;
 import top.rslly.iot.models.ProductDeviceEntity;
 import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.request.OtaPassive;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.param.response.OtaPassiveEnableResponse;
 import top.rslly.iot.param.response.OtaPassiveListResponse;
-import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
 import javax.annotation.Resource;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,13 +51,7 @@ import java.util.Map;
 @Slf4j
 public class OtaPassiveServiceImpl implements OtaPassiveService {
   @Resource
-  private WxProductBindRepository wxProductBindRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
-  @Resource
-  private WxUserRepository wxUserRepository;
-  @Resource
-  private UserRepository userRepository;
+  private AuthorizationScope authorizationScope;
   @Resource
   private OtaRepository otaRepository;
   @Resource
@@ -65,8 +60,8 @@ public class OtaPassiveServiceImpl implements OtaPassiveService {
   private ProductModelRepository productModelRepository;
   @Resource
   private ProductDeviceRepository productDeviceRepository;
-  @Value("${ota.bin.path}")
-  private String binPath;
+  @Autowired
+  private OtaService otaService;
 
   @Override
   public List<OtaPassiveEntity> findAllById(int id) {
@@ -74,68 +69,19 @@ public class OtaPassiveServiceImpl implements OtaPassiveService {
   }
 
   @Override
-  public JsonResult<?> otaPassiveList(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    List<OtaPassiveEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<OtaEntity> otaEntities = otaRepository.findAllByProductId(s.getProductId());
-        for (var s1 : otaEntities) {
-          List<OtaPassiveEntity> otaPassiveEntities =
-              otaPassiveRepository.findAllByOtaId(s1.getId());
-          result.addAll(otaPassiveEntities);
-        }
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<OtaEntity> otaEntities = otaRepository.findAllByProductId(s.getProductId());
-        for (var s1 : otaEntities) {
-          List<OtaPassiveEntity> otaPassiveEntities =
-              otaPassiveRepository.findAllByOtaId(s1.getId());
-          result.addAll(otaPassiveEntities);
-        }
-      }
-    } else {
-      result = otaPassiveRepository.findAll();
-    }
-    List<OtaPassiveListResponse> otaPassiveListResponses = new ArrayList<>();
-    for (var s : result) {
-      OtaPassiveListResponse otaPassiveListResponse = new OtaPassiveListResponse();
-      otaPassiveListResponse.setId(s.getId());
-      otaPassiveListResponse.setOtaId(s.getOtaId());
-      otaPassiveListResponse.setDeviceId(s.getDeviceId());
-      otaPassiveListResponse.setVersionName(s.getVersionName());
-      otaPassiveListResponse.setOtaName(otaRepository.findAllById(s.getOtaId()).get(0).getName());
-      otaPassiveListResponse.setDeviceName(
-          productDeviceRepository.findAllById(s.getDeviceId()).get(0).getName());
-      otaPassiveListResponse.setDescription(s.getDescription());
-      otaPassiveListResponses.add(otaPassiveListResponse);
-    }
-    if (result.isEmpty()) {
+  public JsonResult<?> otaPassiveList(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(OtaPassiveEntity.class);
+    Page<OtaPassiveListResponse> result;
+    if (scope.isAdmin())
+      result = otaPassiveRepository.findListPage(pageable);
+    else if (scope.getProductIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = otaPassiveRepository.findListPageByProductIds(scope.getProductIds(), pageable);
+    if (result.isEmpty())
       return ResultTool.fail(ResultCode.COMMON_FAIL);
-    } else
-      return ResultTool.success(otaPassiveListResponses);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
   }
 
   @Override
@@ -158,8 +104,9 @@ public class OtaPassiveServiceImpl implements OtaPassiveService {
     otaPassiveEnableResponse.setVersion(otaPassiveEntityList.get(0).getVersionName());
     otaPassiveEnableResponse.setDescription(otaPassiveEntityList.get(0).getDescription());
     try {
-      otaPassiveEnableResponse
-          .setMd5(DigestUtils.md5Hex(new FileInputStream(binPath + otaList.get(0).getPath())));
+      OtaEntity otaEntity = otaService.withDigest(otaList.get(0));
+      otaPassiveEnableResponse.setMd5(otaEntity.getMd5());
+      otaPassiveEnableResponse.setSha256(otaEntity.getSha256());
     } catch (IOException e) {
       log.error(e.getMessage());
       return ResultTool.fail(ResultCode.COMMON_FAIL);
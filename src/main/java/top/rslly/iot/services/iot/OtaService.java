@@ -19,10 +19,13 @@
  */
 package top.rslly.iot.services.iot;
 
+import org.eclipse.paho.client.mqttv3.MqttException;
 import org.springframework.web.multipart.MultipartFile;
 import top.rslly.iot.models.OtaEntity;
+import top.rslly.iot.param.request.PageQuery;
 import top.rslly.iot.utility.result.JsonResult;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -34,13 +37,33 @@ public interface OtaService {
 
   List<OtaEntity> findAllByProductIdAndName(int productId, String name);
 
+  /**
+   * 取固件摘要，上传前的旧记录在第一次使用时补算并保存
+   *
+   * @param otaEntity 固件记录
+   * @return 带md5和sha256的记录
+   * @throws IOException 固件文件读取失败
+   */
+  OtaEntity withDigest(OtaEntity otaEntity) throws IOException;
+
   JsonResult<?> uploadBin(String name, int productId, MultipartFile multipartFile);
 
-  JsonResult<?> otaList(String token);
+  JsonResult<?> otaList(String token, PageQuery pageQuery);
 
-  void otaDevice(String name, HttpServletResponse response) throws IOException;
+  void otaDevice(String name, HttpServletRequest request, HttpServletResponse response)
+      throws IOException;
 
   JsonResult<?> otaEnable(String name, String deviceName);
 
+  /**
+   * 通过/oc/devices/{deviceName}/sys/ota下发升级指令
+   *
+   * @param otaEntity 固件
+   * @param deviceName 设备名
+   * @param version 本次升级的版本号，设备回复进度时带回
+   */
+  void pushOta(OtaEntity otaEntity, String deviceName, String version)
+      throws IOException, MqttException;
+
   JsonResult<?> deleteBin(int id);
 }
@@ -21,46 +21,47 @@ package top.rslly.iot.services.iot;
 
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import top.rslly.iot.dao.*;
+import top.rslly.iot.models.OtaDeltaEntity;
 import top.rslly.iot.models.OtaEntity;
 import top.rslly.iot.models.OtaPassiveEntity;
 import top.rslly.iot.models.ProductEntity;
+import top.rslly.iot.param.request.PageQuery;
+import top.rslly.iot.param.response.PageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.transfer.mqtt.MqttConnectionUtils;
-import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.MyFileUtil;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
 import javax.annotation.Resource;
-import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.*;
 
 @Service
 @Slf4j
 public class OtaServiceImpl implements OtaService {
   @Resource
-  private WxProductBindRepository wxProductBindRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
-  @Resource
-  private WxUserRepository wxUserRepository;
-  @Resource
-  private UserRepository userRepository;
+  private AuthorizationScope authorizationScope;
   @Resource
   private OtaRepository otaRepository;
   @Resource
@@ -69,6 +70,12 @@ public class OtaServiceImpl implements OtaService {
   private ProductModelRepository productModelRepository;
   @Resource
   private OtaPassiveRepository otaPassiveRepository;
+  @Resource
+  private OtaCampaignRepository otaCampaignRepository;
+  @Resource
+  private OtaDeltaRepository otaDeltaRepository;
+  @Autowired
+  private OtaDeltaGenerator otaDeltaGenerator;
   @Value("${ota.bin.path}")
   private String binPath;
 
@@ -105,84 +112,104 @@ public class OtaServiceImpl implements OtaService {
     otaEntity.setName(name);
     otaEntity.setProductId(productId);
     otaEntity.setPath(fileName);
+    // 写盘时顺带计算摘要，下发升级时不再读文件
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    MessageDigest sha256 = DigestUtils.getSha256Digest();
+    try (InputStream in = multipartFile.getInputStream()) {
+      MyFileUtil.uploadFile(in, filePath, fileName, md5, sha256);
+    } catch (IOException e) {
+      log.error(e.getMessage());
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    }
+    otaEntity.setMd5(Hex.encodeHexString(md5.digest()));
+    otaEntity.setSha256(Hex.encodeHexString(sha256.digest()));
     try {
-
-      MyFileUtil.uploadFile(multipartFile.getBytes(), filePath, fileName);
-      otaRepository.save(otaEntity);
+      OtaEntity saved = otaRepository.save(otaEntity);
+      // 提交后再异步生成差分包，上传请求不用等待
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          otaDeltaGenerator.generate(saved);
+        }
+      });
     } catch (Exception e) {
       log.error(e.getMessage());
+      try {
+        MyFileUtil.deleteFile(binPath + fileName);
+      } catch (IOException ignored) {
+      }
       return ResultTool.fail(ResultCode.COMMON_FAIL);
     }
     return ResultTool.success();
   }
 
   @Override
-  public JsonResult<?> otaList(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    List<OtaEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<OtaEntity> otaEntities = otaRepository.findAllByProductId(s.getProductId());
-        result.addAll(otaEntities);
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<OtaEntity> otaEntities = otaRepository.findAllByProductId(s.getProductId());
-        result.addAll(otaEntities);
-      }
-    } else {
-      result = otaRepository.findAll();
-    }
-    if (result.isEmpty()) {
+  public OtaEntity withDigest(OtaEntity otaEntity) throws IOException {
+    if (otaEntity.getMd5() != null && otaEntity.getSha256() != null)
+      return otaEntity;
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    MessageDigest sha256 = DigestUtils.getSha256Digest();
+    MyFileUtil.digestFile(binPath + otaEntity.getPath(), md5, sha256);
+    otaEntity.setMd5(Hex.encodeHexString(md5.digest()));
+    otaEntity.setSha256(Hex.encodeHexString(sha256.digest()));
+    return otaRepository.save(otaEntity);
+  }
+
+  @Override
+  public JsonResult<?> otaList(String token, PageQuery pageQuery) {
+    var scope = authorizationScope.of(token);
+    Pageable pageable = pageQuery.toPageable(OtaEntity.class);
+    Page<OtaEntity> result;
+    if (scope.isAdmin())
+      result = otaRepository.findAll(pageable);
+    else if (scope.getProductIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = otaRepository.findAllByProductIdIn(scope.getProductIds(), pageable);
+    if (result.isEmpty())
       return ResultTool.fail(ResultCode.COMMON_FAIL);
-    } else
-      return ResultTool.success(result);
+    return ResultTool.success(pageQuery.paged() ? PageResponse.of(result) : result.getContent());
   }
 
   @Override
-  public void otaDevice(String name, HttpServletResponse response) throws IOException {
-    ServletOutputStream out = response.getOutputStream();
+  public void otaDevice(String name, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    Path base = Paths.get(binPath).toAbsolutePath().normalize();
+    Path path = base.resolve(name).normalize();
+    if (!path.startsWith(base) || name.lastIndexOf(".") < 0) {
+      response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    String downloadName = name.substring(0, name.lastIndexOf(".")) + ".bin";
+    // 设备用from声明当前固件的md5，有对应的差分包时下发差分包，否则下发完整固件
+    String from = request.getParameter("from");
+    if (from != null) {
+      OtaDeltaEntity delta = findDelta(name, from.toLowerCase());
+      response.setHeader("X-Ota-Delta", String.valueOf(delta != null));
+      if (delta != null) {
+        response.setHeader("X-Ota-Md5", delta.getMd5());
+        response.setHeader("X-Ota-Sha256", delta.getSha256());
+        path = base.resolve(delta.getPath()).normalize();
+        downloadName = name.substring(0, name.lastIndexOf(".")) + ".delta";
+      }
+    }
     try {
-      String filePath = binPath; // 上传后的路径
-      File file = new File(filePath + name);
-      response.setCharacterEncoding("UTF-8");
-      response.setHeader("Content-Disposition", "attachment; filename=" +
-          URLEncoder.encode(name.substring(0, name.lastIndexOf(".")) + ".bin",
-              StandardCharsets.UTF_8));
-      response.addHeader("Content-Length", "" + file.length());
-      out.write(Files.readAllBytes(Paths.get(filePath + name)));
-      out.flush();
-      out.close();
-
-
-    } catch (Exception e) {
-      log.error(e.getMessage());
-      response.setStatus(404);
-      out.close();
+      MyFileUtil.sendFile(path, downloadName, request, response);
+    } catch (IOException e) {
+      // 设备中断下载后可通过Range继续
+      log.debug("ota download {} interrupted:{}", name, e.getMessage());
     }
   }
 
+  private OtaDeltaEntity findDelta(String name, String sourceMd5) {
+    List<OtaEntity> otaList = otaRepository.findAllByPath(name);
+    if (otaList.isEmpty())
+      return null;
+    List<OtaDeltaEntity> deltaList =
+        otaDeltaRepository.findAllByOtaIdAndSourceMd5(otaList.get(0).getId(), sourceMd5);
+    return deltaList.isEmpty() ? null : deltaList.get(0);
+  }
+
   @Override
   public JsonResult<?> otaEnable(String name, String deviceName) {
     if (name == null)
@@ -204,28 +231,28 @@ public class OtaServiceImpl implements OtaService {
         .findAllById(productDeviceEntityList.get(0).getModelId()).get(0).getProductId()) {
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
     }
-    // MqttConnectionUtils.publish("/ota/"+deviceName, otaList.get(0).getPath());
-    // var jsonStr="{\"fileName\""+"\""+otaList.get(0).getPath()+"\""+"}";
-    Map<String, String> map = new HashMap<>();
-    map.put("fileName", otaList.get(0).getPath());
-    String version = UUID.randomUUID().toString();
-    map.put("version", version);
-    try {
-      map.put("md5", DigestUtils.md5Hex(new FileInputStream(binPath + otaList.get(0).getPath())));
-    } catch (IOException e) {
-      log.error(e.getMessage());
-      return ResultTool.fail(ResultCode.COMMON_FAIL);
-    }
-    var jsonStr = JSON.toJSONString(map);
     try {
-      MqttConnectionUtils.publish("/oc/devices/" + deviceName + "/sys/" + "ota", jsonStr, 1);
-    } catch (MqttException e) {
+      pushOta(otaList.get(0), deviceName, UUID.randomUUID().toString());
+    } catch (IOException | MqttException e) {
       log.error(e.getMessage());
       return ResultTool.fail(ResultCode.COMMON_FAIL);
     }
     return ResultTool.success(otaList);
   }
 
+  @Override
+  public void pushOta(OtaEntity otaEntity, String deviceName, String version)
+      throws IOException, MqttException {
+    OtaEntity ota = withDigest(otaEntity);
+    Map<String, String> map = new HashMap<>();
+    map.put("fileName", ota.getPath());
+    map.put("version", version);
+    map.put("md5", ota.getMd5());
+    map.put("sha256", ota.getSha256());
+    MqttConnectionUtils.publish("/oc/devices/" + deviceName + "/sys/" + "ota",
+        JSON.toJSONString(map), 1);
+  }
+
   @Override
   @Transactional(rollbackFor = Exception.class)
   public JsonResult<?> deleteBin(int id) {
@@ -234,13 +261,15 @@ public class OtaServiceImpl implements OtaService {
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
     List<OtaPassiveEntity> otaPassiveEntityList =
         otaPassiveRepository.findAllByOtaId(otaList.get(0).getId());
-    if (otaPassiveEntityList.isEmpty()) {
+    if (otaPassiveEntityList.isEmpty()
+        && otaCampaignRepository.findAllByOtaId(otaList.get(0).getId()).isEmpty()) {
       try {
         MyFileUtil.deleteFile(binPath + otaList.get(0).getPath());
       } catch (IOException e) {
         log.error(e.getMessage());
         return ResultTool.fail(ResultCode.COMMON_FAIL);
       }
+      otaDeltaGenerator.removeAll(otaList.get(0).getId());
       otaRepository.delete(otaList.get(0));
       return ResultTool.success();
     } else {
@@ -0,0 +1,257 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.dao.ProductModelRepository;
+import top.rslly.iot.utility.script.IcScriptException;
+import top.rslly.iot.utility.script.ScriptInvokeService;
+import top.rslly.iot.utility.script.ScriptType;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 物模型属性上报的解码脚本。脚本体为 {@code function(msg, metadata, msgType)} 的函数体，返回属性对象，返回null时丢弃该消息。 非JSON的上报以
+ * {@code {"hex": "..."}} 传入。脚本按物模型预编译，在独立的沙箱中执行，单条消息的CPU时间不超过js.decode.timeout_ms。
+ */
+@Component
+@Slf4j
+public class PayloadDecoder implements CommandLineRunner {
+  public static final String MSG_TYPE = "POST_TELEMETRY";
+  // 沙箱首次编译需要加载脚本净化器，耗时较长
+  private static final long COMPILE_TIMEOUT_MS = 30000;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  @Value("${js.decode.timeout_ms:100}")
+  private long timeoutMs;
+  @Autowired
+  @Qualifier("decodeJsInvokeService")
+  private ScriptInvokeService scriptInvokeService;
+  @Resource
+  private ProductModelRepository productModelRepository;
+
+  // 物模型id -> 当前脚本
+  private final Map<Integer, Decoder> decoders = new ConcurrentHashMap<>();
+  private final Map<Integer, Stats> stats = new ConcurrentHashMap<>();
+
+  private static class Decoder {
+    private final String source;
+    private final ListenableFuture<UUID> scriptId;
+
+    private Decoder(String source, ListenableFuture<UUID> scriptId) {
+      this.source = source;
+      this.scriptId = scriptId;
+    }
+  }
+
+  private static class Stats {
+    private final LongAdder success = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timeout = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+  }
+
+  /**
+   * 启动时预先编译所有物模型的解码脚本
+   */
+  @Override
+  public void run(String... args) {
+    for (var model : productModelRepository.findAll()) {
+      String script = model.getDecodeScript();
+      if (script != null && !script.isBlank())
+        decoder(model.getId(), script);
+    }
+  }
+
+  /**
+   * 解码一条属性上报
+   *
+   * @return 属性JSON文本，物模型未配置脚本时原样返回，解码失败或脚本丢弃时返回null
+   */
+  public String decode(int modelId, String deviceName, String topic, byte[] payload) {
+    var models = productModelRepository.findAllById(modelId);
+    String script = models.isEmpty() ? null : models.get(0).getDecodeScript();
+    if (script == null || script.isBlank()) {
+      remove(modelId);
+      return new String(payload, StandardCharsets.UTF_8);
+    }
+    Decoder decoder = decoder(modelId, script);
+    Stats stat = stats.computeIfAbsent(modelId, k -> new Stats());
+    // 脚本在保存和启动时编译，其他节点刚修改脚本时本节点仍在编译，直接失败，不阻塞上报线程
+    if (!decoder.scriptId.isDone()) {
+      stat.failed.increment();
+      log.warn("物模型{}解码脚本编译中", modelId);
+      return null;
+    }
+    UUID scriptId;
+    try {
+      scriptId = Futures.getDone(decoder.scriptId);
+    } catch (ExecutionException | CancellationException e) {
+      stat.failed.increment();
+      return null;
+    }
+    JSONObject metadata = new JSONObject();
+    metadata.put("deviceName", deviceName);
+    metadata.put("modelId", modelId);
+    metadata.put("topic", topic);
+    long start = System.nanoTime();
+    ListenableFuture<Object> future =
+        scriptInvokeService.invokeScript(scriptId, msg(payload), metadata.toJSONString(), MSG_TYPE);
+    try {
+      Object result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+      // 脚本返回null表示丢弃该消息
+      if (result != null && !"null".equals(result.toString())
+          && !JSON.isValidObject(result.toString())) {
+        stat.failed.increment();
+        return null;
+      }
+      stat.success.increment();
+      return result == null || "null".equals(result.toString()) ? null : result.toString();
+    } catch (TimeoutException e) {
+      // 等待时间包含排队，只计入统计；尚未开始执行的不再执行，脚本自身超时由执行端计入黑名单
+      future.cancel(false);
+      stat.timeout.increment();
+      log.warn("物模型{}解码超时", modelId);
+      return null;
+    } catch (ExecutionException e) {
+      // 沙箱CPU时间超限同样计为超时
+      if (e.getCause() instanceof IcScriptException && ((IcScriptException) e.getCause())
+          .getErrorCode() == IcScriptException.ErrorCode.TIMEOUT) {
+        stat.timeout.increment();
+        log.warn("物模型{}解码超时", modelId);
+      } else {
+        stat.failed.increment();
+        log.warn("物模型{}解码失败:{}", modelId, e.getCause().getMessage());
+      }
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      stat.totalNanos.add(elapsed);
+      stat.maxNanos.accumulate(elapsed);
+    }
+  }
+
+  /**
+   * 编译并缓存物模型的解码脚本
+   *
+   * @return 脚本是否编译成功
+   */
+  public boolean prepare(int modelId, String script) {
+    if (script == null || script.isBlank()) {
+      remove(modelId);
+      return true;
+    }
+    try {
+      decoder(modelId, script).scriptId.get(COMPILE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (Exception e) {
+      remove(modelId);
+      return false;
+    }
+  }
+
+  /**
+   * 本节点上该物模型的解码统计
+   */
+  public Map<String, Object> stats(int modelId) {
+    Stats stat = stats.get(modelId);
+    Map<String, Object> result = new LinkedHashMap<>();
+    long success = stat == null ? 0 : stat.success.sum();
+    long failed = stat == null ? 0 : stat.failed.sum();
+    long timeout = stat == null ? 0 : stat.timeout.sum();
+    long total = success + failed + timeout;
+    result.put("success", success);
+    result.put("failed", failed);
+    result.put("timeout", timeout);
+    result.put("avgMicros", total == 0 ? 0 : stat.totalNanos.sum() / total / 1000);
+    result.put("maxMicros", stat == null ? 0 : stat.maxNanos.get() / 1000);
+    return result;
+  }
+
+  private Decoder decoder(int modelId, String script) {
+    Decoder current = decoders.get(modelId);
+    if (current != null && current.source.equals(script))
+      return current;
+    Decoder[] replaced = new Decoder[1];
+    Decoder decoder = decoders.compute(modelId, (k, old) -> {
+      if (old != null && old.source.equals(script))
+        return old;
+      replaced[0] = old;
+      return new Decoder(script, scriptInvokeService.eval(ScriptType.RULE_NODE_SCRIPT, script,
+          "msg", "metadata", "msgType"));
+    });
+    release(replaced[0]);
+    return decoder;
+  }
+
+  private void remove(int modelId) {
+    if (decoders.containsKey(modelId))
+      release(decoders.remove(modelId));
+  }
+
+  private void release(Decoder decoder) {
+    if (decoder == null)
+      return;
+    decoder.scriptId.addListener(() -> {
+      try {
+        scriptInvokeService.release(Futures.getDone(decoder.scriptId));
+      } catch (ExecutionException e) {
+        // 编译失败的脚本没有需要释放的内容
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private static String msg(byte[] payload) {
+    String text = new String(payload, StandardCharsets.UTF_8);
+    if (JSON.isValidObject(text))
+      return text;
+    char[] hex = new char[payload.length * 2];
+    for (int i = 0; i < payload.length; i++) {
+      hex[i * 2] = HEX[(payload[i] >> 4) & 0xf];
+      hex[i * 2 + 1] = HEX[payload[i] & 0xf];
+    }
+    return "{\"hex\":\"" + new String(hex) + "\"}";
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.models.ProductRuleEntity;
+import top.rslly.iot.services.thingsModel.ProductRuleServiceImpl;
+import top.rslly.iot.utility.RuleState;
+import top.rslly.iot.utility.script.expr.Expression;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 遥测规则引擎。属性上报时按物模型规则增量更新每台设备的状态，条件成立时通过告警派发发出规则绑定的事件。 状态保存在本节点内存中，服务重启后重新累计。
+ */
+@Component
+@Slf4j
+public class RuleEngine {
+  @Autowired
+  private ProductRuleServiceImpl productRuleService;
+  @Autowired
+  private AlarmDispatcher alarmDispatcher;
+  @Autowired
+  private DeviceShadow deviceShadow;
+
+  // 设备id:规则id -> 状态
+  private final Map<String, Tracked> states = new ConcurrentHashMap<>();
+  // 规则id -> 编译后的条件表达式，同一规则的所有设备共享
+  private final Map<Integer, Expression> expressions = new ConcurrentHashMap<>();
+  private final ThreadLocal<double[]> slots = ThreadLocal.withInitial(() -> new double[16]);
+
+  private static class Tracked {
+    private final String deviceName;
+    private final int modelId;
+    private final int ruleId;
+    private final int eventId;
+    private final RuleState state;
+
+    private Tracked(String deviceName, ProductRuleEntity rule) {
+      this.deviceName = deviceName;
+      this.modelId = rule.getModelId();
+      this.ruleId = rule.getId();
+      this.eventId = rule.getEventId();
+      this.state = new RuleState(rule.getType(), rule.getOperator(), rule.getThreshold(),
+          rule.getWindowSeconds(), rule.getAggregate());
+    }
+  }
+
+  /**
+   * 处理一次属性上报
+   *
+   * @param device 上报设备
+   * @param reported 属性名 -> 上报值
+   */
+  public void onReport(ProductDeviceEntity device, Map<String, Object> reported) {
+    var rules = productRuleService.findAllByModelId(device.getModelId());
+    if (rules.isEmpty())
+      return;
+    long now = System.currentTimeMillis();
+    Map<Object, Object> merged = null;
+    for (var rule : rules) {
+      boolean fired;
+      if (rule.getType().equals(RuleState.EXPRESSION)) {
+        Expression expression = expressions.computeIfAbsent(rule.getId(),
+            k -> Expression.compile(rule.getExpression()));
+        double[] buffer = slots(expression.getVariables().size());
+        if (!expression.bind(reported, buffer)) {
+          // 部分上报时缺失的变量取影子中最近的上报值，仍不全则不求值，避免NaN把持续状态清零
+          if (!expression.references(reported))
+            continue;
+          if (merged == null) {
+            merged = new HashMap<>(deviceShadow.reported(device.getId()));
+            merged.putAll(reported);
+          }
+          if (!expression.bind(merged, buffer))
+            continue;
+        }
+        fired = track(device, rule).state.offer(expression.test(buffer), now);
+      } else {
+        Object raw = reported.get(rule.getJsonKey());
+        if (raw == null)
+          continue;
+        double value = 0;
+        if (!rule.getType().equals(RuleState.ABSENCE)) {
+          try {
+            value = Double.parseDouble(raw.toString());
+          } catch (NumberFormatException e) {
+            continue;
+          }
+        }
+        fired = track(device, rule).state.offer(value, now);
+      }
+      if (fired)
+        alarmDispatcher.emit(device.getName(), rule.getEventId());
+    }
+  }
+
+  private Tracked track(ProductDeviceEntity device, ProductRuleEntity rule) {
+    return states.computeIfAbsent(device.getId() + ":" + rule.getId(),
+        k -> new Tracked(device.getName(), rule));
+  }
+
+  private double[] slots(int size) {
+    double[] buffer = slots.get();
+    if (buffer.length < size) {
+      buffer = new double[size];
+      slots.set(buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * 检查absence规则，并清理已删除规则的状态
+   */
+  @Scheduled(initialDelay = 1000 * 5, fixedDelay = 1000 * 5)
+  public void sweep() {
+    long now = System.currentTimeMillis();
+    Set<Integer> live = new HashSet<>();
+    states.values().removeIf(tracked -> {
+      boolean exists = productRuleService.findAllByModelId(tracked.modelId).stream()
+          .anyMatch(rule -> rule.getId() == tracked.ruleId);
+      if (exists && tracked.state.absent(now)) {
+        log.info("设备{}超时未上报，触发规则{}", tracked.deviceName, tracked.ruleId);
+        alarmDispatcher.emit(tracked.deviceName, tracked.eventId);
+      }
+      if (exists)
+        live.add(tracked.ruleId);
+      return !exists;
+    });
+    expressions.keySet().retainAll(live);
+  }
+}
@@ -19,7 +19,10 @@
  */
 package top.rslly.iot.services.storage;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import top.rslly.iot.dao.DataRepository;
 import top.rslly.iot.dao.ProductDeviceRepository;
@@ -28,12 +31,15 @@ import top.rslly.iot.models.DataEntity;
 import top.rslly.iot.services.storage.DataService;
 import top.rslly.iot.utility.Cast;
 import top.rslly.iot.utility.RedisUtil;
+import top.rslly.iot.utility.SingleFlight;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class DataServiceImpl implements DataService {
@@ -49,6 +55,16 @@ public class DataServiceImpl implements DataService {
   private DataTimeRepository dataTimeRepository;
   @Resource
   private RedisUtil redisUtil;
+  @Autowired
+  @Qualifier("taskExecutor")
+  private ThreadPoolTaskExecutor taskExecutor;
+
+  private static final long PROPERTY_EXPIRE = 120;
+  // 提前刷新系数，越大越早刷新
+  private static final double PROPERTY_REFRESH_BETA = 1.0;
+  private final SingleFlight<String, List<DataEntity>> propertyLoader = new SingleFlight<>();
+  // 最近一次查询最新值的耗时(毫秒)
+  private volatile long propertyLoadMillis = 10;
 
   @Override
   public void insert(DataEntity dataEntity) {
@@ -92,19 +108,29 @@ public class DataServiceImpl implements DataService {
 
   @Override
   public List<DataEntity> findAllBySort(int deviceId, String jsonKey) {
+    String key = "property" + deviceId + jsonKey;
+    var memory = redisUtil.get(key);
+    if (memory == null)
+      return propertyLoader.load(key, () -> loadProperty(key, deviceId, jsonKey));
+    // 按剩余时间和查询耗时概率性地提前刷新，热点key不会在高并发下集中过期
+    long ttl = redisUtil.getExpire(key, TimeUnit.MILLISECONDS);
+    double gap = -propertyLoadMillis * PROPERTY_REFRESH_BETA
+        * Math.log(ThreadLocalRandom.current().nextDouble());
+    if (ttl >= 0 && gap >= ttl)
+      propertyLoader.refresh(key, () -> loadProperty(key, deviceId, jsonKey), taskExecutor);
+    return Cast.castList(memory, DataEntity.class);
+  }
+
+  private List<DataEntity> loadProperty(String key, int deviceId, String jsonKey) {
+    long start = System.currentTimeMillis();
     List<DataEntity> res;
-    var memory = redisUtil.get("property" + deviceId + jsonKey);
-    if (memory == null) {
-      if (database.equals("influxdb")) {
-        res = dataTimeRepository.findAllBySort(deviceId, jsonKey);
-      } else {
-        res = dataRepository.findAllBySort(deviceId, jsonKey);
-      }
-      redisUtil.set("property" + deviceId + jsonKey, res, 60);
+    if (database.equals("influxdb")) {
+      res = dataTimeRepository.findAllBySort(deviceId, jsonKey);
     } else {
-      redisUtil.expire("property" + deviceId + jsonKey, 120);
-      return Cast.castList(memory, DataEntity.class);
+      res = dataRepository.findAllBySort(deviceId, jsonKey);
     }
+    redisUtil.set(key, res, PROPERTY_EXPIRE);
+    propertyLoadMillis = Math.max(1, System.currentTimeMillis() - start);
     return res;
   }
 
@@ -140,20 +166,8 @@ public class DataServiceImpl implements DataService {
 
   @Override
   public JsonResult<?> metaData(int deviceId, String jsonKey) {
-    List<DataEntity> res;
-    var memory = redisUtil.get("property" + deviceId + jsonKey);
-    if (memory == null) {
-      if (database.equals("influxdb")) {
-        res = dataTimeRepository.findAllBySort(deviceId, jsonKey);
-      } else {
-        res = dataRepository.findAllBySort(deviceId, jsonKey);
-      }
-      redisUtil.set("property" + deviceId + jsonKey, res, 60);
-    } else {
-      redisUtil.expire("property" + deviceId + jsonKey, 120);
-      return ResultTool.success(memory);
-    }
-    if (res.isEmpty())
+    List<DataEntity> res = findAllBySort(deviceId, jsonKey);
+    if (res == null || res.isEmpty())
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
     return ResultTool.success(res);
   }
@@ -0,0 +1,195 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.thingsModel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.dao.ProductDeviceRepository;
+import top.rslly.iot.dao.ProductModelRepository;
+import top.rslly.iot.models.ProductDeviceEntity;
+import top.rslly.iot.param.response.DeviceConnectedNumResponse;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 设备在线计数，按产品维护在redis中：onlineDevice 为在线设备id集合，deviceCount:online / deviceCount:total
+ * 为产品id到在线数/设备总数的hash。上下线由lua脚本根据集合是否变化原子增减，重复的上下线事件不会重复计数；后台定时按数据库重新校准。
+ */
+@Component
+@Slf4j
+public class DeviceOnlineCounter {
+  public static final String ONLINE_SET = "onlineDevice";
+  public static final String ONLINE_COUNT = "deviceCount:online";
+  public static final String TOTAL_COUNT = "deviceCount:total";
+  private static final String TMP_SUFFIX = ":rebuild";
+  private static final int CHUNK = 1000;
+
+  private static final RedisScript<Long> MARK_SCRIPT = new DefaultRedisScript<>(
+      """
+          local changed
+          if ARGV[3] == '1' then
+            changed = redis.call('SADD', KEYS[1], ARGV[1])
+          else
+            changed = redis.call('SREM', KEYS[1], ARGV[1])
+          end
+          if changed == 1 then
+            redis.call('HINCRBY', KEYS[2], ARGV[2], ARGV[3] == '1' and 1 or -1)
+          end
+          return changed
+          """,
+      Long.class);
+
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+  @Resource
+  private ProductDeviceRepository productDeviceRepository;
+  @Resource
+  private ProductModelRepository productModelRepository;
+
+  /**
+   * 设备上线或下线
+   */
+  public void mark(ProductDeviceEntity device, boolean online) {
+    var models = productModelRepository.findAllById(device.getModelId());
+    if (models.isEmpty())
+      return;
+    mark(device.getId(), models.get(0).getProductId(), online);
+  }
+
+  private void mark(int deviceId, int productId, boolean online) {
+    try {
+      // 参数经值序列化器写出，整数保持为纯数字字符串
+      redisTemplate.execute(MARK_SCRIPT, List.of(ONLINE_SET, ONLINE_COUNT), deviceId, productId,
+          online ? 1 : 0);
+    } catch (Exception e) {
+      log.error("device online count error:{}", e.getMessage());
+    }
+  }
+
+  /**
+   * 设备当前是否在线
+   */
+  public boolean isOnline(int deviceId) {
+    return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(ONLINE_SET, deviceId));
+  }
+
+  /**
+   * 设备新增
+   */
+  public void added(int productId) {
+    try {
+      redisTemplate.opsForHash().increment(TOTAL_COUNT, String.valueOf(productId), 1);
+    } catch (Exception e) {
+      log.error("device total count error:{}", e.getMessage());
+    }
+  }
+
+  /**
+   * 设备删除，在线的设备同时扣减在线数
+   */
+  public void removed(int deviceId, int modelId) {
+    var models = productModelRepository.findAllById(modelId);
+    if (models.isEmpty())
+      return;
+    int productId = models.get(0).getProductId();
+    mark(deviceId, productId, false);
+    try {
+      redisTemplate.opsForHash().increment(TOTAL_COUNT, String.valueOf(productId), -1);
+    } catch (Exception e) {
+      log.error("device total count error:{}", e.getMessage());
+    }
+  }
+
+  /**
+   * 指定产品的设备数统计，一次HMGET完成
+   */
+  public DeviceConnectedNumResponse count(Collection<Integer> productIds) {
+    List<Object> fields = new ArrayList<>();
+    for (var id : productIds)
+      fields.add(String.valueOf(id));
+    int num = sum(redisTemplate.opsForHash().multiGet(TOTAL_COUNT, fields));
+    int connectedNum = sum(redisTemplate.opsForHash().multiGet(ONLINE_COUNT, fields));
+    return new DeviceConnectedNumResponse(num, connectedNum, num - connectedNum);
+  }
+
+  /**
+   * 全部产品的设备数统计
+   */
+  public DeviceConnectedNumResponse countAll() {
+    int num = sum(redisTemplate.opsForHash().values(TOTAL_COUNT));
+    int connectedNum = sum(redisTemplate.opsForHash().values(ONLINE_COUNT));
+    return new DeviceConnectedNumResponse(num, connectedNum, num - connectedNum);
+  }
+
+  private int sum(List<Object> values) {
+    int sum = 0;
+    for (var s : values) {
+      if (s != null)
+        sum += Integer.parseInt(s.toString());
+    }
+    return sum;
+  }
+
+  /**
+   * 按数据库重建计数，先写临时key再rename覆盖，读取方不会看到半成品
+   */
+  @Scheduled(initialDelay = 1000 * 600, fixedDelay = 1000 * 600)
+  public void reconcile() {
+    try {
+      Map<String, Object> total = new HashMap<>();
+      Map<String, Object> online = new HashMap<>();
+      for (var row : productDeviceRepository.countGroupByProductId()) {
+        String productId = row[0].toString();
+        total.put(productId, ((Number) row[1]).intValue());
+        online.put(productId, row[2] == null ? 0 : ((Number) row[2]).intValue());
+      }
+      List<Integer> onlineIds = productDeviceRepository.findIdsByOnline("connected");
+      redisTemplate.delete(
+          List.of(ONLINE_SET + TMP_SUFFIX, ONLINE_COUNT + TMP_SUFFIX, TOTAL_COUNT + TMP_SUFFIX));
+      for (int i = 0; i < onlineIds.size(); i += CHUNK) {
+        redisTemplate.opsForSet().add(ONLINE_SET + TMP_SUFFIX,
+            onlineIds.subList(i, Math.min(i + CHUNK, onlineIds.size())).toArray());
+      }
+      if (!online.isEmpty())
+        redisTemplate.opsForHash().putAll(ONLINE_COUNT + TMP_SUFFIX, online);
+      if (!total.isEmpty())
+        redisTemplate.opsForHash().putAll(TOTAL_COUNT + TMP_SUFFIX, total);
+      replace(ONLINE_SET, !onlineIds.isEmpty());
+      replace(ONLINE_COUNT, !online.isEmpty());
+      replace(TOTAL_COUNT, !total.isEmpty());
+      log.info("device online count reconciled, online {}", onlineIds.size());
+    } catch (Exception e) {
+      log.error("device online count reconcile error:{}", e.getMessage());
+    }
+  }
+
+  private void replace(String key, boolean hasData) {
+    if (hasData)
+      redisTemplate.rename(key + TMP_SUFFIX, key);
+    else
+      redisTemplate.delete(key);
+  }
+}
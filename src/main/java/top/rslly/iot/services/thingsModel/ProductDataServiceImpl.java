@@ -21,6 +21,8 @@ package top.rslly.iot.services.thingsModel;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -32,6 +34,7 @@ import top.rslly.iot.param.request.ProductData;
 import top.rslly.iot.services.storage.DataServiceImpl;
 import top.rslly.iot.utility.DataSave;
 import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -155,6 +158,8 @@ public class ProductDataServiceImpl implements ProductDataService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @Caching(evict = {@CacheEvict(cacheNames = EntityCacheManager.PRODUCT_DATA, allEntries = true),
+      @CacheEvict(cacheNames = EntityCacheManager.CONTROL_SCHEMA, allEntries = true)})
   public JsonResult<?> postProductData(ProductData productData) {
     ProductDataEntity productDataEntity = new ProductDataEntity();
     BeanUtils.copyProperties(productData, productDataEntity);
@@ -194,6 +199,8 @@ public class ProductDataServiceImpl implements ProductDataService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @Caching(evict = {@CacheEvict(cacheNames = EntityCacheManager.PRODUCT_DATA, allEntries = true),
+      @CacheEvict(cacheNames = EntityCacheManager.CONTROL_SCHEMA, allEntries = true)})
   public JsonResult<?> deleteProductData(int id) {
     List<ProductDataEntity> result = productDataRepository.deleteById(id);
     if (result.isEmpty())
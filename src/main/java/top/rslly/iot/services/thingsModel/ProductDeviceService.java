@@ -22,6 +22,7 @@ package top.rslly.iot.services.thingsModel;
 import top.rslly.iot.models.ProductDeviceEntity;
 import top.rslly.iot.param.prompt.ProductDataDescription;
 import top.rslly.iot.param.prompt.ProductDeviceDescription;
+import top.rslly.iot.param.request.DeviceQuery;
 import top.rslly.iot.param.request.ProductDevice;
 import top.rslly.iot.utility.result.JsonResult;
 
@@ -48,6 +49,8 @@ public interface ProductDeviceService {
 
   JsonResult<?> getProductDevice(String token);
 
+  JsonResult<?> getProductDevicePage(String token, DeviceQuery deviceQuery);
+
   JsonResult<?> getProductDeviceConnectedNum(String token);
 
   JsonResult<?> postProductDevice(ProductDevice productDevice);
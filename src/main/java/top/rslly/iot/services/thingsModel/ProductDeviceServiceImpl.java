@@ -21,6 +21,7 @@ package top.rslly.iot.services.thingsModel;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -29,11 +30,13 @@ import top.rslly.iot.models.OtaPassiveEntity;
 import top.rslly.iot.models.ProductDeviceEntity;
 import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.prompt.ProductDeviceDescription;
+import top.rslly.iot.param.request.DeviceQuery;
 import top.rslly.iot.param.request.ProductDevice;
 import top.rslly.iot.param.response.DeviceConnectedNumResponse;
+import top.rslly.iot.param.response.DevicePageResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.services.storage.DataServiceImpl;
 import top.rslly.iot.services.storage.EventStorageServiceImpl;
-import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -48,7 +51,12 @@ import java.util.List;
 @Service
 @Slf4j
 public class ProductDeviceServiceImpl implements ProductDeviceService {
+  private static final int MAX_PAGE_SIZE = 500;
 
+  @Resource
+  private AuthorizationScope authorizationScope;
+  @Resource
+  private DeviceOnlineCounter deviceOnlineCounter;
   @Resource
   private ProductDeviceRepository productDeviceRepository;
   @Resource
@@ -56,14 +64,6 @@ public class ProductDeviceServiceImpl implements ProductDeviceService {
   @Resource
   private ProductDataRepository productDataRepository;
   @Resource
-  private WxProductBindRepository wxProductBindRepository;
-  @Resource
-  private UserProductBindRepository userProductBindRepository;
-  @Resource
-  private WxUserRepository wxUserRepository;
-  @Resource
-  private UserRepository userRepository;
-  @Resource
   private DataServiceImpl dataService;
   @Resource
   private EventStorageServiceImpl eventStorageService;
@@ -73,6 +73,8 @@ public class ProductDeviceServiceImpl implements ProductDeviceService {
   private MqttAclRepository mqttAclRepository;
   @Resource
   private OtaPassiveRepository otaPassiveRepository;
+  @Resource
+  private OtaCampaignDeviceRepository otaCampaignDeviceRepository;
 
   @Override
   public List<ProductDeviceEntity> findAllBySubscribeTopic(String subscribeTopic) {
@@ -157,123 +159,61 @@ public class ProductDeviceServiceImpl implements ProductDeviceService {
 
   @Override
   public JsonResult<?> getProductDevice(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
+    var scope = authorizationScope.of(token);
     List<ProductDeviceEntity> result;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      result = new ArrayList<>();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductDeviceEntity> productDeviceEntityList =
-              productDeviceRepository.findAllByModelId(s1.getId());
-          result.addAll(productDeviceEntityList);
-        }
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      result = new ArrayList<>();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductDeviceEntity> productDeviceEntityList =
-              productDeviceRepository.findAllByModelId(s1.getId());
-          result.addAll(productDeviceEntityList);
-        }
-      }
-    } else {
+    if (scope.isAdmin())
       result = productDeviceRepository.findAll();
-    }
+    else if (scope.getModelIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = productDeviceRepository.findAllByModelIdIn(scope.getModelIds());
     if (result.isEmpty()) {
       return ResultTool.fail(ResultCode.COMMON_FAIL);
     } else
       return ResultTool.success(result);
   }
 
+  @Override
+  public JsonResult<?> getProductDevicePage(String token, DeviceQuery deviceQuery) {
+    var scope = authorizationScope.of(token);
+    Integer modelId = deviceQuery.getModelId();
+    if (modelId != null && !scope.hasModel(modelId))
+      return ResultTool.fail(ResultCode.NO_PERMISSION);
+    int size = Math.min(Math.max(deviceQuery.getSize(), 1), MAX_PAGE_SIZE);
+    String online = deviceQuery.getOnline();
+    String prefix = deviceQuery.getNamePrefix() == null || deviceQuery.getNamePrefix().isEmpty()
+        ? null
+        : deviceQuery.getNamePrefix().replace("!", "!!").replace("%", "!%").replace("_", "!_")
+            + "%";
+    // 多取一条用于判断是否还有下一页
+    PageRequest limit = PageRequest.of(0, size + 1);
+    List<ProductDeviceEntity> result;
+    if (modelId != null)
+      result = productDeviceRepository.seekByModelIds(deviceQuery.getAfterId(), List.of(modelId),
+          online, prefix, limit);
+    else if (scope.isAdmin())
+      result = productDeviceRepository.seekAll(deviceQuery.getAfterId(), online, prefix, limit);
+    else if (scope.getModelIds().isEmpty())
+      result = new ArrayList<>();
+    else
+      result = productDeviceRepository.seekByModelIds(deviceQuery.getAfterId(),
+          scope.getModelIds(), online, prefix, limit);
+    boolean hasMore = result.size() > size;
+    if (hasMore)
+      result = result.subList(0, size);
+    int nextAfterId =
+        result.isEmpty() ? deviceQuery.getAfterId() : result.get(result.size() - 1).getId();
+    return ResultTool.success(new DevicePageResponse(result, hasMore, nextAfterId));
+  }
+
   @Override
   public JsonResult<?> getProductDeviceConnectedNum(String token) {
-    String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
-    String role = JwtTokenUtil.getUserRole(token_deal);
-    String username = JwtTokenUtil.getUsername(token_deal);
-    DeviceConnectedNumResponse deviceConnectedNumResponse = new DeviceConnectedNumResponse();
-    int num = 0;
-    int connectedNum = 0;
-    if (role.equals("ROLE_" + "wx_user")) {
-      if (wxUserRepository.findAllByName(username).isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      String openid = wxUserRepository.findAllByName(username).get(0).getOpenid();
-      var wxBindProductResponseList = wxProductBindRepository.findProductIdByOpenid(openid);
-      if (wxBindProductResponseList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : wxBindProductResponseList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductDeviceEntity> productDeviceEntityList =
-              productDeviceRepository.findAllByModelId(s1.getId());
-          for (var s2 : productDeviceEntityList) {
-            ++num;
-            if (s2.getOnline().equals("connected"))
-              ++connectedNum;
-          }
-        }
-      }
-    } else if (!role.equals("[ROLE_admin]")) {
-      var userList = userRepository.findAllByUsername(username);
-      if (userList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      int userId = userList.get(0).getId();
-      var userProductBindEntityList = userProductBindRepository.findAllByUserId(userId);
-      if (userProductBindEntityList.isEmpty()) {
-        return ResultTool.fail(ResultCode.COMMON_FAIL);
-      }
-      for (var s : userProductBindEntityList) {
-        List<ProductModelEntity> productModelEntities =
-            productModelRepository.findAllByProductId(s.getProductId());
-        for (var s1 : productModelEntities) {
-          List<ProductDeviceEntity> productDeviceEntityList =
-              productDeviceRepository.findAllByModelId(s1.getId());
-          for (var s2 : productDeviceEntityList) {
-            ++num;
-            if (s2.getOnline().equals("connected"))
-              ++connectedNum;
-          }
-        }
-      }
-    } else {
-      List<ProductDeviceEntity> productDeviceEntityList = productDeviceRepository.findAll();
-      for (var s : productDeviceEntityList) {
-        ++num;
-        if (s.getOnline().equals("connected"))
-          ++connectedNum;
-      }
-    }
-    deviceConnectedNumResponse.setNum(num);
-    deviceConnectedNumResponse.setConnectedNum(connectedNum);
-    deviceConnectedNumResponse.setDisconnectedNum(num - connectedNum);
-    return ResultTool.success(deviceConnectedNumResponse);
+    var scope = authorizationScope.of(token);
+    if (scope.isAdmin())
+      return ResultTool.success(deviceOnlineCounter.countAll());
+    if (scope.getProductIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    return ResultTool.success(deviceOnlineCounter.count(scope.getProductIds()));
   }
 
   @Override
@@ -298,6 +238,8 @@ public class ProductDeviceServiceImpl implements ProductDeviceService {
       productDeviceEntity.setSubscribeTopic(
           "/oc/devices/" + productDeviceEntity.getName() + "/sys/" + "properties/report");
       ProductDeviceEntity productDeviceEntity1 = productDeviceRepository.save(productDeviceEntity);
+      authorizationScope.invalidateModel(productDeviceEntity1.getModelId());
+      deviceOnlineCounter.added(result.get(0).getProductId());
       mqttUserRepository.insertHash(productDeviceEntity1.getName(),
           productDeviceEntity1.getPassword());
       MqttAclEntity mqttAclEntity = new MqttAclEntity();
@@ -323,6 +265,9 @@ public class ProductDeviceServiceImpl implements ProductDeviceService {
         eventStorageService.deleteAllByDeviceId(id);
         mqttUserRepository.deleteByUsername(result.get(0).getName());
         mqttAclRepository.deleteByUsername(result.get(0).getName());
+        otaCampaignDeviceRepository.deleteAllByDeviceId(id);
+        authorizationScope.invalidateModel(result.get(0).getModelId());
+        deviceOnlineCounter.removed(id, result.get(0).getModelId());
         return ResultTool.success(result);
       }
     } else {
@@ -20,6 +20,7 @@
 package top.rslly.iot.services.thingsModel;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -28,6 +29,7 @@ import top.rslly.iot.models.ProductEventEntity;
 import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.request.ProductEvent;
 import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -52,6 +54,8 @@ public class ProductEventServiceImpl implements ProductEventService {
   private UserRepository userRepository;
   @Resource
   private AlarmEventRepository alarmEventRepository;
+  @Resource
+  private ProductRuleRepository productRuleRepository;
 
   @Override
   public List<ProductEventEntity> findAllById(int id) {
@@ -119,6 +123,7 @@ public class ProductEventServiceImpl implements ProductEventService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_EVENT, allEntries = true)
   public JsonResult<?> postProductEvent(ProductEvent productEvent) {
     ProductEventEntity productEventEntity = new ProductEventEntity();
     BeanUtils.copyProperties(productEvent, productEventEntity);
@@ -135,9 +140,10 @@ public class ProductEventServiceImpl implements ProductEventService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_EVENT, allEntries = true)
   public JsonResult<?> deleteProductEvent(int id) {
     List<AlarmEventEntity> alarmEventEntityList = alarmEventRepository.findAllByEventId(id);
-    if (alarmEventEntityList.isEmpty()) {
+    if (alarmEventEntityList.isEmpty() && productRuleRepository.findAllByEventId(id).isEmpty()) {
       List<ProductEventEntity> result = productEventRepository.deleteById(id);
       if (result.isEmpty())
         return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
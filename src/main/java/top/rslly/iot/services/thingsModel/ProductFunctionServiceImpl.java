@@ -20,6 +20,8 @@
 package top.rslly.iot.services.thingsModel;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -28,6 +30,7 @@ import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.prompt.ProductFunctionDescription;
 import top.rslly.iot.param.request.ProductFunction;
 import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -150,6 +153,9 @@ public class ProductFunctionServiceImpl implements ProductFunctionService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @Caching(
+      evict = {@CacheEvict(cacheNames = EntityCacheManager.PRODUCT_FUNCTION, allEntries = true),
+          @CacheEvict(cacheNames = EntityCacheManager.CONTROL_SCHEMA, allEntries = true)})
   public JsonResult<?> postProductFunction(ProductFunction productFunction) {
     ProductFunctionEntity productFunctionEntity = new ProductFunctionEntity();
     BeanUtils.copyProperties(productFunction, productFunctionEntity);
@@ -190,6 +196,9 @@ public class ProductFunctionServiceImpl implements ProductFunctionService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @Caching(
+      evict = {@CacheEvict(cacheNames = EntityCacheManager.PRODUCT_FUNCTION, allEntries = true),
+          @CacheEvict(cacheNames = EntityCacheManager.CONTROL_SCHEMA, allEntries = true)})
   public JsonResult<?> deleteProductFunction(int id) {
     List<ProductFunctionEntity> result = productFunctionRepository.deleteById(id);
     if (result.isEmpty())
@@ -22,6 +22,7 @@ package top.rslly.iot.services.thingsModel;
 import top.rslly.iot.models.ProductEntity;
 import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.prompt.ProductModelDescription;
+import top.rslly.iot.param.request.DecodeScript;
 import top.rslly.iot.param.request.ProductModel;
 import top.rslly.iot.utility.result.JsonResult;
 
@@ -44,4 +45,8 @@ public interface ProductModelService {
 
   JsonResult<?> deleteProductModel(int id);
 
+  JsonResult<?> getDecodeScript(int modelId);
+
+  JsonResult<?> postDecodeScript(DecodeScript decodeScript);
+
 }
@@ -20,6 +20,8 @@
 package top.rslly.iot.services.thingsModel;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
@@ -27,20 +29,28 @@ import top.rslly.iot.models.ProductDeviceEntity;
 import top.rslly.iot.models.ProductEntity;
 import top.rslly.iot.models.ProductModelEntity;
 import top.rslly.iot.param.prompt.ProductModelDescription;
+import top.rslly.iot.param.request.DecodeScript;
 import top.rslly.iot.param.request.ProductModel;
+import top.rslly.iot.services.AuthorizationScope;
+import top.rslly.iot.services.iot.PayloadDecoder;
 import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ProductModelServiceImpl implements ProductModelService {
 
+  @Resource
+  private AuthorizationScope authorizationScope;
   @Resource
   private ProductModelRepository productModelRepository;
   @Resource
@@ -55,6 +65,8 @@ public class ProductModelServiceImpl implements ProductModelService {
   private WxUserRepository wxUserRepository;
   @Resource
   private UserRepository userRepository;
+  @Autowired
+  private PayloadDecoder payloadDecoder;
 
   @Override
   public JsonResult<?> getProductModel(String token) {
@@ -113,6 +125,7 @@ public class ProductModelServiceImpl implements ProductModelService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_MODEL, allEntries = true)
   public JsonResult<?> postProductModel(ProductModel productModel) {
     ProductModelEntity productModelEntity = new ProductModelEntity();
     BeanUtils.copyProperties(productModel, productModelEntity);
@@ -123,6 +136,7 @@ public class ProductModelServiceImpl implements ProductModelService {
       return ResultTool.fail(ResultCode.COMMON_FAIL);
     else {
       ProductModelEntity productModelEntity1 = productModelRepository.save(productModelEntity);
+      authorizationScope.invalidateProduct(productModelEntity1.getProductId());
       return ResultTool.success(productModelEntity1);
     }
   }
@@ -160,6 +174,7 @@ public class ProductModelServiceImpl implements ProductModelService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_MODEL, allEntries = true)
   public JsonResult<?> deleteProductModel(int id) {
     List<ProductDeviceEntity> productDeviceEntityList =
         productDeviceRepository.findAllByModelId(id);
@@ -168,6 +183,7 @@ public class ProductModelServiceImpl implements ProductModelService {
       if (result.isEmpty())
         return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
       else {
+        authorizationScope.invalidateModel(id);
         return ResultTool.success(result);
       }
     } else {
@@ -175,4 +191,33 @@ public class ProductModelServiceImpl implements ProductModelService {
     }
 
   }
+
+  @Override
+  public JsonResult<?> getDecodeScript(int modelId) {
+    List<ProductModelEntity> result = productModelRepository.findAllById(modelId);
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    Map<String, Object> decoder = new LinkedHashMap<>();
+    decoder.put("script", result.get(0).getDecodeScript());
+    decoder.put("stats", payloadDecoder.stats(modelId));
+    return ResultTool.success(decoder);
+  }
+
+  @Override
+  @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_MODEL, allEntries = true)
+  public JsonResult<?> postDecodeScript(DecodeScript decodeScript) {
+    List<ProductModelEntity> result = productModelRepository.findAllById(decodeScript.getModelId());
+    String script = decodeScript.getScript();
+    if (script != null && script.isBlank())
+      script = null;
+    // 保存前先编译，语法错误的脚本不会生效
+    if (result.isEmpty() || !payloadDecoder.prepare(decodeScript.getModelId(), script))
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    // 查询结果来自缓存，复制后再修改
+    ProductModelEntity productModelEntity = new ProductModelEntity();
+    BeanUtils.copyProperties(result.get(0), productModelEntity);
+    productModelEntity.setDecodeScript(script);
+    return ResultTool.success(productModelRepository.save(productModelEntity));
+  }
 }
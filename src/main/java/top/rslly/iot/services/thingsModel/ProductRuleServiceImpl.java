@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.services.thingsModel;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import top.rslly.iot.dao.ProductDataRepository;
+import top.rslly.iot.dao.ProductEventRepository;
+import top.rslly.iot.dao.ProductRuleRepository;
+import top.rslly.iot.models.ProductEventEntity;
+import top.rslly.iot.models.ProductRuleEntity;
+import top.rslly.iot.param.request.ProductRule;
+import top.rslly.iot.services.AuthorizationScope;
+import top.rslly.iot.utility.RuleState;
+import top.rslly.iot.utility.cache.EntityCacheManager;
+import top.rslly.iot.utility.script.expr.Expression;
+import top.rslly.iot.utility.result.JsonResult;
+import top.rslly.iot.utility.result.ResultCode;
+import top.rslly.iot.utility.result.ResultTool;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+@Service
+public class ProductRuleServiceImpl implements ProductRuleService {
+  @Resource
+  private ProductRuleRepository productRuleRepository;
+  @Resource
+  private ProductEventRepository productEventRepository;
+  @Resource
+  private ProductDataRepository productDataRepository;
+  @Autowired
+  private AuthorizationScope authorizationScope;
+
+  @Override
+  public List<ProductRuleEntity> findAllById(int id) {
+    return productRuleRepository.findAllById(id);
+  }
+
+  @Override
+  public List<ProductRuleEntity> findAllByModelId(int modelId) {
+    return productRuleRepository.findAllByModelId(modelId);
+  }
+
+  @Override
+  public JsonResult<?> getProductRule(String token) {
+    var scope = authorizationScope.of(token);
+    List<ProductRuleEntity> result;
+    if (scope.isAdmin())
+      result = productRuleRepository.findAll();
+    else if (scope.getModelIds().isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    else
+      result = productRuleRepository.findAllByModelIdIn(scope.getModelIds());
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.COMMON_FAIL);
+    return ResultTool.success(result);
+  }
+
+  @Override
+  @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_RULE, allEntries = true)
+  public JsonResult<?> postProductRule(ProductRule productRule) {
+    if (!valid(productRule))
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    // 事件和属性都必须属于规则所在的物模型
+    List<ProductEventEntity> event = productEventRepository.findAllById(productRule.getEventId());
+    if (event.isEmpty() || event.get(0).getModelId() != productRule.getModelId())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    List<String> keys;
+    if (productRule.getType().equals(RuleState.EXPRESSION)) {
+      try {
+        keys = Expression.compile(productRule.getExpression()).getVariables();
+      } catch (IllegalArgumentException e) {
+        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+      }
+      productRule.setJsonKey(null);
+    } else
+      keys = List.of(productRule.getJsonKey());
+    for (String key : keys) {
+      if (productDataRepository.findAllByModelIdAndJsonKey(productRule.getModelId(), key)
+          .isEmpty())
+        return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    }
+    ProductRuleEntity productRuleEntity = new ProductRuleEntity();
+    BeanUtils.copyProperties(productRule, productRuleEntity);
+    return ResultTool.success(productRuleRepository.save(productRuleEntity));
+  }
+
+  @Override
+  @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_RULE, allEntries = true)
+  public JsonResult<?> deleteProductRule(int id) {
+    List<ProductRuleEntity> result = productRuleRepository.deleteById(id);
+    if (result.isEmpty())
+      return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
+    return ResultTool.success(result);
+  }
+
+  private boolean valid(ProductRule productRule) {
+    String type = productRule.getType();
+    if (!RuleState.TYPES.contains(type))
+      return false;
+    if (type.equals(RuleState.EXPRESSION))
+      return productRule.getExpression() != null && !productRule.getExpression().isBlank();
+    if (productRule.getJsonKey() == null || productRule.getJsonKey().isBlank())
+      return false;
+    if (type.equals(RuleState.ABSENCE))
+      return productRule.getWindowSeconds() > 0;
+    if (productRule.getOperator() == null
+        || !RuleState.OPERATORS.contains(productRule.getOperator()))
+      return false;
+    if (type.equals(RuleState.WINDOW))
+      return productRule.getWindowSeconds() > 0 && productRule.getAggregate() != null
+          && RuleState.AGGREGATES.contains(productRule.getAggregate());
+    return true;
+  }
+}
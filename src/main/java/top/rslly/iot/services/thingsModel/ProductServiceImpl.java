@@ -20,12 +20,19 @@
 package top.rslly.iot.services.thingsModel;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import top.rslly.iot.dao.*;
 import top.rslly.iot.models.*;
 import top.rslly.iot.param.request.Product;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.utility.JwtTokenUtil;
+import top.rslly.iot.utility.RedisUtil;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
+import top.rslly.iot.utility.cache.EntityCacheManager;
 import top.rslly.iot.utility.result.JsonResult;
 import top.rslly.iot.utility.result.ResultCode;
 import top.rslly.iot.utility.result.ResultTool;
@@ -62,6 +69,10 @@ public class ProductServiceImpl implements ProductService {
   private AgentMemoryRepository agentMemoryRepository;
   @Resource
   private ProductRouterSetRepository productRouterSetRepository;
+  @Resource
+  private AuthorizationScope authorizationScope;
+  @Autowired
+  private RedisUtil redisUtil;
 
 
   @Override
@@ -118,6 +129,7 @@ public class ProductServiceImpl implements ProductService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @CacheEvict(cacheNames = EntityCacheManager.PRODUCT, allEntries = true)
   public JsonResult<?> postProduct(Product product, String token) {
     String token_deal = token.replace(JwtTokenUtil.TOKEN_PREFIX, "");
     String role = JwtTokenUtil.getUserRole(token_deal);
@@ -140,6 +152,7 @@ public class ProductServiceImpl implements ProductService {
         wxProductBindEntity.setOpenid(userList.get(0).getOpenid());
         wxProductBindEntity.setProductId(productEntity1.getId());
         wxProductBindRepository.save(wxProductBindEntity);
+        authorizationScope.invalidateWxUser(wxProductBindEntity.getOpenid());
       } else if (!role.equals("[ROLE_admin]")) {
         UserProductBindEntity userProductBindEntity = new UserProductBindEntity();
         var userList = userRepository.findAllByUsername(username);
@@ -149,6 +162,7 @@ public class ProductServiceImpl implements ProductService {
         userProductBindEntity.setUserId(userList.get(0).getId());
         userProductBindEntity.setProductId(productEntity1.getId());
         userProductBindRepository.save(userProductBindEntity);
+        authorizationScope.invalidateUser(userProductBindEntity.getUserId());
       }
       return ResultTool.success(productEntity1);
     }
@@ -156,6 +170,8 @@ public class ProductServiceImpl implements ProductService {
 
   @Override
   @Transactional(rollbackFor = Exception.class)
+  @Caching(evict = {@CacheEvict(cacheNames = EntityCacheManager.PRODUCT, allEntries = true),
+      @CacheEvict(cacheNames = EntityCacheManager.PRODUCT_ROLE, allEntries = true)})
   public JsonResult<?> deleteProduct(int id) {
     List<ProductModelEntity> productModelEntityList = productModelRepository.findAllByProductId(id);
     List<WxProductBindEntity> wxProductBindEntityList =
@@ -187,12 +203,15 @@ public class ProductServiceImpl implements ProductService {
         if (!userProductBindEntityList.isEmpty()) {
           userProductBindRepository.deleteAllByProductId(id);
         }
+        authorizationScope.invalidateProduct(id);
         if (!productRoleEntityList.isEmpty()) {
           productRoleRepository.deleteAllByProductId(id);
         }
         if (!agentMemoryEntityList.isEmpty()) {
           agentMemoryRepository.deleteAllByChatIdStartingWith("chatProduct" + id);
         }
+        redisUtil.del(ChatMemory.MEMORY_PREFIX + "chatProduct" + id,
+            ChatMemory.SUMMARY_PREFIX + "chatProduct" + id);
         return ResultTool.success(result);
       }
     } else {
@@ -28,6 +28,7 @@ import top.rslly.iot.dao.WxUserRepository;
 import top.rslly.iot.models.WxProductBindEntity;
 import top.rslly.iot.param.request.WxBindProduct;
 import top.rslly.iot.param.response.WxBindProductResponse;
+import top.rslly.iot.services.AuthorizationScope;
 import top.rslly.iot.services.wechat.WxProductBindService;
 import top.rslly.iot.utility.JwtTokenUtil;
 import top.rslly.iot.utility.result.JsonResult;
@@ -47,6 +48,8 @@ public class WxProductBindServiceImpl implements WxProductBindService {
   private WxUserRepository wxUserRepository;
   @Resource
   private ProductRepository productRepository;
+  @Resource
+  private AuthorizationScope authorizationScope;
 
   @Override
   @Transactional(rollbackFor = Exception.class)
@@ -55,6 +58,7 @@ public class WxProductBindServiceImpl implements WxProductBindService {
         productRepository.findAllById(wxProductBindEntity.getProductId()).isEmpty())
       return ResultTool.fail(ResultCode.PARAM_NOT_VALID);
     var result = wxProductBindRepository.save(wxProductBindEntity);
+    authorizationScope.invalidateWxUser(wxProductBindEntity.getOpenid());
     return ResultTool.success(result);
 
   }
@@ -122,6 +126,7 @@ public class WxProductBindServiceImpl implements WxProductBindService {
     wxProductBindEntity.setProductId(productList.get(0).getId());
     wxProductBindEntity.setOpenid(openid);
     wxProductBindRepository.save(wxProductBindEntity);
+    authorizationScope.invalidateWxUser(openid);
     return true;
   }
 
@@ -135,6 +140,7 @@ public class WxProductBindServiceImpl implements WxProductBindService {
         productRepository.findAllById(productList.get(0).getId()).isEmpty())
       return false;
     wxProductBindRepository.deleteByOpenidAndProductId(openid, productList.get(0).getId());
+    authorizationScope.invalidateWxUser(openid);
     // 设置成这样是为了将其归位，让用户重新选择
     if (!wxProductActiveRepository.findAllByOpenid(openid).isEmpty()) {
       var wxProductActiveList = wxProductActiveRepository.findAllByOpenid(openid);
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.transfer;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.services.iot.OtaCampaignService;
+import top.rslly.iot.services.thingsModel.ProductDeviceServiceImpl;
+
+@Component
+@Slf4j
+public class DealOtaReply {
+
+  @Autowired
+  private ProductDeviceServiceImpl productDeviceService;
+  @Autowired
+  private OtaCampaignService otaCampaignService;
+
+  public boolean deal(String clientId, String topic, String message) {
+    if (!topic.endsWith("/sys/ota_reply"))
+      return false;
+    var deviceEntityList = productDeviceService.findAllByClientId(clientId);
+    if (deviceEntityList.isEmpty())
+      return false;
+    String replyTopic = "/oc/devices/" + deviceEntityList.get(0).getName() + "/sys/" + "ota_reply";
+    if (!replyTopic.equals(topic))
+      return false;
+    JSONObject reply;
+    try {
+      reply = JSON.parseObject(message);
+    } catch (JSONException e) {
+      log.error("json error{}", e.getMessage());
+      return false;
+    }
+    if (reply == null)
+      return false;
+    return otaCampaignService.onReply(deviceEntityList.get(0).getId(), reply);
+  }
+}
@@ -30,7 +30,6 @@ import top.rslly.iot.models.ProductFunctionEntity;
 import top.rslly.iot.services.thingsModel.ProductDeviceServiceImpl;
 import top.rslly.iot.services.thingsModel.ProductFunctionServiceImpl;
 import top.rslly.iot.transfer.mqtt.MqttConnectionUtils;
-import top.rslly.iot.utility.RedisUtil;
 
 import java.util.List;
 
@@ -43,7 +42,7 @@ public class DealThingsFunction {
   @Autowired
   private ProductFunctionServiceImpl productFunctionService;
   @Autowired
-  private RedisUtil redisUtil;
+  private ServiceInvokeRegistry serviceInvokeRegistry;
 
   // private final Lock lock = new ReentrantLock();
   public boolean deal(String clientId, String topic, String message) {
@@ -75,6 +74,9 @@ public class DealThingsFunction {
         + "/sys/" + "services/async_outputData";
     JSONObject outputDataObject = new JSONObject();
     outputDataObject.put("functionName", mes.get("functionName"));
+    String requestId = mes.getString("requestId");
+    if (requestId != null)
+      outputDataObject.put("requestId", requestId);
     for (var s : functionReplyEntities) {
       var result = mes.get(s.getJsonKey());
       if (result == null)
@@ -89,7 +91,7 @@ public class DealThingsFunction {
         log.error("DealThingsModel save error:{}", e.getMessage());
       }
     }
-    redisUtil.set("service" + deviceName, outputDataObject.toJSONString(), 120);
+    serviceInvokeRegistry.complete(deviceName, requestId, outputDataObject);
     try {
       MqttConnectionUtils.publish(reply_topic, "{\"code\":\"" + 200 + "\",\"status\":\"ok\"}", 0);
       MqttConnectionUtils.publish(async_outputData_topic, outputDataObject.toJSONString(), 0);
@@ -27,6 +27,9 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import top.rslly.iot.models.DataEntity;
+import top.rslly.iot.services.iot.DeviceShadow;
+import top.rslly.iot.services.iot.PayloadDecoder;
+import top.rslly.iot.services.iot.RuleEngine;
 import top.rslly.iot.services.storage.DataServiceImpl;
 import top.rslly.iot.services.thingsModel.ProductDataServiceImpl;
 import top.rslly.iot.services.thingsModel.ProductDeviceServiceImpl;
@@ -35,7 +38,9 @@ import top.rslly.iot.utility.DataSave;
 import top.rslly.iot.utility.RedisUtil;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Component
@@ -49,9 +54,15 @@ public class DealThingsModel {
   private DataServiceImpl dataService;
   @Autowired
   private RedisUtil redisUtil;
+  @Autowired
+  private DeviceShadow deviceShadow;
+  @Autowired
+  private RuleEngine ruleEngine;
+  @Autowired
+  private PayloadDecoder payloadDecoder;
 
   // private final Lock lock = new ReentrantLock();
-  public boolean deal(String clientId, String topic, String message) {
+  public boolean deal(String clientId, String topic, byte[] payload) {
     // this clientId is delivered id ,not the sender
     // log.info("clientId:{},topic:{},message:{}", clientId, topic, message);
     String characteristic = UUID.randomUUID().toString();
@@ -66,6 +77,11 @@ public class DealThingsModel {
       return false;
     }
     int modelId = deviceEntityList.get(0).getModelId();
+    // 配置了解码脚本的物模型先转换为属性JSON，解码失败的消息直接丢弃
+    String message =
+        payloadDecoder.decode(modelId, deviceEntityList.get(0).getName(), topic, payload);
+    if (message == null)
+      return true;
     var productDataEntities = productDataService.findAllByModelId(modelId);
     JSONObject mes;
     try {
@@ -76,8 +92,11 @@ public class DealThingsModel {
     }
     String reply_topic = "/oc/devices/" + deviceEntityList.get(0).getName()
         + "/sys/" + "properties/report_reply";
+    Map<String, Object> reported = new HashMap<>();
     for (var s : productDataEntities) {
       var result = mes.get(s.getJsonKey());
+      if (result != null)
+        reported.put(s.getJsonKey(), result.toString());
       if (result == null || s.getStorageType().equals(DataSave.never.getStorageType()))
         continue;// Automatically ignore values
       DataEntity dataEntity = new DataEntity();
@@ -103,6 +122,16 @@ public class DealThingsModel {
         log.error("DealThingsModel save error:{}", e.getMessage());
       }
     }
+    try {
+      deviceShadow.reported(deviceEntityList.get(0).getId(), reported);
+    } catch (Exception e) {
+      log.error("DealThingsModel shadow error:{}", e.getMessage());
+    }
+    try {
+      ruleEngine.onReport(deviceEntityList.get(0), reported);
+    } catch (Exception e) {
+      log.error("DealThingsModel rule error:{}", e.getMessage());
+    }
     try {
       MqttConnectionUtils.publish(reply_topic, "{\"code\":\"" + 200 + "\",\"status\":\"ok\"}", 0);
     } catch (MqttException e) {
@@ -24,6 +24,9 @@ import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
 import org.springframework.beans.factory.annotation.Autowired;
+import top.rslly.iot.services.iot.DeviceOutbox;
+import top.rslly.iot.services.iot.DeviceShadow;
+import top.rslly.iot.services.thingsModel.DeviceOnlineCounter;
 import top.rslly.iot.services.thingsModel.ProductDeviceServiceImpl;
 import top.rslly.iot.utility.EmqTransfer;
 import top.rslly.iot.utility.exhook.*;
@@ -45,7 +48,15 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
   @Autowired
   private DealThingsFunction dealThingsFunction;
   @Autowired
+  private DealOtaReply dealOtaReply;
+  @Autowired
   private EmqTransfer emqTransfer;
+  @Autowired
+  private DeviceOnlineCounter deviceOnlineCounter;
+  @Autowired
+  private DeviceOutbox deviceOutbox;
+  @Autowired
+  private DeviceShadow deviceShadow;
 
   @PostConstruct
   public void init() {
@@ -63,6 +74,7 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
         productDeviceService.updateOnlineByClientId(status,
             s.getClientId());
       }
+      deviceOnlineCounter.reconcile();
       log.info("Emq connected information init success");
     } catch (Exception e) {
       e.printStackTrace();
@@ -77,6 +89,7 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
 
         HookSpec.newBuilder().setName("client.connected").build(),
         HookSpec.newBuilder().setName("client.disconnected").build(),
+        HookSpec.newBuilder().setName("session.subscribed").build(),
         HookSpec.newBuilder().setName("message.publish").build(),
 
     };
@@ -95,6 +108,7 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
     if (!deviceEntityList.isEmpty()) {
       productDeviceService.updateOnlineByClientId("connected",
           deviceEntityList.get(0).getClientId());
+      deviceOnlineCounter.mark(deviceEntityList.get(0), true);
     }
 
     EmptySuccess reply = EmptySuccess.newBuilder().build();
@@ -111,6 +125,22 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
     if (!deviceEntityList.isEmpty()) {
       productDeviceService.updateOnlineByClientId("disconnected",
           deviceEntityList.get(0).getClientId());
+      deviceOnlineCounter.mark(deviceEntityList.get(0), false);
+      deviceShadow.clearReported(deviceEntityList.get(0).getId());
+    }
+    EmptySuccess reply = EmptySuccess.newBuilder().build();
+    responseObserver.onNext(reply);
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void onSessionSubscribed(SessionSubscribedRequest request,
+      StreamObserver<EmptySuccess> responseObserver) {
+    // 设备订阅下发主题后才能收到消息，此时投递离线期间缓存的指令
+    var deviceEntityList =
+        productDeviceService.findAllByClientId(request.getClientinfo().getClientid());
+    if (!deviceEntityList.isEmpty()) {
+      deviceOutbox.drainAsync(deviceEntityList.get(0).getName(), request.getTopic());
     }
     EmptySuccess reply = EmptySuccess.newBuilder().build();
     responseObserver.onNext(reply);
@@ -123,15 +153,18 @@ public class HookProviderImpl extends HookProviderGrpc.HookProviderImplBase {
       StreamObserver<ValuedResponse> responseObserver) {
     boolean isDealModel =
         dealThingsModel.deal(request.getMessage().getFrom(), request.getMessage().getTopic(),
-            request.getMessage().getPayload().toStringUtf8());
+            request.getMessage().getPayload().toByteArray());
     boolean isDealEvent =
         dealThingsEvent.deal(request.getMessage().getFrom(), request.getMessage().getTopic(),
             request.getMessage().getPayload().toStringUtf8());
     boolean isDealFunction =
         dealThingsFunction.deal(request.getMessage().getFrom(), request.getMessage().getTopic(),
             request.getMessage().getPayload().toStringUtf8());
+    boolean isDealOtaReply =
+        dealOtaReply.deal(request.getMessage().getFrom(), request.getMessage().getTopic(),
+            request.getMessage().getPayload().toStringUtf8());
     Message nmsg;
-    if (isDealModel || isDealEvent || isDealFunction) {
+    if (isDealModel || isDealEvent || isDealFunction || isDealOtaReply) {
       ByteString bstr = ByteString.copyFromUtf8("You don't have permissions");
 
       nmsg = Message.newBuilder()
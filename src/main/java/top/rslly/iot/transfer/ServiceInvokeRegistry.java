@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.transfer;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 同步服务调用的请求/响应关联表。每次调用携带requestId并登记一个future，设备在services/report中回传requestId即可直接唤醒调用方；
+ * 回复落在其它节点时通过redis发布订阅转发。未回传requestId的旧设备按设备名取最早的等待请求。
+ */
+@Component
+@Slf4j
+public class ServiceInvokeRegistry implements MessageListener {
+  public static final String REPLY_CHANNEL = "serviceReply";
+  public static final long TIMEOUT_MS = 8000;
+
+  private final Map<String, CompletableFuture<JSONObject>> pending = new ConcurrentHashMap<>();
+  private final Map<String, Queue<String>> deviceRequests = new ConcurrentHashMap<>();
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+
+  public String newRequestId() {
+    return UUID.randomUUID().toString().replace("-", "");
+  }
+
+  public CompletableFuture<JSONObject> register(String deviceName, String requestId) {
+    CompletableFuture<JSONObject> future = new CompletableFuture<>();
+    pending.put(requestId, future);
+    // 队列的增删都在compute内完成，队列空时移除，设备较多时不会一直占用
+    deviceRequests.compute(deviceName, (k, queue) -> {
+      if (queue == null)
+        queue = new ConcurrentLinkedQueue<>();
+      queue.add(requestId);
+      return queue;
+    });
+    future.whenComplete((output, e) -> {
+      pending.remove(requestId);
+      deviceRequests.computeIfPresent(deviceName, (k, queue) -> {
+        queue.remove(requestId);
+        return queue.isEmpty() ? null : queue;
+      });
+    });
+    return future;
+  }
+
+  /**
+   * 设备服务回复到达时调用，本节点没有对应请求则广播给其它节点
+   *
+   * @param deviceName 设备名
+   * @param requestId 设备回传的请求id，可以为null
+   * @param output 服务输出
+   */
+  public void complete(String deviceName, String requestId, JSONObject output) {
+    if (completeLocal(deviceName, requestId, output))
+      return;
+    JSONObject reply = new JSONObject();
+    reply.put("deviceName", deviceName);
+    reply.put("requestId", requestId);
+    reply.put("output", output);
+    try {
+      redisTemplate.convertAndSend(REPLY_CHANNEL, reply.toJSONString());
+    } catch (Exception e) {
+      log.error("service reply publish error:{}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+    if (body == null)
+      return;
+    JSONObject reply = JSONObject.parseObject(body.toString());
+    completeLocal(reply.getString("deviceName"), reply.getString("requestId"),
+        reply.getJSONObject("output"));
+  }
+
+  private boolean completeLocal(String deviceName, String requestId, JSONObject output) {
+    if (requestId == null) {
+      String[] polled = new String[1];
+      deviceRequests.computeIfPresent(deviceName, (k, queue) -> {
+        polled[0] = queue.poll();
+        return queue.isEmpty() ? null : queue;
+      });
+      requestId = polled[0];
+      if (requestId == null)
+        return false;
+    }
+    CompletableFuture<JSONObject> future = pending.get(requestId);
+    return future != null && future.complete(output);
+  }
+}
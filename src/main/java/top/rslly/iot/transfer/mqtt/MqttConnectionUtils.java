@@ -54,7 +54,11 @@ public class MqttConnectionUtils {
    */
 
   public static void publish(String topic, String content, int qos) throws MqttException {
-    MqttMessage message = new MqttMessage(content.getBytes());
+    publish(topic, content.getBytes(), qos);
+  }
+
+  public static void publish(String topic, byte[] payload, int qos) throws MqttException {
+    MqttMessage message = new MqttMessage(payload);
     message.setQos(qos);
     SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");// 设置日期格式
     log.info("发送时间========{}", df.format(new Date()));
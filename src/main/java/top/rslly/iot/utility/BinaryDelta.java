@@ -0,0 +1,271 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 固件差分包，思路同bsdiff：在旧固件中找到与新固件近似相同的区域，只记录逐字节差值，其余部分原样写入。 代码插入或删除后大量地址只变动少数字节，差值几乎全为0，压缩后很小。
+ * <p>
+ * 格式：魔数ICD1，之后是zlib压缩的内容：旧固件长度、新固件长度（均为varint），然后是若干指令直到结尾：
+ * <ul>
+ * <li>0 ADD：varint长度，随后是要写入的原始字节</li>
+ * <li>1 DIFF：varint旧固件偏移，varint长度，随后每个字节与旧固件对应字节相加（模256）</li>
+ * </ul>
+ * 设备端按顺序执行指令即可边解压边写入新分区，只需顺序读新数据、随机读旧分区。
+ */
+public class BinaryDelta {
+  public static final byte[] MAGIC = {'I', 'C', 'D', '1'};
+  private static final int ADD = 0;
+  private static final int DIFF = 1;
+  // 建索引的块大小，越小越能匹配到短的相同片段，索引也越大
+  private static final int BLOCK = 16;
+  private static final int PRIME = 0x01000193;
+  // 连续这么多字节没有提高匹配得分就停止向后延伸
+  private static final int GIVE_UP = 256;
+
+  /**
+   * 生成从source到target的差分包
+   */
+  public static byte[] diff(byte[] source, byte[] target) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 8 + 64);
+    out.writeBytes(MAGIC);
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try (DeflaterOutputStream body = new DeflaterOutputStream(out, deflater)) {
+      writeVarint(body, source.length);
+      writeVarint(body, target.length);
+      encode(source, target, body);
+    } catch (IOException e) {
+      // ByteArrayOutputStream不会抛出
+      throw new IllegalStateException(e);
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * 在source上应用差分包得到新固件，用于生成后校验和测试
+   *
+   * @throws IllegalArgumentException 差分包损坏或与source不匹配
+   */
+  public static byte[] patch(byte[] source, byte[] delta) {
+    if (delta.length < MAGIC.length
+        || !Arrays.equals(Arrays.copyOf(delta, MAGIC.length), MAGIC))
+      throw new IllegalArgumentException("not a delta package");
+    try (InputStream in = new InflaterInputStream(
+        new ByteArrayInputStream(delta, MAGIC.length, delta.length - MAGIC.length))) {
+      if (readVarint(in) != source.length)
+        throw new IllegalArgumentException("source length mismatch");
+      long length = readVarint(in);
+      if (length > Integer.MAX_VALUE)
+        throw new IllegalArgumentException("target too large");
+      byte[] target = new byte[(int) length];
+      int pos = 0;
+      int op;
+      while ((op = in.read()) >= 0) {
+        if (op == ADD) {
+          int n = checkedLength(in, pos, target.length);
+          readFully(in, target, pos, n);
+          pos += n;
+        } else if (op == DIFF) {
+          long offset = readVarint(in);
+          int n = checkedLength(in, pos, target.length);
+          if (offset + n > source.length)
+            throw new IllegalArgumentException("offset out of range");
+          readFully(in, target, pos, n);
+          for (int k = 0; k < n; k++)
+            target[pos + k] += source[(int) offset + k];
+          pos += n;
+        } else
+          throw new IllegalArgumentException("unknown op " + op);
+      }
+      if (pos != target.length)
+        throw new IllegalArgumentException("truncated delta");
+      return target;
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  private static void encode(byte[] source, byte[] target, DeflaterOutputStream out)
+      throws IOException {
+    int[] index = buildIndex(source);
+    int mask = index.length / 2 - 1;
+    int power = 1;
+    for (int k = 1; k < BLOCK; k++)
+      power *= PRIME;
+    int pending = 0;
+    int i = 0;
+    int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+    while (i + BLOCK <= target.length) {
+      int s = index.length == 0 ? -1 : lookup(index, mask, hash, source, target, i);
+      if (s < 0) {
+        if (i + BLOCK < target.length)
+          hash = (hash - target[i] * power) * PRIME + target[i + BLOCK];
+        i++;
+        continue;
+      }
+      // 向前补齐完全相同的字节，向后按得分延伸允许少量不同
+      int back = 0;
+      while (i - back > pending && s - back > 0
+          && target[i - back - 1] == source[s - back - 1])
+        back++;
+      int score = 0;
+      int best = 0;
+      int length = 0;
+      for (int l = 0; i + l < target.length && s + l < source.length; l++) {
+        if (target[i + l] == source[s + l])
+          score++;
+        if (score * 2 - (l + 1) > best * 2 - length) {
+          best = score;
+          length = l + 1;
+        } else if (l + 1 - length > GIVE_UP)
+          break;
+      }
+      if (i - back > pending)
+        writeAdd(out, target, pending, i - back - pending);
+      writeDiff(out, source, target, s - back, i - back, back + length);
+      i += length;
+      pending = i;
+      if (i + BLOCK <= target.length)
+        hash = hash(target, i);
+    }
+    if (pending < target.length)
+      writeAdd(out, target, pending, target.length - pending);
+  }
+
+  // 旧固件按块对齐建哈希表，[哈希, 偏移+1]交替存放，线性探测；
+  // 内容相同的块（如填充区）只保留第一个，否则探测链随重复块数变长，查找退化为平方级
+  private static int[] buildIndex(byte[] source) {
+    int blocks = source.length / BLOCK;
+    if (blocks == 0)
+      return new int[0];
+    int size = Integer.highestOneBit(blocks * 2 - 1) << 1;
+    int[] index = new int[size * 2];
+    int mask = size - 1;
+    for (int b = 0; b < blocks; b++) {
+      int h = hash(source, b * BLOCK);
+      int slot = mix(h) & mask;
+      boolean duplicate = false;
+      while (index[slot * 2 + 1] != 0) {
+        if (index[slot * 2] == h && Arrays.equals(source, index[slot * 2 + 1] - 1,
+            index[slot * 2 + 1] - 1 + BLOCK, source, b * BLOCK, b * BLOCK + BLOCK)) {
+          duplicate = true;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (duplicate)
+        continue;
+      index[slot * 2] = h;
+      index[slot * 2 + 1] = b * BLOCK + 1;
+    }
+    return index;
+  }
+
+  private static int lookup(int[] index, int mask, int hash, byte[] source, byte[] target,
+      int i) {
+    int slot = mix(hash) & mask;
+    while (index[slot * 2 + 1] != 0) {
+      if (index[slot * 2] == hash) {
+        int s = index[slot * 2 + 1] - 1;
+        if (Arrays.equals(source, s, s + BLOCK, target, i, i + BLOCK))
+          return s;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private static int hash(byte[] data, int from) {
+    int h = 0;
+    for (int k = 0; k < BLOCK; k++)
+      h = h * PRIME + data[from + k];
+    return h;
+  }
+
+  private static int mix(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private static void writeAdd(DeflaterOutputStream out, byte[] target, int from, int length)
+      throws IOException {
+    out.write(ADD);
+    writeVarint(out, length);
+    out.write(target, from, length);
+  }
+
+  private static void writeDiff(DeflaterOutputStream out, byte[] source, byte[] target, int s,
+      int t, int length) throws IOException {
+    out.write(DIFF);
+    writeVarint(out, s);
+    writeVarint(out, length);
+    byte[] buffer = new byte[Math.min(length, 8192)];
+    for (int done = 0; done < length;) {
+      int n = Math.min(buffer.length, length - done);
+      for (int k = 0; k < n; k++)
+        buffer[k] = (byte) (target[t + done + k] - source[s + done + k]);
+      out.write(buffer, 0, n);
+      done += n;
+    }
+  }
+
+  private static void writeVarint(DeflaterOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarint(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0)
+        throw new IllegalArgumentException("truncated delta");
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IllegalArgumentException("malformed varint");
+  }
+
+  private static int checkedLength(InputStream in, int pos, int limit) throws IOException {
+    long n = readVarint(in);
+    if (n > limit - pos)
+      throw new IllegalArgumentException("length out of range");
+    return (int) n;
+  }
+
+  private static void readFully(InputStream in, byte[] buffer, int from, int length)
+      throws IOException {
+    if (in.readNBytes(buffer, from, length) != length)
+      throw new IllegalArgumentException("truncated delta");
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility;
+
+import com.alibaba.fastjson.JSON;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 物模型控制参数的预编译结构，字段名和取值范围只在编译时解析一次，下发时直接拼接字节。编码结果与JsonCreate一致，但functionName只写一次，string值会做转义。
+ */
+public class ControlSchema {
+  private static final byte[] REQUEST_ID_PREFIX =
+      "\"requestId\":\"".getBytes(StandardCharsets.UTF_8);
+  private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+  private final byte[] functionName;
+  private final Map<String, Field> fields = new HashMap<>();
+
+  private static class Field {
+    private byte[] name;
+    private boolean string;
+    private boolean ranged;
+    private BigDecimal max;
+    private BigDecimal min;
+    private boolean invalid; // max或min无法解析，任何取值都拒绝
+  }
+
+  public ControlSchema(String functionName) {
+    this.functionName = functionName == null ? null
+        : ("\"functionName\":" + JSON.toJSONString(functionName) + ",")
+            .getBytes(StandardCharsets.UTF_8);
+  }
+
+  public void addField(String key, String type, String max, String min) {
+    Field field = new Field();
+    field.name = (JSON.toJSONString(key) + ":").getBytes(StandardCharsets.UTF_8);
+    field.string = "string".equals(type);
+    if (max != null && min != null) {
+      field.ranged = true;
+      try {
+        field.max = new BigDecimal(max).setScale(8, RoundingMode.HALF_UP);
+        field.min = new BigDecimal(min).setScale(8, RoundingMode.HALF_UP);
+      } catch (NumberFormatException e) {
+        field.invalid = true;
+      }
+    }
+    fields.put(key, field);
+  }
+
+  /**
+   * 校验控制参数并编码，key重复时取第一个
+   *
+   * @throws IllegalArgumentException 参数不属于该物模型或超出范围
+   */
+  public Payload bind(List<String> key, List<String> value) throws IllegalArgumentException {
+    if (key.isEmpty() || key.size() != value.size())
+      throw new IllegalArgumentException("参数个数不匹配");
+    List<String> written = new ArrayList<>(key.size());
+    Buffer buffer = BUFFER.get();
+    buffer.reset();
+    buffer.write('{');
+    if (functionName != null)
+      buffer.write(functionName);
+    for (int i = 0; i < key.size(); i++) {
+      Field field = fields.get(key.get(i));
+      if (field == null)
+        throw new IllegalArgumentException("未定义的参数" + key.get(i));
+      if (written.contains(key.get(i)))
+        continue;
+      String v = value.get(i);
+      if (field.ranged)
+        checkValueRange(field, v);
+      if (!written.isEmpty())
+        buffer.write(',');
+      buffer.write(field.name);
+      buffer.write((field.string ? JSON.toJSONString(v) : String.valueOf(v))
+          .getBytes(StandardCharsets.UTF_8));
+      written.add(key.get(i));
+    }
+    buffer.write('}');
+    return new Payload(buffer.toByteArray());
+  }
+
+  private static void checkValueRange(Field field, String valueStr) {
+    if (field.invalid)
+      throw new IllegalArgumentException("无法解析数值");
+    try {
+      BigDecimal value = new BigDecimal(valueStr).setScale(8, RoundingMode.HALF_UP);
+      if (value.compareTo(field.min) < 0 || value.compareTo(field.max) > 0) {
+        throw new IllegalArgumentException("数据超出范围！");
+      }
+    } catch (NumberFormatException | NullPointerException e) {
+      throw new IllegalArgumentException("无法解析数值", e);
+    }
+  }
+
+  /**
+   * 编码好的下发内容，可在同一物模型的多个设备间共用
+   */
+  public static class Payload {
+    private final byte[] body;
+
+    private Payload(byte[] body) {
+      this.body = body;
+    }
+
+    /**
+     * 生成下发字节，requestId不为空时写在最前面
+     */
+    public byte[] encode(String requestId) {
+      if (requestId == null)
+        return body;
+      byte[] id = requestId.getBytes(StandardCharsets.UTF_8);
+      byte[] out = new byte[body.length + REQUEST_ID_PREFIX.length + id.length + 2];
+      int pos = 0;
+      out[pos++] = '{';
+      System.arraycopy(REQUEST_ID_PREFIX, 0, out, pos, REQUEST_ID_PREFIX.length);
+      pos += REQUEST_ID_PREFIX.length;
+      System.arraycopy(id, 0, out, pos, id.length);
+      pos += id.length;
+      out[pos++] = '"';
+      out[pos++] = ',';
+      System.arraycopy(body, 1, out, pos, body.length - 1);
+      return out;
+    }
+
+    @Override
+    public String toString() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+
+  // 线程内复用的编码缓冲区，只在编码结束时复制一次
+  private static class Buffer {
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    void reset() {
+      size = 0;
+    }
+
+    void write(int b) {
+      ensure(1);
+      bytes[size++] = (byte) b;
+    }
+
+    void write(byte[] b) {
+      ensure(b.length);
+      System.arraycopy(b, 0, bytes, size, b.length);
+      size += b.length;
+    }
+
+    private void ensure(int n) {
+      if (size + n > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+}
@@ -19,13 +19,17 @@
  */
 package top.rslly.iot.utility;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class JwtTokenUtil {
   // Token请求头
@@ -41,6 +45,9 @@ public class JwtTokenUtil {
   public static final String APPSECRET_KEY = "XXXXXXX";
   // 角色权限声明
   private static final String ROLE_CLAIMS = "role";
+  // 已校验token的claims缓存，同一token重复请求时跳过签名校验
+  private static final Cache<String, Claims> CLAIMS_CACHE = CacheBuilder.newBuilder()
+      .maximumSize(10000).expireAfterWrite(30, TimeUnit.MINUTES).build();
 
   /**
    * 生成Token
@@ -55,14 +62,29 @@ public class JwtTokenUtil {
     return token;
   }
 
+  /**
+   * 解析并校验Token，结果按token缓存，过期的token即使命中缓存也会抛出ExpiredJwtException
+   */
+  public static Claims parse(String token) {
+    Claims claims = CLAIMS_CACHE.getIfPresent(token);
+    if (claims != null) {
+      if (claims.getExpiration() != null && claims.getExpiration().before(new Date())) {
+        CLAIMS_CACHE.invalidate(token);
+        throw new ExpiredJwtException(null, claims, "JWT expired at " + claims.getExpiration());
+      }
+      return claims;
+    }
+    claims = Jwts.parser().setSigningKey(APPSECRET_KEY).parseClaimsJws(token).getBody();
+    CLAIMS_CACHE.put(token, claims);
+    return claims;
+  }
+
   /**
    * 校验Token
    */
   public static Claims checkJWT(String token) {
     try {
-      final Claims claims =
-          Jwts.parser().setSigningKey(APPSECRET_KEY).parseClaimsJws(token).getBody();
-      return claims;
+      return parse(token);
     } catch (Exception e) {
       e.printStackTrace();
       return null;
@@ -73,23 +95,20 @@ public class JwtTokenUtil {
    * 从Token中获取username
    */
   public static String getUsername(String token) {
-    Claims claims = Jwts.parser().setSigningKey(APPSECRET_KEY).parseClaimsJws(token).getBody();
-    return claims.get("username").toString();
+    return parse(token).get("username").toString();
   }
 
   /**
    * 从Token中获取用户角色
    */
   public static String getUserRole(String token) {
-    Claims claims = Jwts.parser().setSigningKey(APPSECRET_KEY).parseClaimsJws(token).getBody();
-    return claims.get("role").toString();
+    return parse(token).get(ROLE_CLAIMS).toString();
   }
 
   /**
    * 校验Token是否过期
    */
   public static boolean isExpiration(String token) {
-    Claims claims = Jwts.parser().setSigningKey(APPSECRET_KEY).parseClaimsJws(token).getBody();
-    return claims.getExpiration().before(new Date());
+    return parse(token).getExpiration().before(new Date());
   }
 }
@@ -19,12 +19,24 @@
  */
 package top.rslly.iot.utility;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
 public class MyFileUtil {
 
@@ -43,6 +55,56 @@ public class MyFileUtil {
     out.close();
   }
 
+  /**
+   * 流式写入文件，写入的同时更新摘要，避免把整个文件读入内存后再读一遍计算校验值。 先写临时文件再改名，失败时不会留下不完整的文件。
+   *
+   * @param in 输入流，由调用方关闭
+   * @param filePath 目录
+   * @param fileName 文件名
+   * @param digests 需要同时计算的摘要
+   * @return 写入的字节数
+   */
+  public static long uploadFile(InputStream in, String filePath, String fileName,
+      MessageDigest... digests) throws IOException {
+    Path dir = Paths.get(safePath(filePath));
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, fileName, ".part");
+    long size = 0;
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          for (MessageDigest digest : digests)
+            digest.update(buffer, 0, n);
+          out.write(buffer, 0, n);
+          size += n;
+        }
+      }
+      Files.move(tmp, dir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    return size;
+  }
+
+  /**
+   * 读一遍文件计算摘要
+   *
+   * @param filePath 文件路径
+   * @param digests 需要计算的摘要
+   */
+  public static void digestFile(String filePath, MessageDigest... digests) throws IOException {
+    try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        for (MessageDigest digest : digests)
+          digest.update(buffer, 0, n);
+      }
+    }
+  }
+
   public static void deleteFile(String filePath) throws IOException {
     String safeFilePath = safePath(filePath);
     Path path = Paths.get(safeFilePath);
@@ -51,6 +113,122 @@ public class MyFileUtil {
       throw new IOException("Failed to delete file.");
   }
 
+  /**
+   * 以附件形式发送文件，支持单段Range断点续传和ETag。Tomcat支持sendfile时由容器零拷贝发送，
+   * 否则用FileChannel.transferTo分块写出，不把整个文件读入内存。
+   *
+   * @param path 文件路径
+   * @param downloadName 下载文件名
+   * @param request 请求
+   * @param response 响应，文件不存在时为404
+   * @throws IOException 写出失败，通常是客户端中断下载
+   */
+  public static void sendFile(Path path, String downloadName, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    long length = Files.size(path);
+    // 上传的文件内容不会被修改，长度加修改时间足以区分版本
+    String etag = "\"" + Long.toHexString(length) + "-"
+        + Long.toHexString(Files.getLastModifiedTime(path).toMillis()) + "\"";
+    response.setHeader("ETag", etag);
+    response.setHeader("Accept-Ranges", "bytes");
+    if (matches(request.getHeader("If-None-Match"), etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    long start = 0;
+    long end = length - 1;
+    String range = request.getHeader("Range");
+    String ifRange = request.getHeader("If-Range");
+    if (range != null && (ifRange == null || ifRange.equals(etag))) {
+      long[] bounds = parseRange(range, length);
+      if (bounds != null && bounds.length == 0) {
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.setHeader("Content-Range", "bytes */" + length);
+        return;
+      }
+      if (bounds != null) {
+        start = bounds[0];
+        end = bounds[1];
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+      }
+    }
+    response.setContentType("application/octet-stream");
+    response.setHeader("Content-Disposition",
+        "attachment; filename=" + URLEncoder.encode(downloadName, StandardCharsets.UTF_8));
+    response.setContentLengthLong(end - start + 1);
+    if (length == 0 || "HEAD".equals(request.getMethod()))
+      return;
+    if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+      request.setAttribute("org.apache.tomcat.sendfile.filename", path.toAbsolutePath().toString());
+      request.setAttribute("org.apache.tomcat.sendfile.start", start);
+      request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+      long position = start;
+      while (position <= end) {
+        long sent = channel.transferTo(position, end + 1 - position, out);
+        if (sent <= 0)
+          break;
+        position += sent;
+      }
+    }
+  }
+
+  /**
+   * 解析单段Range
+   *
+   * @return 起止位置（含），格式不支持时返回null按完整文件发送，范围无法满足时返回空数组
+   */
+  static long[] parseRange(String range, long length) {
+    if (!range.startsWith("bytes=") || range.indexOf(',') >= 0)
+      return null;
+    String spec = range.substring(6).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0)
+      return null;
+    try {
+      long start;
+      long end;
+      if (dash == 0) {
+        // bytes=-N 表示最后N个字节
+        long suffix = Long.parseLong(spec.substring(1));
+        if (suffix <= 0 || length == 0)
+          return new long[0];
+        start = Math.max(0, length - suffix);
+        end = length - 1;
+      } else {
+        start = Long.parseLong(spec.substring(0, dash));
+        end = dash == spec.length() - 1 ? length - 1
+            : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+        if (end < start && start < length)
+          return null;
+      }
+      if (start < 0 || start >= length)
+        return new long[0];
+      return new long[] {start, end};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null)
+      return false;
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag))
+        return true;
+    }
+    return false;
+  }
+
   private static String safePath(String filePath) {
     // 确保文件路径以系统相关的路径形式匹配
     String systemPath = System.getProperty("file.separator");
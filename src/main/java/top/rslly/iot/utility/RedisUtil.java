@@ -21,10 +21,13 @@ package top.rslly.iot.utility;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +43,19 @@ public class RedisUtil {
 
   @Autowired
   private RedisTemplate<String, Object> redisTemplate;
+  // 抢占或续约在一个脚本内完成，避免读到自己持有后租约过期被他人抢占、又被自己续上
+  private static final RedisScript<Boolean> LEASE_SCRIPT = new DefaultRedisScript<>(
+      """
+          if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then
+            return 1
+          end
+          if redis.call('GET', KEYS[1]) == ARGV[1] then
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            return 1
+          end
+          return 0
+          """,
+      Boolean.class);
 
   public RedisUtil(RedisTemplate<String, Object> redisTemplate) {
     this.redisTemplate = redisTemplate;
@@ -74,6 +90,17 @@ public class RedisUtil {
     return redisTemplate.getExpire(key, TimeUnit.SECONDS);
   }
 
+  /**
+   * 根据key 获取过期时间
+   *
+   * @param key 键 不能为null
+   * @param unit 时间单位
+   * @return 剩余时间 -1代表永久有效 -2代表不存在
+   */
+  public long getExpire(String key, TimeUnit unit) {
+    return redisTemplate.getExpire(key, unit);
+  }
+
   /**
    * 判断key是否存在
    *
@@ -156,6 +183,24 @@ public class RedisUtil {
     }
   }
 
+  /**
+   * 获取或续期租约，多个节点中只有一个能持有
+   *
+   * @param key 键
+   * @param owner 持有者标识
+   * @param time 租期(秒)
+   * @return true 当前持有租约
+   */
+  public boolean lease(String key, String owner, long time) {
+    try {
+      return Boolean.TRUE
+          .equals(redisTemplate.execute(LEASE_SCRIPT, Collections.singletonList(key), owner, time));
+    } catch (Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
   /**
    * 递增
    *
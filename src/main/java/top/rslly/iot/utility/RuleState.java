@@ -0,0 +1,226 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 单个设备上单条规则的增量状态。每次上报只更新固定大小的状态，不回查历史数据。
+ * <ul>
+ * <li>threshold：值满足条件，windowSeconds大于0时需持续满足该时长</li>
+ * <li>rate：相邻两次上报的每秒变化率满足条件</li>
+ * <li>window：最近windowSeconds内的聚合值满足条件，按固定数量的时间桶滚动</li>
+ * <li>absence：超过windowSeconds未上报</li>
+ * <li>expression：条件表达式成立，windowSeconds大于0时需持续满足该时长</li>
+ * </ul>
+ * 条件由不满足变为满足时触发一次，恢复后才会再次触发。
+ */
+public class RuleState {
+  public static final String THRESHOLD = "threshold";
+  public static final String RATE = "rate";
+  public static final String WINDOW = "window";
+  public static final String ABSENCE = "absence";
+  public static final String EXPRESSION = "expression";
+  public static final Set<String> TYPES = Set.of(THRESHOLD, RATE, WINDOW, ABSENCE, EXPRESSION);
+  public static final Set<String> OPERATORS = Set.of(">", ">=", "<", "<=", "==", "!=");
+  public static final Set<String> AGGREGATES = Set.of("avg", "max", "min", "sum", "count");
+  // 滑动窗口的时间桶数量，窗口边界误差为一个桶的宽度
+  public static final int BUCKETS = 60;
+
+  private final String type;
+  private final String operator;
+  private final double threshold;
+  private final long windowMs;
+  private final String aggregate;
+
+  private boolean fired;
+  // threshold、expression：条件开始成立的时间
+  private long since = -1;
+  // rate：上一次的值和时间
+  private double last;
+  private long lastTime = -1;
+  // window：桶序号、和、次数、最大值、最小值
+  private long bucketMs;
+  private long[] slot;
+  private double[] sum;
+  private int[] count;
+  private double[] max;
+  private double[] min;
+
+  public RuleState(String type, String operator, double threshold, int windowSeconds,
+      String aggregate) {
+    this.type = type;
+    this.operator = operator;
+    this.threshold = threshold;
+    this.windowMs = windowSeconds * 1000L;
+    this.aggregate = aggregate;
+    if (WINDOW.equals(type)) {
+      bucketMs = Math.max(1, windowMs / BUCKETS);
+      slot = new long[BUCKETS];
+      sum = new double[BUCKETS];
+      count = new int[BUCKETS];
+      max = new double[BUCKETS];
+      min = new double[BUCKETS];
+      Arrays.fill(slot, -1);
+    }
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * 记录一次上报，返回本次是否触发
+   */
+  public synchronized boolean offer(double value, long now) {
+    switch (type) {
+      case THRESHOLD:
+        return threshold(value, now);
+      case RATE:
+        return rate(value, now);
+      case WINDOW:
+        return window(value, now);
+      case ABSENCE:
+        lastTime = now;
+        fired = false;
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * 记录一次expression规则的求值结果，返回本次是否触发
+   */
+  public synchronized boolean offer(boolean match, long now) {
+    return sustained(match, now);
+  }
+
+  /**
+   * absence规则由定时任务检查，超过窗口未上报时触发一次
+   */
+  public synchronized boolean absent(long now) {
+    if (!ABSENCE.equals(type) || lastTime < 0 || fired || now - lastTime < windowMs)
+      return false;
+    fired = true;
+    return true;
+  }
+
+  private boolean threshold(double value, long now) {
+    return sustained(compare(value), now);
+  }
+
+  private boolean sustained(boolean match, long now) {
+    if (!match) {
+      since = -1;
+      fired = false;
+      return false;
+    }
+    if (since < 0)
+      since = now;
+    return edge(now - since >= windowMs);
+  }
+
+  private boolean rate(double value, long now) {
+    boolean match = false;
+    if (lastTime >= 0 && now > lastTime)
+      match = compare((value - last) * 1000 / (now - lastTime));
+    last = value;
+    lastTime = now;
+    return edge(match);
+  }
+
+  private boolean window(double value, long now) {
+    long current = now / bucketMs;
+    int i = (int) (current % BUCKETS);
+    if (slot[i] != current) {
+      slot[i] = current;
+      sum[i] = 0;
+      count[i] = 0;
+      max[i] = value;
+      min[i] = value;
+    }
+    sum[i] += value;
+    count[i]++;
+    max[i] = Math.max(max[i], value);
+    min[i] = Math.min(min[i], value);
+    double s = 0;
+    double hi = Double.NEGATIVE_INFINITY;
+    double lo = Double.POSITIVE_INFINITY;
+    int n = 0;
+    for (int j = 0; j < BUCKETS; j++) {
+      if (slot[j] <= current - BUCKETS)
+        continue;
+      s += sum[j];
+      n += count[j];
+      hi = Math.max(hi, max[j]);
+      lo = Math.min(lo, min[j]);
+    }
+    double result;
+    switch (aggregate) {
+      case "max":
+        result = hi;
+        break;
+      case "min":
+        result = lo;
+        break;
+      case "sum":
+        result = s;
+        break;
+      case "count":
+        result = n;
+        break;
+      default:
+        result = s / n;
+    }
+    return edge(compare(result));
+  }
+
+  private boolean edge(boolean match) {
+    if (!match) {
+      fired = false;
+      return false;
+    }
+    if (fired)
+      return false;
+    fired = true;
+    return true;
+  }
+
+  private boolean compare(double value) {
+    switch (operator) {
+      case ">":
+        return value > threshold;
+      case ">=":
+        return value >= threshold;
+      case "<":
+        return value < threshold;
+      case "<=":
+        return value <= threshold;
+      case "==":
+        return value == threshold;
+      case "!=":
+        return value != threshold;
+      default:
+        return false;
+    }
+  }
+}
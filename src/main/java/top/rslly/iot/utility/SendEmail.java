@@ -19,20 +19,30 @@
  */
 package top.rslly.iot.utility;
 
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import javax.mail.MessagingException;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.internet.MimeMessage;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * 邮件发送。调用方只负责入队，由单独的发送线程把队列中积压的邮件按批取出，相同模板和变量只渲染一次，收件人各自不同的变量在渲染后替换， 同一批次复用一个SMTP连接发送，并按配置限速。
+ * 压测时把spring.mail指向本地的SMTP替身（如MailHog、aiosmtpd）即可。
+ */
 @Component
 @Slf4j
 public class SendEmail {
@@ -41,43 +51,130 @@ public class SendEmail {
   private JavaMailSender javaMailSender;
   @Autowired(required = false)
   private TemplateEngine templateEngine;
+  @Value("${email.queueCapacity:1000}")
+  private int queueCapacity;
+  @Value("${email.batchSize:50}")
+  private int batchSize;
+  @Value("${email.ratePerSecond:5}")
+  private double ratePerSecond;
+
+  // 收件人变量的占位符，随机生成避免与正文内容冲突
+  private static final String PLACEHOLDER =
+      "@" + UUID.randomUUID().toString().replace("-", "") + "@";
+  private BlockingQueue<Mail> queue;
+  private RateLimiter rateLimiter;
+  private Thread worker;
+  private volatile boolean running = true;
+
+  @AllArgsConstructor
+  private static class Mail {
+    private final String[] to;
+    private final String subject;
+    private final String template;
+    private final Map<String, Object> variables;
+    private final Map<String, Object> recipientVariables;
+  }
 
+  @PostConstruct
+  public void start() {
+    queue = new LinkedBlockingQueue<>(queueCapacity);
+    rateLimiter = RateLimiter.create(ratePerSecond);
+    worker = new Thread(this::dispatch, "Mail-Dispatcher");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    worker.interrupt();
+  }
 
   // status表示类型是否正常
-  @Async("taskExecutor")
   public void contextLoads(String[] to, String subject, String template, Map<String, Object> map) {
-    log.info("异步执行发送邮件");
-    // 需要借助Helper类
-    MimeMessageHelper helper = null;
-    try {
-      helper = new MimeMessageHelper(javaMailSender.createMimeMessage(), true);
-    } catch (MessagingException e) {
-      log.error("send email error{}", e.getMessage());
+    contextLoads(to, subject, template, map, null);
+  }
+
+  /**
+   * @param map 模板变量，相同模板和变量的邮件只渲染一次
+   * @param recipientVariables 每个收件人不同的变量（如用户名），不参与渲染缓存，渲染后替换到正文中
+   */
+  public void contextLoads(String[] to, String subject, String template, Map<String, Object> map,
+      Map<String, Object> recipientVariables) {
+    if (javaMailSender == null) {
+      log.error("send email error{}", "mail sender not configured");
       return;
     }
-    // 使用模板thymeleaf
-    // Context是导这个包import org.thymeleaf.context.Context;
-    Context context = new Context();
-    // 定义模板数据
-    context.setVariables(map);
-    // 获取thymeleaf的html模板
+    // 队列满时丢弃，不阻塞调用方
+    if (!queue.offer(new Mail(to, subject, template, snapshot(map), snapshot(recipientVariables))))
+      log.warn("邮件队列已满，丢弃发往{}的邮件", Arrays.toString(to));
+  }
 
-    String emailContent;
-    emailContent = templateEngine.process(template, context); // 指定模板路径
+  // 入队时复制变量，调用方之后修改map不影响待发送的邮件和渲染缓存的key；变量值可能为null，不能用Map.copyOf
+  private static Map<String, Object> snapshot(Map<String, Object> map) {
+    return map == null || map.isEmpty() ? Map.of()
+        : Collections.unmodifiableMap(new HashMap<>(map));
+  }
 
+  private static String placeholder(String name) {
+    return PLACEHOLDER + name + PLACEHOLDER;
+  }
 
-    try {
-      helper.setFrom("ruanzhen1234@126.com", "创万联");
-      helper.setTo(to);
-      // helper.setBcc("密送人");
-      helper.setSubject(subject);
-      helper.setSentDate(new Date());// 发送时间
-      // 第一个参数要发送的内容，第二个参数是不是Html格式。
-      helper.setText(emailContent, true);
-      javaMailSender.send(helper.getMimeMessage());
+  private void dispatch() {
+    List<Mail> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      queue.drainTo(batch, batchSize - 1);
+      try {
+        send(batch);
+      } catch (Exception e) {
+        log.error("send email error{}", e.getMessage());
+      } finally {
+        batch.clear();
+      }
+    }
+  }
 
-    } catch (Exception e) {
-      log.error("send email error{}", e.getMessage());
+  private void send(List<Mail> batch) {
+    Map<List<Object>, String> rendered = new HashMap<>();
+    List<MimeMessage> messages = new ArrayList<>(batch.size());
+    for (var mail : batch) {
+      String emailContent =
+          rendered.computeIfAbsent(Arrays.asList(mail.template, mail.variables), k -> {
+            // 使用模板thymeleaf
+            Context context = new Context();
+            context.setVariables(mail.variables);
+            return templateEngine.process(mail.template, context);
+          });
+      try {
+        MimeMessageHelper helper =
+            new MimeMessageHelper(javaMailSender.createMimeMessage(), true);
+        helper.setFrom("ruanzhen1234@126.com", "创万联");
+        helper.setTo(mail.to);
+        helper.setSubject(mail.subject);
+        helper.setSentDate(new Date());// 发送时间
+        // 第一个参数要发送的内容，第二个参数是不是Html格式。
+        helper.setText(emailContent, true);
+        messages.add(helper.getMimeMessage());
+      } catch (Exception e) {
+        log.error("send email error{}", e.getMessage());
+      }
+    }
+    if (messages.isEmpty())
+      return;
+    rateLimiter.acquire(messages.size());
+    try {
+      // 数组形式发送时整批共用一个连接
+      javaMailSender.send(messages.toArray(new MimeMessage[0]));
+      log.info("发送邮件{}封", messages.size());
+    } catch (MailSendException e) {
+      log.error("send email error{}/{}: {}", e.getFailedMessages().size(), messages.size(),
+          e.getMessage());
     }
   }
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * 同一个key同一时刻只执行一次加载，其余调用方等待并复用这次加载的结果
+ *
+ * @param <K> key类型
+ * @param <V> 加载结果类型
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+  public V load(K key, Supplier<V> loader) {
+    CompletableFuture<V> call = new CompletableFuture<>();
+    CompletableFuture<V> running = calls.putIfAbsent(key, call);
+    if (running != null) {
+      try {
+        return running.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+    try {
+      V value = loader.get();
+      call.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      call.completeExceptionally(e);
+      throw e;
+    } finally {
+      calls.remove(key, call);
+    }
+  }
+
+  /**
+   * 后台刷新，该key已有加载在执行时直接忽略
+   */
+  public void refresh(K key, Supplier<V> loader, Executor executor) {
+    if (calls.containsKey(key))
+      return;
+    executor.execute(() -> {
+      try {
+        load(key, loader);
+      } catch (RuntimeException ignored) {
+        // 刷新失败时保留旧值，下次访问再加载
+      }
+    });
+  }
+}
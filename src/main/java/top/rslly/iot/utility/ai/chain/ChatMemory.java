@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.ai.chain;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import top.rslly.iot.models.AgentMemoryEntity;
+import top.rslly.iot.services.agent.AgentMemoryServiceImpl;
+import top.rslly.iot.utility.Cast;
+import top.rslly.iot.utility.ai.ModelMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话记忆，"memory"+chatId 为redis list，每轮只追加新消息，由lua脚本在服务端原子完成RPUSH+LTRIM滑动窗口；
+ * 摘要单独保存在"memorySummary"+chatId。
+ */
+@Component
+@Slf4j
+public class ChatMemory {
+  public static final String MEMORY_PREFIX = "memory";
+  public static final String SUMMARY_PREFIX = "memorySummary";
+  public static final int WINDOW_SIZE = 6;
+  public static final long EXPIRE_SECONDS = 24 * 3600;
+
+  // 旧版本的key是整体序列化的字符串，遇到非list类型时先删除再追加
+  // 窗口溢出时返回裁剪前的全部消息，供摘要工具使用，否则返回空列表
+  private static final RedisScript<List> APPEND_SCRIPT = new DefaultRedisScript<>(
+      """
+          if redis.call('TYPE', KEYS[1])['ok'] ~= 'list' then
+            redis.call('DEL', KEYS[1])
+          end
+          local size = redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))
+          local window = tonumber(ARGV[1])
+          local overflow = {}
+          if size > window then
+            overflow = redis.call('LRANGE', KEYS[1], 0, -1)
+            redis.call('LTRIM', KEYS[1], -window, -1)
+          end
+          redis.call('EXPIRE', KEYS[1], tonumber(ARGV[2]))
+          return overflow
+          """,
+      List.class);
+
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+  @Autowired
+  private AgentMemoryServiceImpl agentMemoryService;
+
+  public List<ModelMessage> load(String chatId) {
+    try {
+      var memory = redisTemplate.opsForList().range(MEMORY_PREFIX + chatId, 0, -1);
+      if (memory == null)
+        return new ArrayList<>();
+      return Cast.castList(memory, ModelMessage.class);
+    } catch (Exception e) {
+      log.warn("load memory error:{}", e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  /**
+   * 原子追加本轮消息并裁剪窗口
+   *
+   * @param chatId 会话id
+   * @param messages 本轮新增的消息
+   * @return 窗口溢出时返回裁剪前的全部消息，否则为空列表
+   */
+  public List<ModelMessage> append(String chatId, ModelMessage... messages) {
+    if (messages.length == 0)
+      return Collections.emptyList();
+    Object[] args = new Object[messages.length + 2];
+    args[0] = WINDOW_SIZE;
+    args[1] = EXPIRE_SECONDS;
+    System.arraycopy(messages, 0, args, 2, messages.length);
+    try {
+      List<?> overflow =
+          redisTemplate.execute(APPEND_SCRIPT, Collections.singletonList(MEMORY_PREFIX + chatId),
+              args);
+      if (overflow == null)
+        return Collections.emptyList();
+      return Cast.castList(overflow, ModelMessage.class);
+    } catch (Exception e) {
+      log.error("append memory error:{}", e.getMessage());
+      return Collections.emptyList();
+    }
+  }
+
+  public String getSummary(String chatId) {
+    Object summary = redisTemplate.opsForValue().get(SUMMARY_PREFIX + chatId);
+    if (summary != null)
+      return summary.toString();
+    List<AgentMemoryEntity> agentMemoryEntities = agentMemoryService.findAllByChatId(chatId);
+    String currentMemory = "";
+    if (!agentMemoryEntities.isEmpty() && agentMemoryEntities.get(0).getContent() != null) {
+      currentMemory = agentMemoryEntities.get(0).getContent();
+    }
+    redisTemplate.opsForValue().set(SUMMARY_PREFIX + chatId, currentMemory, EXPIRE_SECONDS,
+        TimeUnit.SECONDS);
+    return currentMemory;
+  }
+
+  public void setSummary(String chatId, String summary) {
+    redisTemplate.opsForValue().set(SUMMARY_PREFIX + chatId, summary, EXPIRE_SECONDS,
+        TimeUnit.SECONDS);
+  }
+}
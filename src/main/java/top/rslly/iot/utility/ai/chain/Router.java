@@ -26,7 +26,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import top.rslly.iot.services.wechat.WxUserServiceImpl;
 import top.rslly.iot.utility.Cast;
-import top.rslly.iot.utility.RedisUtil;
 import top.rslly.iot.utility.ai.ModelMessage;
 import top.rslly.iot.utility.ai.mcp.McpAgent;
 import top.rslly.iot.utility.ai.toolAgent.Agent;
@@ -51,7 +50,7 @@ public class Router {
   @Autowired
   private WxBoundProductTool wxBoundProductTool;
   @Autowired
-  private RedisUtil redisUtil;
+  private ChatMemory chatMemory;
   @Autowired
   private Agent agent;
   @Autowired
@@ -83,16 +82,7 @@ public class Router {
     queueMap.put(chatId, queue);
     if (microappid.length > 0)
       globalMessage.put("microappid", microappid[0]);
-    var memory_cache = redisUtil.get("memory" + chatId);
-    if (memory_cache != null)
-      try {
-        memory = Cast.castList(memory_cache, ModelMessage.class);
-      } catch (Exception e) {
-        e.printStackTrace();
-        memory = new ArrayList<>();
-      }
-    else
-      memory = new ArrayList<>();
+    memory = chatMemory.load(chatId);
     globalMessage.put("memory", memory);
     var resultMap = classifierTool.run(content, globalMessage);
     String args;
@@ -163,15 +153,12 @@ public class Router {
       toolResult = answer;
     ModelMessage userContent = new ModelMessage(ChatMessageRole.USER.value(), content);
     ModelMessage chatMessage = new ModelMessage(ChatMessageRole.ASSISTANT.value(), toolResult);
-    memory.add(userContent);
-    memory.add(chatMessage);
-    // System.out.println(memory.size());
-    // slide memory window
-    if (memory.size() > 6) {
+    // slide memory window, only the new messages are sent to redis
+    List<ModelMessage> overflow = chatMemory.append(chatId, userContent, chatMessage);
+    if (!overflow.isEmpty()) {
+      globalMessage.put("memory", overflow);
       memoryTool.run(content, globalMessage);
-      memory.subList(0, memory.size() - 6).clear();
     }
-    redisUtil.set("memory" + chatId, memory, 24 * 3600);
     return answer;
   }
 
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.ai.mcp;
+
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按JSON-RPC id登记未完成的tools/call，收到结果时直接唤醒等待的智能体，会话关闭时统一取消。
+ */
+@Component
+public class McpPendingCalls {
+  // id 1 为initialize和tools/list使用
+  private final AtomicInteger idGenerator = new AtomicInteger(1);
+  private final Map<Integer, PendingCall> pending = new ConcurrentHashMap<>();
+
+  public int nextId() {
+    return idGenerator.updateAndGet(i -> i == Integer.MAX_VALUE ? 2 : i + 1);
+  }
+
+  public CompletableFuture<String> register(int id, String serverName, String chatId) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    pending.put(id, new PendingCall(serverName + chatId, future));
+    future.whenComplete((result, e) -> pending.remove(id));
+    return future;
+  }
+
+  /**
+   * 完成对应id的调用，回复未携带id时交给该会话最早的调用；id属于其他会话时忽略
+   */
+  public boolean complete(Integer id, String serverName, String chatId, String result) {
+    String sessionKey = serverName + chatId;
+    PendingCall call = id == null ? oldest(sessionKey) : pending.get(id);
+    return call != null && call.sessionKey.equals(sessionKey) && call.future.complete(result);
+  }
+
+  public void cancelAll(String serverName, String chatId) {
+    String sessionKey = serverName + chatId;
+    for (PendingCall call : pending.values()) {
+      if (call.sessionKey.equals(sessionKey))
+        call.future.cancel(false);
+    }
+  }
+
+  private PendingCall oldest(String sessionKey) {
+    PendingCall oldest = null;
+    int oldestId = Integer.MAX_VALUE;
+    for (var entry : pending.entrySet()) {
+      if (entry.getValue().sessionKey.equals(sessionKey) && entry.getKey() < oldestId) {
+        oldest = entry.getValue();
+        oldestId = entry.getKey();
+      }
+    }
+    return oldest;
+  }
+
+  @AllArgsConstructor
+  private static class PendingCall {
+    private final String sessionKey;
+    private final CompletableFuture<String> future;
+  }
+}
@@ -39,26 +39,21 @@ import java.util.Map;
 public class McpProtocolDeal {
   @Autowired
   private RedisUtil redisUtil;
+  @Autowired
+  private McpPendingCalls mcpPendingCalls;
 
-  public void dealMcp(JSONObject resultObject, String serverName, String chatId, Session session,
-      boolean endpoint) throws IOException {
+  public void dealMcp(JSONObject resultObject, Integer id, String serverName, String chatId,
+      Session session, boolean endpoint) throws IOException {
     if (resultObject.containsKey("content")) {
       if (resultObject.containsKey("isError")) {
         if (resultObject.getBoolean("isError")) {
-          redisUtil.set(serverName + chatId + "toolResult", "call tool error");
+          mcpPendingCalls.complete(id, serverName, chatId, "call tool error");
         } else {
           log.info("result{}", resultObject.getString("content"));
-          redisUtil.set(serverName + chatId + "toolResult",
-              resultObject.getString("content"));
+          mcpPendingCalls.complete(id, serverName, chatId, resultObject.getString("content"));
         }
       }
     }
-    if (resultObject.containsKey("tools")) {
-      if (resultObject.containsKey("error")) {
-        redisUtil.set(serverName + chatId + "toolResult", "call tool error");
-        log.error("tool调用错误:{}", resultObject.getJSONObject("error").getString("message"));
-      }
-    }
     if (resultObject.containsKey("tools")) {
       String tools = resultObject.getString("tools");
       String nextCursor = resultObject.getString("nextCursor");
@@ -85,10 +80,14 @@ public class McpProtocolDeal {
     }
   }
 
+  public void dealMcpError(JSONObject errorObject, Integer id, String serverName, String chatId) {
+    log.error("tool调用错误:{}", errorObject.getString("message"));
+    if (id != null && id > 1)
+      mcpPendingCalls.complete(id, serverName, chatId, "call tool error");
+  }
+
   public void destroyMcp(String serverName, String chatId) {
     redisUtil.del(serverName + chatId);
-    if (redisUtil.hasKey(serverName + chatId + "toolResult")) {
-      redisUtil.del(serverName + chatId + "toolResult");
-    }
+    mcpPendingCalls.cancelAll(serverName, chatId);
   }
 }
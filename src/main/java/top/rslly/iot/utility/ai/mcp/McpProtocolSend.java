@@ -94,8 +94,10 @@ public class McpProtocolSend {
     }
   }
 
-  public static String callTool(String toolName, Map<String, Object> arguments, boolean endpoint) {
+  public static String callTool(int id, String toolName, Map<String, Object> arguments,
+      boolean endpoint) {
     ToolCall toolCall = new ToolCall();
+    toolCall.setId(id);
     toolCall.params.put("name", toolName);
     toolCall.params.put("arguments", arguments);
     JSONObject responseObject = new JSONObject();
@@ -29,14 +29,21 @@ import top.rslly.iot.utility.RedisUtil;
 import javax.websocket.Session;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Component
 @Slf4j
 public class McpWebsocket {
   public static final String DEVICE_SERVER_NAME = "xiaozhi_device";
   public static final String ENDPOINT_SERVER_NAME = "xiaozhi_tool";
+  public static final long TOOL_CALL_TIMEOUT_MS = 7000;
   @Autowired
   private RedisUtil redisUtil;
+  @Autowired
+  private McpPendingCalls mcpPendingCalls;
 
   public String combineToolDescription(String serverName, String chatId) {
     List<Map<String, Object>> toolDescriptionMap =
@@ -77,22 +84,19 @@ public class McpWebsocket {
       Map<String, Object> params = JSON.parseObject(
           jsonArguments,
           new TypeReference<>() {});
-      String jsonStr = McpProtocolSend.callTool(toolName, params, endpoint);
-      session.getBasicRemote().sendText(jsonStr);
-      for (int i = 0; i < 70; i++) {
-        try {
-          if (redisUtil.hasKey(serverName + chatId + "toolResult")) {
-            String result = redisUtil.get(serverName + chatId + "toolResult").toString();
-            redisUtil.del(serverName + chatId + "toolResult");
-            return result;
-          }
-          Thread.sleep(100);
-        } catch (Exception e) {
-          log.error(e.getMessage());
-          return "calling this tool error";
-        }
+      int id = mcpPendingCalls.nextId();
+      String jsonStr = McpProtocolSend.callTool(id, toolName, params, endpoint);
+      CompletableFuture<String> result = mcpPendingCalls.register(id, serverName, chatId);
+      try {
+        session.getBasicRemote().sendText(jsonStr);
+        return result.get(TOOL_CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        return "calling this tool timeout,please try again";
+      } catch (CancellationException e) {
+        return "mcp session closed,calling this tool error";
+      } finally {
+        result.cancel(false);
       }
-      return "calling this tool timeout,please try again";
     } catch (Exception e) {
       e.printStackTrace();
       return "calling this tool error";
@@ -20,6 +20,7 @@
 package top.rslly.iot.utility.ai.mcp;
 
 import com.alibaba.fastjson.JSON;
+import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -64,7 +65,8 @@ public class McpWebsocketEndpoint {
         return;
       }
     }
-    if (JwtTokenUtil.checkJWT(token) == null) {
+    Claims claims = JwtTokenUtil.checkJWT(token);
+    if (claims == null) {
       try {
         session.getBasicRemote().sendText("token无效");
         session.close();
@@ -74,7 +76,7 @@ public class McpWebsocketEndpoint {
         return;
       }
     }
-    if (JwtTokenUtil.isExpiration(token)) {
+    if (claims.getExpiration().before(new Date())) {
       try {
         session.getBasicRemote().sendText("token已过期");
         session.close();
@@ -84,7 +86,7 @@ public class McpWebsocketEndpoint {
         return;
       }
     }
-    String username = JwtTokenUtil.getUsername(token);
+    String username = claims.get("username", String.class);
     if (username == null) {
       try {
         session.getBasicRemote().sendText("用户不存在");
@@ -161,8 +163,11 @@ public class McpWebsocketEndpoint {
               """);
           clients.get(username).getBasicRemote().sendText(McpProtocolSend.sendToolList("", true));
         }
-        mcpProtocolDeal.dealMcp(resultJson, McpWebsocket.ENDPOINT_SERVER_NAME, username,
-            clients.get(username), true);
+        mcpProtocolDeal.dealMcp(resultJson, payloadObject.getInteger("id"),
+            McpWebsocket.ENDPOINT_SERVER_NAME, username, clients.get(username), true);
+      } else if (payloadObject.containsKey("error")) {
+        mcpProtocolDeal.dealMcpError(payloadObject.getJSONObject("error"),
+            payloadObject.getInteger("id"), McpWebsocket.ENDPOINT_SERVER_NAME, username);
       }
     } catch (Exception e) {
       log.error("解析失败{}", e.getMessage());
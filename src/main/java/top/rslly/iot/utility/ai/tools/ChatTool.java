@@ -24,14 +24,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import top.rslly.iot.models.AgentMemoryEntity;
 import top.rslly.iot.models.ProductRoleEntity;
-import top.rslly.iot.services.agent.AgentMemoryServiceImpl;
 import top.rslly.iot.services.agent.KnowledgeChatServiceImpl;
 import top.rslly.iot.services.agent.ProductRoleServiceImpl;
 import top.rslly.iot.utility.HttpRequestUtils;
 import top.rslly.iot.utility.ai.ModelMessage;
 import top.rslly.iot.utility.ai.ModelMessageRole;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
 import top.rslly.iot.utility.ai.llm.LLM;
 import top.rslly.iot.utility.ai.llm.LLMFactory;
 import top.rslly.iot.utility.ai.prompts.ChatToolPrompt;
@@ -49,7 +48,7 @@ public class ChatTool {
   @Autowired
   private ChatToolPrompt chatToolPrompt;
   @Autowired
-  private AgentMemoryServiceImpl agentMemoryService;
+  private ChatMemory chatMemory;
   @Autowired
   private HttpRequestUtils httpRequestUtils;
   @Autowired
@@ -83,11 +82,7 @@ public class ChatTool {
     lockMap.putIfAbsent(chatId, new ReentrantLock());
     conditionMap.putIfAbsent(chatId, lockMap.get(chatId).newCondition());
 
-    List<AgentMemoryEntity> agentMemoryEntities = agentMemoryService.findAllByChatId(chatId);
-    String currentMemory = "";
-    if (!agentMemoryEntities.isEmpty()) {
-      currentMemory = agentMemoryEntities.get(0).getContent();
-    }
+    String currentMemory = chatMemory.getSummary(chatId);
     List<ModelMessage> messages = new ArrayList<>();
     // 使用 Optional 进行类型安全的转换
     List<ModelMessage> memory =
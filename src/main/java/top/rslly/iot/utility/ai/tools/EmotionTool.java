@@ -25,11 +25,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import top.rslly.iot.models.AgentMemoryEntity;
-import top.rslly.iot.services.agent.AgentMemoryServiceImpl;
 import top.rslly.iot.utility.EmotionManager;
 import top.rslly.iot.utility.ai.ModelMessage;
 import top.rslly.iot.utility.ai.ModelMessageRole;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
 import top.rslly.iot.utility.ai.llm.LLM;
 import top.rslly.iot.utility.ai.llm.LLMFactory;
 import top.rslly.iot.utility.ai.prompts.EmotionToolPrompt;
@@ -41,7 +40,7 @@ import java.util.*;
 @Slf4j
 public class EmotionTool implements BaseTool<Map<String, String>> {
   @Autowired
-  private AgentMemoryServiceImpl agentMemoryService;
+  private ChatMemory chatMemory;
   @Autowired
   private EmotionToolPrompt emotionToolPrompt;
   @Value("${ai.emotionTool-llm}")
@@ -62,11 +61,7 @@ public class EmotionTool implements BaseTool<Map<String, String>> {
     LLM llm = LLMFactory.getLLM(llmName);
     Map<String, String> responseMap = new HashMap<>();
     String chatId = (String) globalMessage.get("chatId");
-    List<AgentMemoryEntity> agentMemoryEntities = agentMemoryService.findAllByChatId(chatId);
-    String currentMemory = "";
-    if (!agentMemoryEntities.isEmpty()) {
-      currentMemory = agentMemoryEntities.get(0).getContent();
-    }
+    String currentMemory = chatMemory.getSummary(chatId);
     List<ModelMessage> messages = new ArrayList<>();
     // 使用 Optional 进行类型安全的转换
     List<ModelMessage> memory =
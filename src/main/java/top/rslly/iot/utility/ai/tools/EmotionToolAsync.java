@@ -23,11 +23,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
-import top.rslly.iot.utility.Cast;
-import top.rslly.iot.utility.RedisUtil;
 import top.rslly.iot.utility.ai.ModelMessage;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -37,21 +35,11 @@ public class EmotionToolAsync {
   @Autowired
   private EmotionTool emotionTool;
   @Autowired
-  private RedisUtil redisUtil;
+  private ChatMemory chatMemory;
 
   @Async("taskExecutor")
   public Future<Map<String, String>> run(String question, Map<String, Object> globalMessage) {
-    List<ModelMessage> memory;
-    var memory_cache = redisUtil.get("memory" + globalMessage.get("chatId"));
-    if (memory_cache != null)
-      try {
-        memory = Cast.castList(memory_cache, ModelMessage.class);
-      } catch (Exception e) {
-        e.printStackTrace();
-        memory = new ArrayList<>();
-      }
-    else
-      memory = new ArrayList<>();
+    List<ModelMessage> memory = chatMemory.load((String) globalMessage.get("chatId"));
     globalMessage.put("memory", memory);
     return new AsyncResult<>(emotionTool.run(question, globalMessage));
   }
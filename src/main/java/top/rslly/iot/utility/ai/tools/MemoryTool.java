@@ -25,11 +25,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
-import top.rslly.iot.models.AgentMemoryEntity;
 import top.rslly.iot.param.request.AgentMemory;
 import top.rslly.iot.services.agent.AgentMemoryServiceImpl;
 import top.rslly.iot.utility.ai.ModelMessage;
 import top.rslly.iot.utility.ai.ModelMessageRole;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
 import top.rslly.iot.utility.ai.llm.LLM;
 import top.rslly.iot.utility.ai.llm.LLMFactory;
 import top.rslly.iot.utility.ai.prompts.MemoryToolPrompt;
@@ -44,6 +44,8 @@ public class MemoryTool {
   private MemoryToolPrompt memoryToolPrompt;
   @Autowired
   private AgentMemoryServiceImpl agentMemoryService;
+  @Autowired
+  private ChatMemory chatMemory;
   @Value("${ai.memoryTool-llm}")
   private String llmName;
   private String name = "memoryTool";
@@ -57,11 +59,7 @@ public class MemoryTool {
     LLM llm = LLMFactory.getLLM(llmName);
     List<ModelMessage> messages = new ArrayList<>();
     String chatId = (String) globalMessage.get("chatId");
-    List<AgentMemoryEntity> agentMemoryEntities = agentMemoryService.findAllByChatId(chatId);
-    String currentMemory = "";
-    if (!agentMemoryEntities.isEmpty()) {
-      currentMemory = agentMemoryEntities.get(0).getContent();
-    }
+    String currentMemory = chatMemory.getSummary(chatId);
     // 使用 Optional 进行类型安全的转换
     List<ModelMessage> memory =
         Optional.ofNullable((List<ModelMessage>) globalMessage.get("memory"))
@@ -86,6 +84,7 @@ public class MemoryTool {
       answer = answer.substring(0, 1000);
     AgentMemory agentMemory = new AgentMemory(chatId, answer);
     agentMemoryService.insertAndUpdate(agentMemory);
+    chatMemory.setSummary(chatId, answer);
     // log.info("chatTool: " + messages);
   }
 }
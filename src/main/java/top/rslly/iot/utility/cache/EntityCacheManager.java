@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import top.rslly.iot.utility.properties.EntityCacheProperty;
+
+import java.util.*;
+
+/**
+ * 物模型相关只读为主的表的查询结果缓存。区域固定，每个区域按配置的guava spec限制大小和过期时间，并记录命中统计；写操作在事务提交后清空整个区域，并通过redis通知其它节点清空。
+ */
+@Slf4j
+public class EntityCacheManager extends AbstractTransactionSupportingCacheManager
+    implements MessageListener {
+  public static final String EVICT_CHANNEL = "entityCacheEvict";
+
+  public static final String PRODUCT = "product";
+  public static final String PRODUCT_MODEL = "productModel";
+  public static final String PRODUCT_DATA = "productData";
+  public static final String PRODUCT_FUNCTION = "productFunction";
+  public static final String PRODUCT_EVENT = "productEvent";
+  public static final String PRODUCT_ROLE = "productRole";
+  public static final String PRODUCT_ROUTER_SET = "productRouterSet";
+  public static final String PRODUCT_RULE = "productRule";
+  // 由productData和productFunction编译出的控制参数结构
+  public static final String CONTROL_SCHEMA = "controlSchema";
+  public static final List<String> REGIONS = List.of(PRODUCT, PRODUCT_MODEL, PRODUCT_DATA,
+      PRODUCT_FUNCTION, PRODUCT_EVENT, PRODUCT_ROLE, PRODUCT_ROUTER_SET, PRODUCT_RULE,
+      CONTROL_SCHEMA);
+
+  private final EntityCacheProperty property;
+  private final RedisTemplate<String, Object> redisTemplate;
+  private final Map<String, GuavaCache> regions = new LinkedHashMap<>();
+
+  public EntityCacheManager(EntityCacheProperty property,
+      RedisTemplate<String, Object> redisTemplate) {
+    this.property = property;
+    this.redisTemplate = redisTemplate;
+    setTransactionAware(true);
+  }
+
+  @Override
+  protected Collection<? extends Cache> loadCaches() {
+    for (String name : REGIONS) {
+      String spec = property.getRegions().getOrDefault(name, property.getSpec());
+      regions.put(name, new GuavaCache(name, CacheBuilder.from(spec).recordStats().build(),
+          this::publishClear));
+    }
+    return regions.values();
+  }
+
+  private void publishClear(String name) {
+    try {
+      redisTemplate.convertAndSend(EVICT_CHANNEL, name);
+    } catch (Exception e) {
+      log.error("entity cache evict publish error:{}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+    if (body == null)
+      return;
+    GuavaCache cache = regions.get(body.toString());
+    if (cache != null)
+      cache.clearLocal();
+  }
+
+  /**
+   * 各区域的命中统计，miss次数即实际落到数据库的查询次数
+   */
+  public Map<String, Map<String, Object>> stats() {
+    Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+    regions.forEach((name, cache) -> {
+      CacheStats stats = cache.getNativeCache().stats();
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("size", cache.getNativeCache().size());
+      map.put("requestCount", stats.requestCount());
+      map.put("hitCount", stats.hitCount());
+      map.put("missCount", stats.missCount());
+      map.put("hitRate", stats.hitRate());
+      map.put("evictionCount", stats.evictionCount());
+      result.put(name, map);
+    });
+    return result;
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 基于guava的有界本地缓存，clear时通知其它节点
+ */
+public class GuavaCache extends AbstractValueAdaptingCache {
+  private final String name;
+  private final Cache<Object, Object> cache;
+  private final Consumer<String> onClear;
+
+  public GuavaCache(String name, Cache<Object, Object> cache, Consumer<String> onClear) {
+    super(false);
+    this.name = name;
+    this.cache = cache;
+    this.onClear = onClear;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Cache<Object, Object> getNativeCache() {
+    return cache;
+  }
+
+  // 返回列表的副本，调用方修改结果不会污染缓存
+  @Override
+  protected Object fromStoreValue(Object storeValue) {
+    Object value = super.fromStoreValue(storeValue);
+    if (value instanceof List)
+      return new ArrayList<>((List<?>) value);
+    return value;
+  }
+
+  @Override
+  protected Object lookup(Object key) {
+    return cache.getIfPresent(key);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    try {
+      return (T) fromStoreValue(cache.get(key, () -> toStoreValue(valueLoader.call())));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new ValueRetrievalException(key, valueLoader, e.getCause());
+    }
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    if (value != null)
+      cache.put(key, toStoreValue(value));
+  }
+
+  @Override
+  public void evict(Object key) {
+    cache.invalidate(key);
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+    onClear.accept(name);
+  }
+
+  void clearLocal() {
+    cache.invalidateAll();
+  }
+}
@@ -27,7 +27,7 @@ public class BlockedScriptInfo {
   private final AtomicInteger counter;
   private long expirationTime;
 
-  BlockedScriptInfo(int maxScriptBlockDuration) {
+  public BlockedScriptInfo(int maxScriptBlockDuration) {
     this.maxScriptBlockDurationMs = TimeUnit.SECONDS.toMillis(maxScriptBlockDuration);
     this.counter = new AtomicInteger(0);
   }
@@ -0,0 +1,318 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.script.expr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 属性条件表达式，例如 {@code temp > 30 && hum < 20}。编译时解析为带类型检查的求值树，变量按出现顺序编号， 求值时只读取调用方复用的double数组，不创建对象。
+ * <p>
+ * 支持数值字面量、true/false、属性名、括号、{@code + - * / %}、比较运算{@code > >= < <= == !=}和逻辑运算
+ * {@code ! && ||}。缺失或非数值的属性为NaN，与NaN的任何比较均不成立。
+ */
+public final class Expression {
+  private final String source;
+  private final List<String> variables;
+  private final Cond root;
+
+  private interface Num {
+    double eval(double[] v);
+  }
+
+  private interface Cond {
+    boolean test(double[] v);
+  }
+
+  private Expression(String source, List<String> variables, Cond root) {
+    this.source = source;
+    this.variables = variables;
+    this.root = root;
+  }
+
+  /**
+   * 编译表达式
+   *
+   * @param source 表达式文本
+   * @return 编译结果，线程安全可共享
+   * @throws IllegalArgumentException 语法或类型错误
+   */
+  public static Expression compile(String source) {
+    Parser parser = new Parser(source);
+    Cond root = parser.cond(parser.or());
+    parser.end();
+    return new Expression(source, List.copyOf(parser.variables), root);
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * 表达式引用的属性名，下标即求值数组中的位置
+   */
+  public List<String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * 按变量顺序把上报值写入slots，缺失的变量写入NaN
+   *
+   * @return 是否所有变量都有值
+   */
+  public boolean bind(Map<?, ?> values, double[] slots) {
+    boolean all = true;
+    for (int i = 0; i < variables.size(); i++) {
+      Object raw = values.get(variables.get(i));
+      if (raw == null) {
+        slots[i] = Double.NaN;
+        all = false;
+        continue;
+      }
+      slots[i] = number(raw.toString());
+    }
+    return all;
+  }
+
+  /**
+   * 是否至少有一个变量出现在values中
+   */
+  public boolean references(Map<?, ?> values) {
+    for (String variable : variables) {
+      if (values.containsKey(variable))
+        return true;
+    }
+    return false;
+  }
+
+  public boolean test(double[] slots) {
+    return root.test(slots);
+  }
+
+  public static double number(String raw) {
+    if ("true".equals(raw))
+      return 1;
+    if ("false".equals(raw))
+      return 0;
+    try {
+      return Double.parseDouble(raw);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  private static final class Parser {
+    private final String s;
+    private int pos;
+    private final List<String> variables = new ArrayList<>();
+
+    private Parser(String s) {
+      this.s = s;
+    }
+
+    private Object or() {
+      Object left = and();
+      while (eat("||")) {
+        Cond a = cond(left);
+        Cond b = cond(and());
+        left = (Cond) v -> a.test(v) || b.test(v);
+      }
+      return left;
+    }
+
+    private Object and() {
+      Object left = not();
+      while (eat("&&")) {
+        Cond a = cond(left);
+        Cond b = cond(not());
+        left = (Cond) v -> a.test(v) && b.test(v);
+      }
+      return left;
+    }
+
+    private Object not() {
+      skip();
+      if (pos < s.length() && s.charAt(pos) == '!' && !s.startsWith("!=", pos)) {
+        pos++;
+        Cond a = cond(not());
+        return (Cond) v -> !a.test(v);
+      }
+      return comparison();
+    }
+
+    private Object comparison() {
+      Object left = sum();
+      String op = null;
+      for (String candidate : new String[] {">=", "<=", "==", "!=", ">", "<"}) {
+        if (eat(candidate)) {
+          op = candidate;
+          break;
+        }
+      }
+      if (op == null)
+        return left;
+      Num a = num(left);
+      Num b = num(sum());
+      switch (op) {
+        case ">=":
+          return (Cond) v -> a.eval(v) >= b.eval(v);
+        case "<=":
+          return (Cond) v -> a.eval(v) <= b.eval(v);
+        case "==":
+          return (Cond) v -> a.eval(v) == b.eval(v);
+        case "!=":
+          return (Cond) v -> {
+            double x = a.eval(v);
+            double y = b.eval(v);
+            return x != y && !Double.isNaN(x) && !Double.isNaN(y);
+          };
+        case ">":
+          return (Cond) v -> a.eval(v) > b.eval(v);
+        default:
+          return (Cond) v -> a.eval(v) < b.eval(v);
+      }
+    }
+
+    private Object sum() {
+      Object left = term();
+      while (true) {
+        if (eat("+")) {
+          Num a = num(left);
+          Num b = num(term());
+          left = (Num) v -> a.eval(v) + b.eval(v);
+        } else if (eat("-")) {
+          Num a = num(left);
+          Num b = num(term());
+          left = (Num) v -> a.eval(v) - b.eval(v);
+        } else
+          return left;
+      }
+    }
+
+    private Object term() {
+      Object left = unary();
+      while (true) {
+        if (eat("*")) {
+          Num a = num(left);
+          Num b = num(unary());
+          left = (Num) v -> a.eval(v) * b.eval(v);
+        } else if (eat("/")) {
+          Num a = num(left);
+          Num b = num(unary());
+          left = (Num) v -> a.eval(v) / b.eval(v);
+        } else if (eat("%")) {
+          Num a = num(left);
+          Num b = num(unary());
+          left = (Num) v -> a.eval(v) % b.eval(v);
+        } else
+          return left;
+      }
+    }
+
+    private Object unary() {
+      if (eat("-")) {
+        Num a = num(unary());
+        return (Num) v -> -a.eval(v);
+      }
+      return primary();
+    }
+
+    private Object primary() {
+      skip();
+      if (pos >= s.length())
+        throw error("表达式不完整");
+      char c = s.charAt(pos);
+      if (c == '(') {
+        pos++;
+        Object inner = or();
+        if (!eat(")"))
+          throw error("缺少右括号");
+        return inner;
+      }
+      int start = pos;
+      if (Character.isDigit(c) || c == '.') {
+        while (pos < s.length()
+            && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.'))
+          pos++;
+        double value;
+        try {
+          value = Double.parseDouble(s.substring(start, pos));
+        } catch (NumberFormatException e) {
+          throw error("数值格式错误");
+        }
+        return (Num) v -> value;
+      }
+      if (Character.isLetter(c) || c == '_') {
+        while (pos < s.length()
+            && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_'))
+          pos++;
+        String name = s.substring(start, pos);
+        if (name.equals("true"))
+          return (Cond) v -> true;
+        if (name.equals("false"))
+          return (Cond) v -> false;
+        int index = variables.indexOf(name);
+        if (index < 0) {
+          index = variables.size();
+          variables.add(name);
+        }
+        int slot = index;
+        return (Num) v -> v[slot];
+      }
+      throw error("无法识别的字符'" + c + "'");
+    }
+
+    private Cond cond(Object node) {
+      if (node instanceof Cond)
+        return (Cond) node;
+      throw error("此处需要条件");
+    }
+
+    private Num num(Object node) {
+      if (node instanceof Num)
+        return (Num) node;
+      throw error("此处需要数值");
+    }
+
+    private void end() {
+      skip();
+      if (pos < s.length())
+        throw error("多余的内容");
+    }
+
+    private boolean eat(String token) {
+      skip();
+      if (!s.startsWith(token, pos))
+        return false;
+      pos += token.length();
+      return true;
+    }
+
+    private void skip() {
+      while (pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(message + "，位置" + pos + "：" + s);
+    }
+  }
+}
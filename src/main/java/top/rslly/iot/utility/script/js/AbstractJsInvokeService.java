@@ -19,12 +19,32 @@
  */
 package top.rslly.iot.utility.script.js;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.extern.slf4j.Slf4j;
+import top.rslly.iot.utility.script.BlockedScriptInfo;
+import top.rslly.iot.utility.script.ControlScriptFactory;
+import top.rslly.iot.utility.script.IcScriptException;
+import top.rslly.iot.utility.script.RuleNodeScriptFactory;
 import top.rslly.iot.utility.script.ScriptInvokeService;
+import top.rslly.iot.utility.script.ScriptType;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 脚本按内容哈希缓存，相同内容只编译一次；执行超时（错误码TIMEOUT）的脚本计入黑名单，达到次数后在黑名单有效期内直接拒绝执行。
+ */
+@Slf4j
+public abstract class AbstractJsInvokeService implements ScriptInvokeService {
+  protected final Map<UUID, JsScriptInfo> scriptInfoMap = new ConcurrentHashMap<>();
+  private final Map<UUID, BlockedScriptInfo> blockedScripts = new ConcurrentHashMap<>();
 
-public abstract class AbstractJsInvokeService {
   public abstract ListenableFuture<UUID> doEval(UUID scriptId, JsScriptInfo scriptInfo,
       String jsScript);
 
@@ -33,4 +53,100 @@ public abstract class AbstractJsInvokeService {
 
   public abstract void doRelease(UUID scriptId, JsScriptInfo scriptInfo) throws Exception;
 
+  public abstract int getMaxBlackListDurationSec();
+
+  public abstract int getMaxErrors();
+
+  public static String functionName(UUID scriptId) {
+    return "invokeInternal_" + scriptId.toString().replace('-', '_');
+  }
+
+  @Override
+  public ListenableFuture<UUID> eval(ScriptType scriptType, String scriptBody,
+      String... argNames) {
+    String key = scriptType.name() + "\n" + String.join(",", argNames) + "\n" + scriptBody;
+    UUID scriptId = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    String functionName = functionName(scriptId);
+    String jsScript = scriptType == ScriptType.Control_Script
+        ? ControlScriptFactory.generateControlNodeScript(functionName, scriptBody, argNames)
+        : RuleNodeScriptFactory.generateRuleNodeScript(functionName, scriptBody, argNames);
+    SettableFuture<UUID> pending = SettableFuture.create();
+    JsScriptInfo scriptInfo = scriptInfoMap.compute(scriptId, (k, info) -> {
+      if (info == null) {
+        info = new JsScriptInfo(functionName);
+        info.setCompiled(pending);
+      }
+      info.setReferences(info.getReferences() + 1);
+      return info;
+    });
+    if (scriptInfo.getCompiled() != pending)
+      return scriptInfo.getCompiled();
+    pending.setFuture(doEval(scriptId, scriptInfo, jsScript));
+    Futures.addCallback(pending, new FutureCallback<>() {
+      @Override
+      public void onSuccess(UUID result) {}
+
+      @Override
+      public void onFailure(Throwable t) {
+        scriptInfoMap.remove(scriptId, scriptInfo);
+      }
+    }, MoreExecutors.directExecutor());
+    return pending;
+  }
+
+  @Override
+  public ListenableFuture<Object> invokeScript(UUID scriptId, Object... args) {
+    JsScriptInfo scriptInfo = scriptInfoMap.get(scriptId);
+    if (scriptInfo == null)
+      return Futures.immediateFailedFuture(new IcScriptException(scriptId,
+          IcScriptException.ErrorCode.OTHER, null, new IllegalStateException("脚本不存在或已释放")));
+    if (isBlocked(scriptId))
+      return Futures.immediateFailedFuture(new IcScriptException(scriptId,
+          IcScriptException.ErrorCode.OTHER, null, new IllegalStateException("脚本多次超时，暂时禁止执行")));
+    return doInvokeFunction(scriptId, scriptInfo, args);
+  }
+
+  @Override
+  public ListenableFuture<Void> release(UUID scriptId) {
+    boolean[] removed = new boolean[1];
+    JsScriptInfo[] released = new JsScriptInfo[1];
+    scriptInfoMap.computeIfPresent(scriptId, (k, info) -> {
+      info.setReferences(info.getReferences() - 1);
+      if (info.getReferences() > 0)
+        return info;
+      removed[0] = true;
+      released[0] = info;
+      return null;
+    });
+    if (!removed[0])
+      return Futures.immediateFuture(null);
+    blockedScripts.remove(scriptId);
+    try {
+      doRelease(scriptId, released[0]);
+      return Futures.immediateFuture(null);
+    } catch (Exception e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  private boolean isBlocked(UUID scriptId) {
+    BlockedScriptInfo info = blockedScripts.get(scriptId);
+    if (info == null || info.get() < getMaxErrors())
+      return false;
+    if (System.currentTimeMillis() > info.getExpirationTime()) {
+      blockedScripts.remove(scriptId, info);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 记录一次脚本自身的执行超时，由实现在执行端调用；调用方等待超时不应计入
+   */
+  protected void block(UUID scriptId) {
+    int count = blockedScripts
+        .computeIfAbsent(scriptId, k -> new BlockedScriptInfo(getMaxBlackListDurationSec()))
+        .incrementAndGet();
+    log.warn("脚本{}执行超时，累计{}次", scriptId, count);
+  }
 }
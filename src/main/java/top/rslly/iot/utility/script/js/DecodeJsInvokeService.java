@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot.utility.script.js;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * 属性上报解码专用的脚本服务，沙箱CPU时间上限即解码时限js.decode.timeout_ms， 失控的解码脚本在时限内被终止并计入黑名单，不会长期占用执行上下文。
+ */
+@Service
+public class DecodeJsInvokeService extends NashornJsInvokeService {
+  @Value("${js.decode.timeout_ms:100}")
+  private long timeoutMs;
+
+  @Override
+  protected String getPoolName() {
+    return "nashorn-decode";
+  }
+
+  @Override
+  protected long getMaxCpuTime() {
+    return timeoutMs;
+  }
+
+  @Override
+  protected long getMaxRequestsTimeout() {
+    return timeoutMs;
+  }
+}
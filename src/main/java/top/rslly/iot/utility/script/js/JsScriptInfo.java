@@ -19,11 +19,17 @@
  */
 package top.rslly.iot.utility.script.js;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.Data;
 
+import java.util.UUID;
+
 @Data
 public class JsScriptInfo {
 
   private final String functionName;
+  // 相同内容的脚本只编译一次，按eval次数计数，全部release后才卸载
+  private int references;
+  private ListenableFuture<UUID> compiled;
 
 }
@@ -22,43 +22,64 @@ package top.rslly.iot.utility.script.js;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import delight.nashornsandbox.NashornSandbox;
 import delight.nashornsandbox.NashornSandboxes;
+import delight.nashornsandbox.exceptions.ScriptCPUAbuseException;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import top.rslly.iot.utility.script.*;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.script.Invocable;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Service
-public class NashornJsInvokeService extends AbstractJsInvokeService implements ScriptInvokeService {
-  // protected final Map<UUID, JsScriptInfo> scriptInfoMap = new ConcurrentHashMap<>();
+@Primary
+public class NashornJsInvokeService extends AbstractJsInvokeService {
+  private static final String ARGS = "__invokeArgs";
+
   private NashornSandbox sandbox;
   private ScriptEngine engine;
   private ExecutorService monitorExecutorService;
   private ListeningExecutorService jsExecutor;
+  private ScheduledExecutorService timeoutExecutor;
+  // 相互隔离的执行上下文，各自拥有独立的全局对象，同一时刻只被一个线程使用
+  private BlockingQueue<JsContext> contexts;
+  // 脚本id -> 编译结果，所有上下文共享
+  private final Map<UUID, Compiled> compiledMap = new ConcurrentHashMap<>();
+  // 每次卸载脚本加一，上下文据此清理已卸载的函数
+  private final AtomicLong releaseVersion = new AtomicLong();
 
   private final ReentrantLock evalLock = new ReentrantLock();
 
   @Value("${js.local.use_js_sandbox}")
   private boolean useJsSandbox;
 
-  @Value("${js.local.monitor_thread_pool_size}")
-  private int monitorThreadPoolSize;
-
+  // 单个脚本的CPU时间上限（毫秒），超限计为TIMEOUT并计入黑名单
   @Value("${js.local.max_cpu_time}")
   private long maxCpuTime;
 
@@ -67,23 +88,51 @@ public class NashornJsInvokeService extends AbstractJsInvokeService implements S
   private int maxBlackListDurationSec;
 
   @Getter
+  @Value("${js.local.max_errors:3}")
+  private int maxErrors;
+
+  // 单次执行超时（毫秒），从脚本开始执行计时，0表示不限制
   @Value("${js.local.max_requests_timeout:0}")
   private long maxInvokeRequestsTimeout;
 
   @Value("${js.local.js_thread_pool_size:50}")
   private int jsExecutorThreadPoolSize;
 
+  private static class Compiled {
+    // 定义包装函数
+    private final CompiledScript define;
+    // 以上下文中的参数数组调用包装函数
+    private final CompiledScript call;
+
+    private Compiled(CompiledScript define, CompiledScript call) {
+      this.define = define;
+      this.call = call;
+    }
+  }
+
+  private static class JsContext {
+    private final Bindings bindings;
+    private final Set<UUID> loaded = new HashSet<>();
+    private long version;
+
+    private JsContext(Bindings bindings) {
+      this.bindings = bindings;
+    }
+  }
+
   @PostConstruct
   @Override
   public void init() {
-    jsExecutor =
-        MoreExecutors.listeningDecorator(Executors.newWorkStealingPool(jsExecutorThreadPoolSize));
+    jsExecutor = MoreExecutors.listeningDecorator(
+        IntelliConnectExecutors.newWorkStealingPool(jsExecutorThreadPoolSize, getPoolName()));
+    timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
     if (useJsSandbox) {
       sandbox = NashornSandboxes.create();
-      monitorExecutorService =
-          IntelliConnectExecutors.newWorkStealingPool(monitorThreadPoolSize, "nashorn-js-monitor");
+      // 沙箱在该线程池中执行脚本，调用线程只负责监控CPU时间，线程数须与上下文数量一致才能并发执行
+      monitorExecutorService = IntelliConnectExecutors
+          .newWorkStealingPool(jsExecutorThreadPoolSize, getPoolName() + "-monitor");
       sandbox.setExecutor(monitorExecutorService);
-      sandbox.setMaxCPUTime(maxCpuTime);
+      sandbox.setMaxCPUTime(getMaxCpuTime());
       sandbox.allowNoBraces(false);
       sandbox.allow(JsUtils.class);
       sandbox.allow(java.util.ArrayList.class);
@@ -93,21 +142,22 @@ public class NashornJsInvokeService extends AbstractJsInvokeService implements S
       ScriptEngineManager factory = new ScriptEngineManager();
       engine = factory.getEngineByName("nashorn");
     }
+    contexts = new ArrayBlockingQueue<>(jsExecutorThreadPoolSize);
+    for (int i = 0; i < jsExecutorThreadPoolSize; i++)
+      contexts
+          .add(new JsContext(useJsSandbox ? sandbox.createBindings() : engine.createBindings()));
   }
 
-  @Override
-  public ListenableFuture<UUID> eval(ScriptType scriptType, String scriptBody, String... argNames) {
-    return null;
+  protected String getPoolName() {
+    return "nashorn-js";
   }
 
-  @Override
-  public ListenableFuture<Object> invokeScript(UUID scriptId, Object... args) {
-    return null;
+  protected long getMaxCpuTime() {
+    return maxCpuTime;
   }
 
-  @Override
-  public ListenableFuture<Void> release(UUID scriptId) {
-    return null;
+  protected long getMaxRequestsTimeout() {
+    return maxInvokeRequestsTimeout;
   }
 
   @Override
@@ -124,26 +174,25 @@ public class NashornJsInvokeService extends AbstractJsInvokeService implements S
     if (jsExecutor != null) {
       jsExecutor.shutdownNow();
     }
+    if (timeoutExecutor != null) {
+      timeoutExecutor.shutdownNow();
+    }
   }
 
   @Override
   public ListenableFuture<UUID> doEval(UUID scriptId, JsScriptInfo scriptInfo, String jsScript) {
     return jsExecutor.submit(() -> {
       try {
+        // 只有编译需要串行，每个脚本只编译一次
         evalLock.lock();
         try {
-          if (useJsSandbox) {
-            sandbox.eval(jsScript);
-          } else {
-            engine.eval(jsScript);
-          }
+          compiledMap.put(scriptId, new Compiled(compile(jsScript),
+              compile(scriptInfo.getFunctionName() + ".apply(null, Java.from(" + ARGS + "));")));
         } finally {
           evalLock.unlock();
         }
-        // scriptInfoMap.put(scriptId, scriptInfo);
         return scriptId;
       } catch (Exception e) {
-        e.printStackTrace();
         throw new IcScriptException(scriptId, IcScriptException.ErrorCode.COMPILATION, jsScript, e);
       }
     });
@@ -152,32 +201,111 @@ public class NashornJsInvokeService extends AbstractJsInvokeService implements S
   @Override
   public ListenableFuture<Object> doInvokeFunction(UUID scriptId, JsScriptInfo scriptInfo,
       Object[] args) {
-    return jsExecutor.submit(() -> {
+    SettableFuture<Object> result = SettableFuture.create();
+    jsExecutor.execute(() -> {
+      // 调用方已放弃等待时不再执行
+      if (result.isDone())
+        return;
+      JsContext context;
       try {
-        if (useJsSandbox) {
-          if (args.length == 0)
-            return sandbox.getSandboxedInvocable().invokeFunction(scriptInfo.getFunctionName());
-          return sandbox.getSandboxedInvocable().invokeFunction(scriptInfo.getFunctionName(), args);
-        } else {
-          if (args.length == 0)
-            return ((Invocable) engine).invokeFunction(scriptInfo.getFunctionName());
-          return ((Invocable) engine).invokeFunction(scriptInfo.getFunctionName(), args);
-        }
-      } catch (ScriptException e) {
-        throw new IcScriptException(scriptId, IcScriptException.ErrorCode.RUNTIME, null, e);
-      } catch (Exception e) {
-        throw new IcScriptException(scriptId, IcScriptException.ErrorCode.OTHER, null, e);
+        context = contexts.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        result.setException(
+            new IcScriptException(scriptId, IcScriptException.ErrorCode.OTHER, null, e));
+        return;
+      }
+      try {
+        if (result.isDone())
+          return;
+        run(scriptId, context, args, result);
+      } finally {
+        contexts.add(context);
       }
     });
+    return result;
   }
 
-  @Override
-  public void doRelease(UUID scriptId, JsScriptInfo scriptInfo) throws Exception {
-    if (useJsSandbox) {
-      sandbox.eval(scriptInfo.getFunctionName() + " = undefined;");
-    } else {
-      engine.eval(scriptInfo.getFunctionName() + " = undefined;");
+  // 取得执行上下文后才开始计时，排队和等待上下文的时间不计入，只有脚本自身超时才计入黑名单
+  private void run(UUID scriptId, JsContext context, Object[] args,
+      SettableFuture<Object> result) {
+    AtomicBoolean timedOut = new AtomicBoolean(false);
+    long timeoutMs = getMaxRequestsTimeout();
+    ScheduledFuture<?> timeout = null;
+    if (timeoutMs > 0) {
+      // 超时后调用方立即得到结果，脚本本身无法中断，由沙箱的CPU时间限制兜底
+      timeout = timeoutExecutor.schedule(() -> {
+        if (timedOut.compareAndSet(false, true))
+          block(scriptId);
+        result.setException(new IcScriptException(scriptId, IcScriptException.ErrorCode.TIMEOUT,
+            null, new TimeoutException("script timeout")));
+      }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+    try {
+      result.set(invoke(scriptId, context, args));
+    } catch (IcScriptException e) {
+      if (e.getErrorCode() == IcScriptException.ErrorCode.TIMEOUT
+          && timedOut.compareAndSet(false, true))
+        block(scriptId);
+      result.setException(e);
+    } finally {
+      if (timeout != null)
+        timeout.cancel(false);
     }
   }
 
+  private Object invoke(UUID scriptId, JsContext context, Object[] args) {
+    Compiled compiled = compiledMap.get(scriptId);
+    if (compiled == null)
+      throw new IcScriptException(scriptId, IcScriptException.ErrorCode.OTHER, null,
+          new IllegalStateException("script not compiled"));
+    try {
+      prepare(context);
+      if (!context.loaded.contains(scriptId)) {
+        execute(compiled.define, context.bindings);
+        context.loaded.add(scriptId);
+      }
+      context.bindings.put(ARGS, args);
+      return execute(compiled.call, context.bindings);
+    } catch (ScriptCPUAbuseException e) {
+      throw new IcScriptException(scriptId, IcScriptException.ErrorCode.TIMEOUT, null, e);
+    } catch (ScriptException e) {
+      throw new IcScriptException(scriptId, IcScriptException.ErrorCode.RUNTIME, null, e);
+    } catch (IcScriptException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IcScriptException(scriptId, IcScriptException.ErrorCode.OTHER, null, e);
+    } finally {
+      context.bindings.remove(ARGS);
+    }
+  }
+
+  @Override
+  public void doRelease(UUID scriptId, JsScriptInfo scriptInfo) {
+    compiledMap.remove(scriptId);
+    releaseVersion.incrementAndGet();
+  }
+
+  private CompiledScript compile(String js) throws ScriptException {
+    return useJsSandbox ? sandbox.compile(js) : ((Compilable) engine).compile(js);
+  }
+
+  private Object execute(CompiledScript script, Bindings bindings) throws ScriptException {
+    return useJsSandbox ? sandbox.eval(script, bindings) : script.eval(bindings);
+  }
+
+  // 从上下文中移除已卸载脚本的函数定义
+  private void prepare(JsContext context) {
+    long version = releaseVersion.get();
+    if (context.version == version)
+      return;
+    context.loaded.removeIf(id -> {
+      if (compiledMap.containsKey(id))
+        return false;
+      context.bindings.remove(functionName(id));
+      return true;
+    });
+    context.version = version;
+  }
+
 }
@@ -83,8 +83,11 @@ public class XiaoZhiUtil {
       JSONObject payloadObject = mcpObject.getJSONObject("payload");
       if (payloadObject.containsKey("result")) {
         JSONObject resultObject = payloadObject.getJSONObject("result");
-        mcpProtocolDeal.dealMcp(resultObject, McpWebsocket.DEVICE_SERVER_NAME, chatId,
-            XiaoZhiWebsocket.clients.get(chatId), false);
+        mcpProtocolDeal.dealMcp(resultObject, payloadObject.getInteger("id"),
+            McpWebsocket.DEVICE_SERVER_NAME, chatId, XiaoZhiWebsocket.clients.get(chatId), false);
+      } else if (payloadObject.containsKey("error")) {
+        mcpProtocolDeal.dealMcpError(payloadObject.getJSONObject("error"),
+            payloadObject.getInteger("id"), McpWebsocket.DEVICE_SERVER_NAME, chatId);
       }
     }
   }
@@ -25,18 +25,15 @@ import org.springframework.stereotype.Component;
 import top.rslly.iot.services.wechat.WxProductActiveServiceImpl;
 import top.rslly.iot.services.wechat.WxProductBindServiceImpl;
 import top.rslly.iot.services.wechat.WxUserServiceImpl;
-import top.rslly.iot.utility.Cast;
-import top.rslly.iot.utility.RedisUtil;
 import top.rslly.iot.utility.ai.ModelMessage;
 import top.rslly.iot.utility.ai.ModelMessageRole;
+import top.rslly.iot.utility.ai.chain.ChatMemory;
 import top.rslly.iot.utility.ai.chain.Router;
 import top.rslly.iot.utility.ai.llm.Glm;
 import top.rslly.iot.utility.ai.llm.LLMFactory;
 import top.rslly.iot.utility.ai.voice.Audio2Text;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 @Component
 public class SmartRobot {
@@ -51,7 +48,7 @@ public class SmartRobot {
   @Autowired
   private WxProductBindServiceImpl wxProductBindService;
   @Autowired
-  private RedisUtil redisUtil;
+  private ChatMemory chatMemory;
   @Autowired
   private Audio2Text audio2Text;
 
@@ -86,26 +83,10 @@ public class SmartRobot {
       dealWx.sendContent(openid, "该用户未注册，请先注册再使用", microappid);
       return;
     }
-    List<ModelMessage> memory;
     String content = LLMFactory.getLLM("glm").imageToWord("图里有什么", imageUrl);
-    var memory_cache = redisUtil.get("memory" + openid);
-    if (memory_cache != null)
-      try {
-        memory = Cast.castList(memory_cache, ModelMessage.class);
-      } catch (Exception e) {
-        e.printStackTrace();
-        memory = new ArrayList<>();
-      }
-    else
-      memory = new ArrayList<>();
     ModelMessage chatMessage = new ModelMessage(ModelMessageRole.ASSISTANT.value(), "图里有什么");
     ModelMessage userContent = new ModelMessage(ModelMessageRole.USER.value(), content);
-    memory.add(userContent);
-    memory.add(chatMessage);
-    if (memory.size() > 6) {
-      memory.subList(0, memory.size() - 6).clear();
-    }
-    redisUtil.set("memory" + openid, memory, 24 * 3600);
+    chatMemory.append(openid, userContent, chatMessage);
     dealWx.sendContent(openid, content, microappid);
   }
 
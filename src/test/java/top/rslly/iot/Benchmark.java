@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+/**
+ * 基准测试的计时循环：先预热，再计时每次操作的平均耗时
+ */
+final class Benchmark {
+  // 操作结果写入volatile字段，避免被JIT当作无用代码消除
+  private static volatile long sink;
+
+  interface Op {
+    long run() throws Exception;
+  }
+
+  private Benchmark() {}
+
+  static long nanosPerOp(int warmup, int rounds, Op op) throws Exception {
+    long result = 0;
+    for (int i = 0; i < warmup; i++)
+      result += op.run();
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      result += op.run();
+    long nanos = System.nanoTime() - start;
+    sink = result;
+    return nanos / rounds;
+  }
+}
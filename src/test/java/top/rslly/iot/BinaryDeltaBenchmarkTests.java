@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.BinaryDelta;
+
+import java.util.Random;
+
+import static top.rslly.iot.BinaryDeltaTests.SIZE;
+import static top.rslly.iot.BinaryDeltaTests.bytes;
+import static top.rslly.iot.BinaryDeltaTests.deflated;
+import static top.rslly.iot.BinaryDeltaTests.firmware;
+import static top.rslly.iot.BinaryDeltaTests.release;
+
+/**
+ * 模拟固件连续三个版本之间的差分包大小与生成耗时，和直接deflate整个镜像对比
+ */
+@Tag("benchmark")
+@Slf4j
+public class BinaryDeltaBenchmarkTests {
+  @Test
+  public void compression() throws Exception {
+    Random random = new Random(42);
+    int[] v1 = firmware(random, SIZE / 4);
+    int[] v2 = release(random, v1, v1.length / 3, 512, 64);
+    int[] v3 = release(random, v2, v2.length / 2, 4096, 512);
+    byte[][] images = {bytes(v1), bytes(v2), bytes(v3)};
+    for (int[] pair : new int[][] {{0, 1}, {1, 2}, {0, 2}}) {
+      byte[] source = images[pair[0]];
+      byte[] target = images[pair[1]];
+      long diffNs =
+          Benchmark.nanosPerOp(3, 5, () -> BinaryDelta.diff(source, target).length);
+      int delta = BinaryDelta.diff(source, target).length;
+      log.info("v{}->v{}: image {} B, deflate {} B, delta {} B ({}% of image), {} ms",
+          pair[0] + 1, pair[1] + 1, target.length, deflated(target), delta,
+          String.format("%.2f", delta * 100.0 / target.length), diffNs / 1_000_000);
+    }
+  }
+}
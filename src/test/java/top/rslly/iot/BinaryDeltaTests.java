@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.BinaryDelta;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 差分包的正确性和压缩率，固件为模拟的ARM镜像：代码中夹杂指向镜像内部的绝对地址，新版本插入一段代码后其后的地址整体偏移
+ */
+public class BinaryDeltaTests {
+  static final int BASE = 0x08000000;
+  static final int SIZE = 1024 * 1024;
+
+  // 模拟固件：每16个字的指令里有1个字是镜像内地址
+  static int[] firmware(Random random, int words) {
+    int[] image = new int[words];
+    for (int i = 0; i < words; i++)
+      image[i] = i % 16 == 15 ? BASE + random.nextInt(words) * 4 : random.nextInt(1 << 12);
+    return image;
+  }
+
+  // 在at处插入inserted个新字，修改changed个字，并重定位插入点之后的地址
+  static int[] release(Random random, int[] image, int at, int inserted, int changed) {
+    int[] next = new int[image.length + inserted];
+    for (int i = 0; i < next.length; i++) {
+      int word;
+      if (i < at)
+        word = image[i];
+      else if (i < at + inserted)
+        word = random.nextInt(1 << 12);
+      else
+        word = image[i - inserted];
+      if ((word & 0xFF000000) == BASE && word - BASE >= at * 4)
+        word += inserted * 4;
+      next[i] = word;
+    }
+    for (int k = 0; k < changed; k++)
+      next[random.nextInt(next.length)] = random.nextInt(1 << 12);
+    return next;
+  }
+
+  static byte[] bytes(int[] words) {
+    ByteBuffer buffer = ByteBuffer.allocate(words.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.asIntBuffer().put(words);
+    return buffer.array();
+  }
+
+  static int deflated(byte[] data) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflater =
+        new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION))) {
+      deflater.write(data);
+    }
+    return out.size();
+  }
+
+  @Test
+  public void roundTrip() {
+    Random random = new Random(7);
+    byte[] source = new byte[5000];
+    random.nextBytes(source);
+    byte[] shifted = new byte[6000];
+    System.arraycopy(source, 0, shifted, 700, 5000);
+    byte[] unrelated = new byte[3000];
+    random.nextBytes(unrelated);
+    for (byte[][] pair : new byte[][][] {{source, source}, {source, shifted},
+        {source, unrelated}, {new byte[0], source}, {source, new byte[0]},
+        {new byte[3], new byte[5]}}) {
+      byte[] delta = BinaryDelta.diff(pair[0], pair[1]);
+      Assertions.assertArrayEquals(pair[1], BinaryDelta.patch(pair[0], delta));
+    }
+    Assertions.assertTrue(BinaryDelta.diff(source, shifted).length < 1000);
+    byte[] delta = BinaryDelta.diff(source, shifted);
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> BinaryDelta.patch(unrelated, delta));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> BinaryDelta.patch(source, Arrays.copyOf(delta, delta.length / 2)));
+  }
+
+  @Test
+  public void padding() {
+    // 大段相同的填充块只进索引一次，仍能正确还原
+    Random random = new Random(3);
+    byte[] source = new byte[512 * 1024];
+    Arrays.fill(source, (byte) 0xFF);
+    byte[] code = new byte[32 * 1024];
+    random.nextBytes(code);
+    System.arraycopy(code, 0, source, 0, code.length);
+    byte[] target = source.clone();
+    for (int k = 0; k < 100; k++)
+      target[random.nextInt(code.length)] ^= 1;
+    target[source.length - 1] = 0;
+    byte[] delta = BinaryDelta.diff(source, target);
+    Assertions.assertArrayEquals(target, BinaryDelta.patch(source, delta));
+    Assertions.assertTrue(delta.length < 4096);
+  }
+
+  @Test
+  public void compression() throws Exception {
+    Random random = new Random(42);
+    int[] v1 = firmware(random, SIZE / 4);
+    int[] v2 = release(random, v1, v1.length / 3, 512, 64);
+    byte[] source = bytes(v1);
+    byte[] target = bytes(v2);
+    byte[] delta = BinaryDelta.diff(source, target);
+    Assertions.assertArrayEquals(target, BinaryDelta.patch(source, delta));
+    Assertions.assertTrue(delta.length * 10 < deflated(target));
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.ControlSchema;
+import top.rslly.iot.utility.JsonCreate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static top.rslly.iot.ControlSchemaTests.KEY;
+import static top.rslly.iot.ControlSchemaTests.MAX;
+import static top.rslly.iot.ControlSchemaTests.MIN;
+import static top.rslly.iot.ControlSchemaTests.TYPE;
+import static top.rslly.iot.ControlSchemaTests.VALUE;
+import static top.rslly.iot.ControlSchemaTests.schema;
+
+/**
+ * JsonCreate、每次重新编译的ControlSchema和复用编译结果的ControlSchema三者的编码耗时
+ */
+@Tag("benchmark")
+@Slf4j
+public class ControlEncodeBenchmarkTests {
+  private static final int WARMUP = 200_000;
+  private static final int ROUNDS = 1_000_000;
+
+  @Test
+  public void throughput() throws Exception {
+    long legacyNs = Benchmark.nanosPerOp(WARMUP, ROUNDS, ControlEncodeBenchmarkTests::legacy);
+    // 单设备控制：每次都从物模型重新编译
+    long compiledNs = Benchmark.nanosPerOp(WARMUP, ROUNDS, () -> compiled(schema()));
+    // 命中缓存：编译结果复用
+    ControlSchema cached = schema();
+    long cachedNs = Benchmark.nanosPerOp(WARMUP, ROUNDS, () -> compiled(cached));
+    log.info("JsonCreate: {} ns/op, ControlSchema: {} ns/op, cached: {} ns/op", legacyNs,
+        compiledNs, cachedNs);
+  }
+
+  private static long legacy() throws IOException {
+    return JsonCreate.create(null, KEY, VALUE, TYPE, MAX, MIN).toString()
+        .getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static long compiled(ControlSchema schema) {
+    return schema.bind(KEY, VALUE).encode(null).length;
+  }
+}
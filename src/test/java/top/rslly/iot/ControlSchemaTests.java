@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.ControlSchema;
+import top.rslly.iot.utility.JsonCreate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 预编译ControlSchema与JsonCreate输出一致
+ */
+public class ControlSchemaTests {
+  static final List<String> KEY = List.of("power", "temperature", "mode");
+  static final List<String> VALUE = List.of("on", "26.5", "2");
+  static final List<String> TYPE = List.of("string", "float", "int");
+  static final List<String> MAX = Arrays.asList(null, "30", "3");
+  static final List<String> MIN = Arrays.asList(null, "16", "0");
+
+  static ControlSchema schema() {
+    ControlSchema schema = new ControlSchema(null);
+    for (int i = 0; i < KEY.size(); i++)
+      schema.addField(KEY.get(i), TYPE.get(i), MAX.get(i), MIN.get(i));
+    return schema;
+  }
+
+  @Test
+  public void sameOutput() throws IOException {
+    String legacy = JsonCreate.create(null, KEY, VALUE, TYPE, MAX, MIN).toString();
+    String compiled =
+        new String(schema().bind(KEY, VALUE).encode(null), StandardCharsets.UTF_8);
+    Assertions.assertEquals(legacy, compiled);
+    Assertions.assertEquals("{\"requestId\":\"1\"," + legacy.substring(1),
+        new String(schema().bind(KEY, VALUE).encode("1"), StandardCharsets.UTF_8));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> schema().bind(KEY, List.of("on", "40", "2")));
+  }
+}
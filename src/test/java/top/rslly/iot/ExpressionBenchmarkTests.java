@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.script.expr.Expression;
+
+import javax.script.Invocable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static top.rslly.iot.ExpressionTests.CONDITION;
+
+/**
+ * 同一条件用编译后的表达式和Nashorn规则脚本求值的单条消息耗时，脚本耗时包含参数的JSON序列化
+ */
+@Tag("benchmark")
+@Slf4j
+public class ExpressionBenchmarkTests {
+  private static final int WARMUP = 20_000;
+  private static final int ROUNDS = 200_000;
+
+  @Test
+  public void throughput() throws Exception {
+    Invocable script = ExpressionTests.ruleScript();
+    Expression expression = Expression.compile(CONDITION);
+    double[] slots = new double[expression.getVariables().size()];
+    Map<String, Object> values = new HashMap<>();
+    values.put("temp", "31.5");
+    values.put("hum", "12");
+    long nashornNs = Benchmark.nanosPerOp(WARMUP, ROUNDS,
+        () -> ExpressionTests.invoke(script, values).length());
+    long compiledNs = Benchmark.nanosPerOp(WARMUP, ROUNDS, () -> {
+      expression.bind(values, slots);
+      return expression.test(slots) ? 1 : 0;
+    });
+    log.info("Nashorn: {} ns/msg, Expression: {} ns/msg", nashornNs, compiledNs);
+  }
+}
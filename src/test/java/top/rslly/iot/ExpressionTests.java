@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.script.RuleNodeScriptFactory;
+import top.rslly.iot.utility.script.expr.Expression;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 条件表达式的求值语义，以及与等价Nashorn规则脚本结果一致
+ */
+public class ExpressionTests {
+  static final String CONDITION = "temp > 30 && hum < 20";
+
+  private static boolean eval(String source, Map<String, ?> values) {
+    Expression expression = Expression.compile(source);
+    double[] slots = new double[expression.getVariables().size()];
+    expression.bind(values, slots);
+    return expression.test(slots);
+  }
+
+  @Test
+  public void semantics() {
+    Map<String, Object> values = new HashMap<>();
+    values.put("temp", "31.5");
+    values.put("hum", "12");
+    values.put("power", "true");
+    values.put("mode", "auto");
+    Assertions.assertTrue(eval(CONDITION, values));
+    Assertions.assertFalse(eval("temp > 30 && hum >= 20", values));
+    Assertions.assertTrue(eval("!(temp < 30) || missing > 0", values));
+    Assertions.assertTrue(eval("(temp - 1.5) * 2 == 60 && hum % 5 == 2", values));
+    Assertions.assertTrue(eval("power == 1 && -hum < 0", values));
+    // 缺失和非数值属性为NaN，比较均不成立
+    Assertions.assertFalse(eval("missing != 1", values));
+    Assertions.assertFalse(eval("mode == 0 || mode != 0", values));
+    // 只上报部分变量时不算完整绑定
+    Expression partial = Expression.compile(CONDITION);
+    Assertions.assertFalse(partial.bind(Map.of("temp", "31.5"), new double[2]));
+    Assertions.assertTrue(partial.references(Map.of("temp", "31.5")));
+    Assertions.assertFalse(partial.references(Map.of("power", "true")));
+    Assertions.assertTrue(partial.bind(values, new double[2]));
+    Assertions.assertEquals(List.of("temp", "hum"),
+        Expression.compile("temp > hum || temp < 3 * hum").getVariables());
+    for (String invalid : List.of("temp >", "temp + 1", "temp && hum", "(temp > 1",
+        "temp > 1 hum", "temp = 1", "temp > #"))
+      Assertions.assertThrows(IllegalArgumentException.class, () -> Expression.compile(invalid));
+  }
+
+  // 与CONDITION等价的Nashorn规则脚本
+  static Invocable ruleScript() throws ScriptException {
+    ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+    engine.eval(RuleNodeScriptFactory.generateRuleNodeScript("rule",
+        "return msg.temp > 30 && msg.hum < 20;"));
+    return (Invocable) engine;
+  }
+
+  static String invoke(Invocable script, Map<String, ?> values) throws Exception {
+    return (String) script.invokeFunction("rule", JSON.toJSONString(values), "{}", "POST");
+  }
+
+  @Test
+  public void sameAsScript() throws Exception {
+    Invocable script = ruleScript();
+    for (String[] pair : new String[][] {{"31.5", "12"}, {"30", "12"}, {"31.5", "20"}}) {
+      Map<String, Object> values = new HashMap<>();
+      values.put("temp", pair[0]);
+      values.put("hum", pair[1]);
+      Assertions.assertEquals(invoke(script, values), String.valueOf(eval(CONDITION, values)));
+    }
+  }
+}
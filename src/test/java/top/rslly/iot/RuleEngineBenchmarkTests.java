@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.RuleState;
+
+/**
+ * 阈值、变化率、窗口聚合和超时四类规则对同一上报序列的单次评估耗时
+ */
+@Tag("benchmark")
+@Slf4j
+public class RuleEngineBenchmarkTests {
+  private static final int WARMUP = 1_000_000;
+  private static final int ROUNDS = 10_000_000;
+
+  @Test
+  public void throughput() throws Exception {
+    RuleState[] states = {new RuleState(RuleState.THRESHOLD, ">", 40, 300, null),
+        new RuleState(RuleState.RATE, ">", 2, 0, null),
+        new RuleState(RuleState.WINDOW, ">", 35, 600, "avg"),
+        new RuleState(RuleState.ABSENCE, null, 0, 600, null)};
+    long[] tick = {0};
+    long nanos = Benchmark.nanosPerOp(WARMUP, ROUNDS, () -> evaluate(states, tick[0]++));
+    log.info("{} rules: {} ns/report", states.length, nanos);
+  }
+
+  private static long evaluate(RuleState[] states, long i) {
+    // 每秒一次上报，温度在30~50之间波动
+    double value = 30 + (i % 21);
+    long now = i * 1000L;
+    int fired = 0;
+    for (RuleState state : states)
+      if (state.offer(value, now))
+        fired++;
+    return fired;
+  }
+}
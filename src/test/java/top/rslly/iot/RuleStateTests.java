@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2023-2030 The ruanrongman Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package top.rslly.iot;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.rslly.iot.utility.RuleState;
+
+/**
+ * 各类规则状态的触发语义
+ */
+public class RuleStateTests {
+  @Test
+  public void threshold() {
+    // 温度高于40持续5秒
+    RuleState state = new RuleState(RuleState.THRESHOLD, ">", 40, 5, null);
+    Assertions.assertFalse(state.offer(41, 0));
+    Assertions.assertFalse(state.offer(42, 4_000));
+    Assertions.assertTrue(state.offer(42, 5_000));
+    Assertions.assertFalse(state.offer(43, 6_000));
+    Assertions.assertFalse(state.offer(30, 7_000));
+    Assertions.assertFalse(state.offer(41, 8_000));
+    Assertions.assertTrue(state.offer(41, 13_000));
+  }
+
+  @Test
+  public void rate() {
+    // 每秒上升超过2
+    RuleState state = new RuleState(RuleState.RATE, ">", 2, 0, null);
+    Assertions.assertFalse(state.offer(10, 0));
+    Assertions.assertFalse(state.offer(11, 1_000));
+    Assertions.assertTrue(state.offer(14, 2_000));
+    Assertions.assertFalse(state.offer(20, 3_000));
+    Assertions.assertFalse(state.offer(20, 4_000));
+    Assertions.assertTrue(state.offer(30, 5_000));
+  }
+
+  @Test
+  public void window() {
+    // 60秒平均值大于10
+    RuleState state = new RuleState(RuleState.WINDOW, ">", 10, 60, "avg");
+    Assertions.assertFalse(state.offer(5, 0));
+    Assertions.assertFalse(state.offer(14, 10_000));
+    Assertions.assertTrue(state.offer(20, 20_000));
+    // 前两个值滑出窗口后平均值仍为20，不重复触发
+    Assertions.assertFalse(state.offer(20, 75_000));
+    Assertions.assertFalse(state.offer(0, 200_000));
+    RuleState count = new RuleState(RuleState.WINDOW, ">=", 3, 10, "count");
+    Assertions.assertFalse(count.offer(1, 0));
+    Assertions.assertFalse(count.offer(1, 1_000));
+    Assertions.assertFalse(count.offer(1, 20_000));
+    Assertions.assertFalse(count.offer(1, 21_000));
+    Assertions.assertTrue(count.offer(1, 22_000));
+  }
+
+  @Test
+  public void absence() {
+    RuleState state = new RuleState(RuleState.ABSENCE, null, 0, 600, null);
+    Assertions.assertFalse(state.absent(1_000_000));
+    state.offer(0, 0);
+    Assertions.assertFalse(state.absent(599_000));
+    Assertions.assertTrue(state.absent(600_000));
+    Assertions.assertFalse(state.absent(700_000));
+    state.offer(0, 800_000);
+    Assertions.assertTrue(state.absent(1_400_000));
+  }
+}